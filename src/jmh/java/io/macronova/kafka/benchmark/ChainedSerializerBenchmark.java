@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.ChainedDeserializer;
+import io.macronova.kafka.common.serialization.ChainedSerializer;
+import io.macronova.kafka.common.serialization.CompressSerializer;
+import io.macronova.kafka.common.serialization.DecompressDeserializer;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.HmacDeserializer;
+import io.macronova.kafka.common.serialization.HmacSerializer;
+
+/**
+ * Measures compress, authenticate and encrypt chain (and its reverse), whose stages exchange buffers directly.
+ * Run with {@code -prof gc} to observe allocation per record.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ChainedSerializerBenchmark {
+	private static final String SECRET = "770A8A65DA156D24EE2A093277530142";
+
+	@Param( { "1024", "65536" } )
+	private int size;
+
+	private ChainedSerializer serializer = null;
+	private ChainedDeserializer deserializer = null;
+	private byte[] data = null;
+	private byte[] serialized = null;
+
+	@Setup
+	public void setUp() {
+		final Map<String, Object> producerConfiguration = new HashMap<>();
+		producerConfiguration.put( "0.serializer", CompressSerializer.class.getName() );
+		producerConfiguration.put( "1.serializer", HmacSerializer.class.getName() );
+		producerConfiguration.put( "1.secret", SECRET );
+		producerConfiguration.put( "2.serializer", EncryptSerializer.class.getName() );
+		producerConfiguration.put( "2.transformation", "AES/GCM/NoPadding" );
+		producerConfiguration.put( "2.secret", SECRET );
+		serializer = new ChainedSerializer();
+		serializer.configure( producerConfiguration, false );
+
+		final Map<String, Object> consumerConfiguration = new HashMap<>();
+		consumerConfiguration.put( "0.deserializer", DecryptDeserializer.class.getName() );
+		consumerConfiguration.put( "0.transformation", "AES/GCM/NoPadding" );
+		consumerConfiguration.put( "0.secret", SECRET );
+		consumerConfiguration.put( "1.deserializer", HmacDeserializer.class.getName() );
+		consumerConfiguration.put( "1.secret", SECRET );
+		consumerConfiguration.put( "2.deserializer", DecompressDeserializer.class.getName() );
+		deserializer = new ChainedDeserializer();
+		deserializer.configure( consumerConfiguration, false );
+
+		final Random random = new Random( 42 );
+		final StringBuilder builder = new StringBuilder();
+		while ( builder.length() < size ) {
+			builder.append( String.format( "{\"id\": %d, \"amount\": %d, \"status\": \"ACCEPTED\"}, ", random.nextInt( 100000 ), random.nextInt( 1000 ) ) );
+		}
+		data = builder.substring( 0, size ).getBytes();
+		serialized = serializer.serialize( "topic1", data );
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Benchmark
+	public byte[] serialize() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	public Object deserialize() {
+		return deserializer.deserialize( "topic1", serialized );
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.CompressSerializer;
+import io.macronova.kafka.common.serialization.DecompressDeserializer;
+
+/**
+ * Measures compression and decompression latency of JSON-like records (4 KB), as well as cost of detecting
+ * incompressible (random) records.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class CompressSerializerBenchmark {
+	@Param( { "lz4", "snappy", "zstd" } )
+	private String codec;
+
+	@Param( { "json", "random" } )
+	private String content;
+
+	private CompressSerializer serializer = null;
+	private DecompressDeserializer deserializer = null;
+	private byte[] data = null;
+	private byte[] compressed = null;
+
+	@Setup
+	public void setUp() {
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "codec", codec );
+		serializer = new CompressSerializer();
+		serializer.configure( configuration, false );
+		deserializer = new DecompressDeserializer();
+		deserializer.configure( configuration, false );
+		data = "json".equals( content ) ? json( 4096 ) : random( 4096 );
+		compressed = serializer.serialize( "topic1", data );
+	}
+
+	private static byte[] json(int size) {
+		final Random random = new Random( 42 );
+		final StringBuilder builder = new StringBuilder( "[" );
+		for ( int i = 0; builder.length() < size; ++i ) {
+			builder.append( String.format(
+					"{\"id\": %d, \"user\": \"user-%d\", \"amount\": %d.%02d, \"currency\": \"EUR\", \"status\": \"%s\"}, ",
+					i, random.nextInt( 1000 ), random.nextInt( 10000 ), random.nextInt( 100 ), random.nextBoolean() ? "ACCEPTED" : "REJECTED"
+			) );
+		}
+		return builder.substring( 0, size ).getBytes();
+	}
+
+	private static byte[] random(int size) {
+		final byte[] data = new byte[ size ];
+		new Random( 42 ).nextBytes( data );
+		return data;
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Benchmark
+	public byte[] serialize() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	public byte[] deserialize() {
+		return deserializer.deserialize( "topic1", compressed );
+	}
+}
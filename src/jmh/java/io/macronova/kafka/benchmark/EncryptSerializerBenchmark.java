@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+
+/**
+ * Measures throughput of single serializer (and deserializer) instance shared by growing number of threads,
+ * similarly to application threads calling {@code KafkaProducer#send()} concurrently.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class EncryptSerializerBenchmark {
+	@Param( { "AES/CBC/PKCS5Padding", "AES/GCM/NoPadding" } )
+	private String transformation;
+
+	@Param( { "4096" } )
+	private int size;
+
+	private EncryptSerializer serializer = null;
+	private DecryptDeserializer deserializer = null;
+	private byte[] data = null;
+	private byte[] encrypted = null;
+
+	@Setup
+	public void setUp() {
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "transformation", transformation );
+		configuration.put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		data = new byte[ size ];
+		new Random( 42 ).nextBytes( data );
+		encrypted = serializer.serialize( "topic1", data );
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Benchmark
+	@Threads( 1 )
+	public byte[] serialize1Thread() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	@Threads( 4 )
+	public byte[] serialize4Threads() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	@Threads( 16 )
+	public byte[] serialize16Threads() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	@Threads( 1 )
+	public byte[] deserialize1Thread() {
+		return deserializer.deserialize( "topic1", encrypted );
+	}
+
+	@Benchmark
+	@Threads( 4 )
+	public byte[] deserialize4Threads() {
+		return deserializer.deserialize( "topic1", encrypted );
+	}
+
+	@Benchmark
+	@Threads( 16 )
+	public byte[] deserialize16Threads() {
+		return deserializer.deserialize( "topic1", encrypted );
+	}
+}
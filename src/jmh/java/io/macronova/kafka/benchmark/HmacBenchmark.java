@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.HmacDeserializer;
+import io.macronova.kafka.common.serialization.HmacSerializer;
+
+/**
+ * Measures latency of HMAC tag generation and verification for small and large records.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class HmacBenchmark {
+	@Param( { "HmacSHA256", "HmacSHA512" } )
+	private String algorithm;
+
+	@Param( { "200", "65536" } )
+	private int size;
+
+	private HmacSerializer serializer = null;
+	private HmacDeserializer deserializer = null;
+	private byte[] data = null;
+	private byte[] authenticated = null;
+
+	@Setup
+	public void setUp() {
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "algorithm", algorithm );
+		configuration.put( "secret", "770A8A65DA156D24EE2A093277530142770A8A65DA156D24EE2A093277530142" );
+		configuration.put( "tag.length", 16 );
+		serializer = new HmacSerializer();
+		serializer.configure( configuration, false );
+		deserializer = new HmacDeserializer();
+		deserializer.configure( configuration, false );
+		data = new byte[ size ];
+		new Random( 42 ).nextBytes( data );
+		authenticated = serializer.serialize( "topic1", data );
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Benchmark
+	public byte[] serialize() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	public byte[] deserialize() {
+		return deserializer.deserialize( "topic1", authenticated );
+	}
+}
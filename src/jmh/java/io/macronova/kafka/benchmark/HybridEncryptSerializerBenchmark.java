@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
+import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
+
+/**
+ * Compares cost of hybrid encryption with RSA encrypted secret key and ephemeral ECDH key agreement.
+ * Every record uses new secret key and deserializer cache is disabled, so that each operation includes
+ * asymmetric cryptography.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class HybridEncryptSerializerBenchmark {
+	@Param( { "RSA/None/PKCS1Padding", "ECDH" } )
+	private String asymmetricTransformation;
+
+	@Param( { "200", "4096" } )
+	private int size;
+
+	private File keyStore = null;
+	private HybridEncryptSerializer serializer = null;
+	private HybridDecryptDeserializer deserializer = null;
+	private byte[] data = null;
+	private byte[] encrypted = null;
+
+	@Setup
+	public void setUp() throws Exception {
+		keyStore = KeyStores.create();
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "symmetric.transformation", "AES/GCM/NoPadding" );
+		configuration.put( "asymmetric.transformation", asymmetricTransformation );
+		configuration.put( "asymmetric.key.store.path", keyStore.getAbsolutePath() );
+		configuration.put( "asymmetric.key.store.password", KeyStores.PASSWORD );
+		configuration.put(
+				"asymmetric.key.store.alias",
+				"ECDH".equals( asymmetricTransformation ) ? KeyStores.EC_ALIAS : KeyStores.RSA_ALIAS
+		);
+		configuration.put( "asymmetric.key.store.alias.password", KeyStores.PASSWORD );
+		configuration.put( "key.cache.size", "0" );
+		serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+		data = new byte[ size ];
+		new Random( 42 ).nextBytes( data );
+		encrypted = serializer.serialize( "topic1", data );
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+		keyStore.delete();
+	}
+
+	@Benchmark
+	public byte[] serialize() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	public byte[] deserialize() {
+		return deserializer.deserialize( "topic1", encrypted );
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Creates temporary key stores with RSA (2048 bits), elliptic curve (P-256) and Ed25519 key pairs used by benchmarks.
+ */
+final class KeyStores {
+	static final String PASSWORD = "changeit";
+	static final String RSA_ALIAS = "rsa";
+	static final String EC_ALIAS = "ec";
+	static final String ED25519_ALIAS = "ed25519";
+	static final String ED25519_TYPE = "BKS";
+
+	private static final BouncyCastleProvider provider = new BouncyCastleProvider();
+
+	private KeyStores() {
+	}
+
+	static File create() throws Exception {
+		final KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance( "RSA", provider );
+		rsaGenerator.initialize( 2048 );
+		final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance( "EC", provider );
+		ecGenerator.initialize( new ECGenParameterSpec( "P-256" ) );
+
+		final KeyStore keyStore = KeyStore.getInstance( "JKS" );
+		keyStore.load( null, null );
+		final KeyPair rsaKeyPair = rsaGenerator.generateKeyPair();
+		final KeyPair ecKeyPair = ecGenerator.generateKeyPair();
+		addEntry( keyStore, RSA_ALIAS, rsaKeyPair, rsaKeyPair, "SHA256WithRSA" );
+		addEntry( keyStore, EC_ALIAS, ecKeyPair, ecKeyPair, "SHA256WithECDSA" );
+		return store( keyStore );
+	}
+
+	/**
+	 * @return Key store of type {@value #ED25519_TYPE}, because JKS cannot hold Ed25519 private keys on Java 8.
+	 */
+	static File createEd25519() throws Exception {
+		final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance( "EC", provider );
+		ecGenerator.initialize( new ECGenParameterSpec( "P-256" ) );
+		final KeyStore keyStore = KeyStore.getInstance( ED25519_TYPE, provider );
+		keyStore.load( null, null );
+		// Certificate is issued by EC key, because Bouncy Castle cannot sign certificates with EdDSA yet.
+		addEntry(
+				keyStore, ED25519_ALIAS, KeyPairGenerator.getInstance( "Ed25519", provider ).generateKeyPair(),
+				ecGenerator.generateKeyPair(), "SHA256WithECDSA"
+		);
+		return store( keyStore );
+	}
+
+	private static File store(KeyStore keyStore) throws Exception {
+		final File file = File.createTempFile( "benchmark", ".ks" );
+		file.deleteOnExit();
+		try ( FileOutputStream outputStream = new FileOutputStream( file ) ) {
+			keyStore.store( outputStream, PASSWORD.toCharArray() );
+		}
+		return file;
+	}
+
+	private static void addEntry(KeyStore keyStore, String alias, KeyPair keyPair, KeyPair issuerKeyPair,
+								 String signatureAlgorithm) throws Exception {
+		final X500Name issuer = new X500Name( "cn=Benchmark" );
+		final Date from = new Date();
+		final Date to = new Date( from.getTime() + 1000L * 24L * 60L * 60L );
+		final X509Certificate certificate = new JcaX509CertificateConverter().setProvider( provider ).getCertificate(
+				new JcaX509v3CertificateBuilder( issuer, BigInteger.ONE, from, to, issuer, keyPair.getPublic() ).build(
+						new JcaContentSignerBuilder( signatureAlgorithm ).setProvider( provider ).build( issuerKeyPair.getPrivate() )
+				)
+		);
+		keyStore.setKeyEntry( alias, keyPair.getPrivate(), PASSWORD.toCharArray(), new Certificate[] { certificate } );
+	}
+}
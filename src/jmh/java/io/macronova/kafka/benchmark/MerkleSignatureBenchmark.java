@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.macronova.kafka.common.serialization.MerkleSignatureDeserializer;
+import io.macronova.kafka.common.serialization.MerkleSignatureSerializer;
+
+/**
+ * Measures per-record throughput of RSA (2048 bits) signatures amortized over batches of {@value #BATCH_SIZE}
+ * records. Compare with {@link SignatureBenchmark}.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class MerkleSignatureBenchmark {
+	private static final int BATCH_SIZE = 100;
+
+	private File keyStore = null;
+	private MerkleSignatureSerializer serializer = null;
+	private MerkleSignatureDeserializer deserializer = null;
+	private List<byte[]> batch = null;
+	private List<byte[]> signed = null;
+
+	@Setup
+	public void setUp() throws Exception {
+		keyStore = KeyStores.create();
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "algorithm", "SHA256withRSA" );
+		configuration.put( "key.store.path", keyStore.getAbsolutePath() );
+		configuration.put( "key.store.password", KeyStores.PASSWORD );
+		configuration.put( "key.store.alias", KeyStores.RSA_ALIAS );
+		configuration.put( "key.store.alias.password", KeyStores.PASSWORD );
+		serializer = new MerkleSignatureSerializer();
+		serializer.configure( configuration, false );
+		deserializer = new MerkleSignatureDeserializer();
+		deserializer.configure( configuration, false );
+		final Random random = new Random( 42 );
+		batch = new ArrayList<>( BATCH_SIZE );
+		for ( int i = 0; i < BATCH_SIZE; ++i ) {
+			final byte[] data = new byte[ 200 ];
+			random.nextBytes( data );
+			batch.add( data );
+		}
+		signed = serializer.serialize( "topic1", batch );
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+		keyStore.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BATCH_SIZE )
+	public List<byte[]> serialize() {
+		return serializer.serialize( "topic1", batch );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BATCH_SIZE )
+	public void deserialize(Blackhole blackhole) {
+		for ( byte[] record : signed ) {
+			blackhole.consume( deserializer.deserialize( "topic1", record ) );
+		}
+	}
+}
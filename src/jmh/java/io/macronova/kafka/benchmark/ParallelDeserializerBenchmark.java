@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
+import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
+import io.macronova.kafka.common.serialization.ParallelDeserializer;
+
+/**
+ * Measures deserialization of poll batch encrypted with hybrid encryption (new RSA-encrypted key per record)
+ * depending on number of threads. Value 1 corresponds to deserialization on the polling thread.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ParallelDeserializerBenchmark {
+	private static final int PARTITIONS = 4;
+	private static final int RECORDS_PER_PARTITION = 128;
+
+	@Param( { "1", "4", "16" } )
+	private int threads;
+
+	private File keyStore = null;
+	private ExecutorService executor = null;
+	private ParallelDeserializer<byte[], byte[]> deserializer = null;
+	private ConsumerRecords<byte[], byte[]> records = null;
+
+	@Setup
+	public void setUp() throws Exception {
+		keyStore = KeyStores.create();
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "symmetric.transformation", "AES/GCM/NoPadding" );
+		configuration.put( "asymmetric.transformation", "RSA/None/PKCS1Padding" );
+		configuration.put( "asymmetric.key.store.path", keyStore.getAbsolutePath() );
+		configuration.put( "asymmetric.key.store.password", KeyStores.PASSWORD );
+		configuration.put( "asymmetric.key.store.alias", KeyStores.RSA_ALIAS );
+		configuration.put( "asymmetric.key.store.alias.password", KeyStores.PASSWORD );
+		configuration.put( "key.cache.size", "0" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer valueDeserializer = new HybridDecryptDeserializer();
+		valueDeserializer.configure( configuration, false );
+
+		final Random random = new Random( 42 );
+		final Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> batch = new LinkedHashMap<>();
+		for ( int partition = 0; partition < PARTITIONS; ++partition ) {
+			final List<ConsumerRecord<byte[], byte[]>> partitionRecords = new ArrayList<>();
+			for ( int offset = 0; offset < RECORDS_PER_PARTITION; ++offset ) {
+				final byte[] data = new byte[ 512 ];
+				random.nextBytes( data );
+				partitionRecords.add( new ConsumerRecord<>( "topic1", partition, offset, null, serializer.serialize( "topic1", data ) ) );
+			}
+			batch.put( new TopicPartition( "topic1", partition ), partitionRecords );
+		}
+		serializer.close();
+		records = new ConsumerRecords<>( batch );
+
+		executor = Executors.newFixedThreadPool( threads );
+		deserializer = new ParallelDeserializer<>(
+				new ByteArrayDeserializer(), valueDeserializer, executor, threads == 1 ? Integer.MAX_VALUE : 16
+		);
+	}
+
+	@TearDown
+	public void tearDown() {
+		deserializer.close();
+		executor.shutdown();
+		keyStore.delete();
+	}
+
+	@Benchmark
+	public ConsumerRecords<byte[], byte[]> deserialize() {
+		return deserializer.deserialize( records );
+	}
+}
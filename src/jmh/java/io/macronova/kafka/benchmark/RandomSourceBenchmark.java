@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.utils.RandomSource;
+
+/**
+ * Compares generation of 12-byte initialization vectors by multiple sender threads using single shared
+ * {@link SecureRandom} and per-thread {@link RandomSource}. Run with {@code -t} to vary number of threads.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( 8 )
+@State( Scope.Benchmark )
+public class RandomSourceBenchmark {
+	private final SecureRandom shared = new SecureRandom();
+
+	@State( Scope.Thread )
+	public static class Buffer {
+		private final byte[] iv = new byte[ 12 ];
+	}
+
+	@Benchmark
+	public byte[] sharedSecureRandom(Buffer buffer) {
+		shared.nextBytes( buffer.iv );
+		return buffer.iv;
+	}
+
+	@Benchmark
+	public byte[] threadLocalDrbg(Buffer buffer) {
+		RandomSource.current().nextBytes( buffer.iv );
+		return buffer.iv;
+	}
+}
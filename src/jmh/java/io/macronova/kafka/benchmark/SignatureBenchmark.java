@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.macronova.kafka.common.serialization.GenerateSignatureSerializer;
+import io.macronova.kafka.common.serialization.VerifySignatureDeserializer;
+
+/**
+ * Measures throughput of signature generation and verification for small and large records, comparing RSA (2048 bits),
+ * length-prefixed ECDSA (P-256) and Ed25519.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class SignatureBenchmark {
+	@Param( { "SHA256withRSA", "SHA256withECDSA", "Ed25519" } )
+	private String algorithm;
+
+	@Param( { "200", "65536" } )
+	private int size;
+
+	private File keyStore = null;
+	private GenerateSignatureSerializer serializer = null;
+	private VerifySignatureDeserializer deserializer = null;
+	private byte[] data = null;
+	private byte[] signed = null;
+
+	@Setup
+	public void setUp() throws Exception {
+		final Map<String, Object> configuration = new HashMap<>();
+		configuration.put( "algorithm", algorithm );
+		if ( "Ed25519".equals( algorithm ) ) {
+			keyStore = KeyStores.createEd25519();
+			configuration.put( "key.store.type", KeyStores.ED25519_TYPE );
+			configuration.put( "key.store.alias", KeyStores.ED25519_ALIAS );
+		}
+		else if ( algorithm.endsWith( "ECDSA" ) ) {
+			keyStore = KeyStores.create();
+			configuration.put( "key.store.alias", KeyStores.EC_ALIAS );
+			configuration.put( "signature.framing", "length-prefixed" );
+		}
+		else {
+			keyStore = KeyStores.create();
+			configuration.put( "key.store.alias", KeyStores.RSA_ALIAS );
+		}
+		configuration.put( "key.store.path", keyStore.getAbsolutePath() );
+		configuration.put( "key.store.password", KeyStores.PASSWORD );
+		configuration.put( "key.store.alias.password", KeyStores.PASSWORD );
+		serializer = new GenerateSignatureSerializer();
+		serializer.configure( configuration, false );
+		deserializer = new VerifySignatureDeserializer();
+		deserializer.configure( configuration, false );
+		data = new byte[ size ];
+		new Random( 42 ).nextBytes( data );
+		signed = serializer.serialize( "topic1", data );
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializer.close();
+		deserializer.close();
+		keyStore.delete();
+	}
+
+	@Benchmark
+	public byte[] serialize() {
+		return serializer.serialize( "topic1", data );
+	}
+
+	@Benchmark
+	public byte[] deserialize() {
+		return deserializer.deserialize( "topic1", signed );
+	}
+}
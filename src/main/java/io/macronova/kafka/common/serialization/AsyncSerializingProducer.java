@@ -0,0 +1,289 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Moves serialization, e.g. encryption or signing, off the thread sending records. Records are enqueued to one of
+ * bounded lanes, each served by single worker thread which serializes key and value and passes the result to
+ * underlying producer configured with {@code ByteArraySerializer}. Lane is selected by explicit partition of the
+ * record or by its key, so records sharing partition or key are serialized and sent in order. Records without key
+ * and partition are distributed round-robin.
+ * <p/>
+ *
+ * Sending thread blocks when selected lane is full, at most for configured enqueue timeout, after which returned
+ * future fails with {@link TimeoutException}. Serialization errors fail returned future as well. Key and value
+ * serializers need to be thread-safe, which holds for all serializers of this library. Headers written by
+ * serializers (see {@link ExtendedSerializer}) are sent with the record.
+ * <p/>
+ *
+ * Example usage:
+ * <blockquote><pre>
+ * final AsyncSerializingProducer&lt;String, Object&gt; async = new AsyncSerializingProducer&lt;&gt;(
+ *         new KafkaProducer&lt;&gt;( properties, new ByteArraySerializer(), new ByteArraySerializer() ),
+ *         new StringSerializer(), chainedSerializer, 4, 1024, 1000L
+ * );
+ * async.send( new ProducerRecord&lt;String, Object&gt;( "topic1", "key", value ) ).thenAccept( ... );
+ * </pre></blockquote>
+ *
+ * @param <K> Type of record key.
+ * @param <V> Type of record value.
+ */
+public class AsyncSerializingProducer<K, V> implements Closeable {
+	private static final Runnable STOP = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	private final Producer<byte[], byte[]> producer;
+	private final ExtendedSerializer<K> keySerializer;
+	private final ExtendedSerializer<V> valueSerializer;
+	private final Lane[] lanes;
+	private final long enqueueTimeoutMs;
+	private final AtomicInteger roundRobin = new AtomicInteger();
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private boolean closed = false;
+
+	/**
+	 * @param producer Producer accepting serialized records. Not closed by {@link #close()}.
+	 * @param keySerializer Configured key serializer.
+	 * @param valueSerializer Configured value serializer.
+	 * @param threads Number of lanes, each served by dedicated thread.
+	 * @param queueCapacity Maximum number of records waiting in single lane.
+	 * @param enqueueTimeoutMs Maximum time to wait for free space in full lane.
+	 */
+	public AsyncSerializingProducer(Producer<byte[], byte[]> producer, Serializer<K> keySerializer,
+									Serializer<V> valueSerializer, int threads, int queueCapacity,
+									long enqueueTimeoutMs) {
+		if ( threads <= 0 || queueCapacity <= 0 ) {
+			throw new IllegalArgumentException( "Number of threads and queue capacity have to be positive." );
+		}
+		this.producer = producer;
+		this.keySerializer = extended( keySerializer );
+		this.valueSerializer = extended( valueSerializer );
+		this.enqueueTimeoutMs = enqueueTimeoutMs;
+		this.lanes = new Lane[ threads ];
+		for ( int i = 0; i < threads; ++i ) {
+			lanes[i] = new Lane( i, queueCapacity );
+		}
+	}
+
+	private static <T> ExtendedSerializer<T> extended(Serializer<T> serializer) {
+		return serializer instanceof ExtendedSerializer
+				? (ExtendedSerializer<T>) serializer : new ExtendedSerializer.Wrapper<>( serializer );
+	}
+
+	/**
+	 * Enqueue record for serialization and sending.
+	 *
+	 * @param record Record to send.
+	 * @return Future completed with metadata of sent record, or exceptionally in case of serialization
+	 *         or send failure.
+	 */
+	public CompletableFuture<RecordMetadata> send(ProducerRecord<K, V> record) {
+		final SendTask task = new SendTask( record );
+		closeLock.readLock().lock();
+		try {
+			if ( closed ) {
+				task.future.completeExceptionally( new IllegalStateException( "Producer has been closed." ) );
+			}
+			else if ( ! lanes[ lane( record ) ].queue.offer( task, enqueueTimeoutMs, TimeUnit.MILLISECONDS ) ) {
+				task.future.completeExceptionally(
+						new TimeoutException( String.format( "Failed to enqueue record after %d ms.", enqueueTimeoutMs ) )
+				);
+			}
+		}
+		catch ( InterruptedException e ) {
+			throw new InterruptException( e );
+		}
+		finally {
+			closeLock.readLock().unlock();
+		}
+		return task.future;
+	}
+
+	private int lane(ProducerRecord<K, V> record) {
+		final int hash;
+		if ( record.partition() != null ) {
+			hash = record.partition();
+		}
+		else if ( record.key() instanceof byte[] ) {
+			hash = Arrays.hashCode( (byte[]) record.key() );
+		}
+		else if ( record.key() != null ) {
+			hash = record.key().hashCode();
+		}
+		else {
+			hash = roundRobin.getAndIncrement();
+		}
+		return ( hash & 0x7FFFFFFF ) % lanes.length;
+	}
+
+	/**
+	 * Wait until all records enqueued so far are passed to underlying producer, and flush the producer.
+	 */
+	public void flush() {
+		final CountDownLatch latch = new CountDownLatch( lanes.length );
+		final Runnable marker = new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+		closeLock.readLock().lock();
+		try {
+			if ( ! closed ) {
+				for ( Lane lane : lanes ) {
+					lane.queue.put( marker );
+				}
+				latch.await();
+			}
+		}
+		catch ( InterruptedException e ) {
+			throw new InterruptException( e );
+		}
+		finally {
+			closeLock.readLock().unlock();
+		}
+		producer.flush();
+	}
+
+	/**
+	 * Send all enqueued records, stop worker threads and close serializers. Underlying producer remains open.
+	 */
+	@Override
+	public void close() {
+		closeLock.writeLock().lock();
+		try {
+			if ( closed ) {
+				return;
+			}
+			closed = true;
+		}
+		finally {
+			closeLock.writeLock().unlock();
+		}
+		try {
+			for ( Lane lane : lanes ) {
+				lane.queue.put( STOP );
+			}
+			for ( Lane lane : lanes ) {
+				lane.thread.join();
+			}
+		}
+		catch ( InterruptedException e ) {
+			throw new InterruptException( e );
+		}
+		finally {
+			keySerializer.close();
+			valueSerializer.close();
+		}
+	}
+
+	/**
+	 * Bounded queue of records served by single thread.
+	 */
+	private static final class Lane implements Runnable {
+		private final BlockingQueue<Runnable> queue;
+		private final Thread thread;
+
+		private Lane(int id, int capacity) {
+			queue = new ArrayBlockingQueue<>( capacity );
+			thread = new Thread( this, "async-serializing-producer-" + id );
+			thread.setDaemon( true );
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			final List<Runnable> tasks = new ArrayList<>();
+			try {
+				while ( true ) {
+					tasks.add( queue.take() );
+					queue.drainTo( tasks );
+					for ( Runnable task : tasks ) {
+						if ( task == STOP ) {
+							return;
+						}
+						task.run();
+					}
+					tasks.clear();
+				}
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final class SendTask implements Runnable, Callback {
+		private final ProducerRecord<K, V> record;
+		private final CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+
+		private SendTask(ProducerRecord<K, V> record) {
+			this.record = record;
+		}
+
+		@Override
+		public void run() {
+			try {
+				final byte[] key = keySerializer.serialize( record.topic(), record.headers(), record.key() );
+				final byte[] value = valueSerializer.serialize( record.topic(), record.headers(), record.value() );
+				producer.send(
+						new ProducerRecord<>(
+								record.topic(), record.partition(), record.timestamp(), key, value, record.headers()
+						),
+						this
+				);
+			}
+			catch ( Exception e ) {
+				future.completeExceptionally( e );
+			}
+		}
+
+		@Override
+		public void onCompletion(RecordMetadata metadata, Exception exception) {
+			if ( exception != null ) {
+				future.completeExceptionally( exception );
+			}
+			else {
+				future.complete( metadata );
+			}
+		}
+	}
+}
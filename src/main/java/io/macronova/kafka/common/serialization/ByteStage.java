@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Byte-to-byte transformation implemented by serializers and deserializers which operate on output of other
+ * serializers, e.g. encryption, signature or compression. {@link ChainedSerializer} and {@link ChainedDeserializer}
+ * pass buffers between consecutive stages directly, so that intermediate results are neither copied to exact-size
+ * arrays nor defensively copied by stages returning views of their input. Only output of the last stage is
+ * materialized as byte array. Stages must not modify content of their input, so that returned views of the input
+ * do not need to be read-only.
+ */
+public interface ByteStage {
+	/**
+	 * Transform remaining content of given buffer.
+	 *
+	 * @param topic Topic name.
+	 * @param data Input data. Position of the buffer is not modified. May be {@code null}.
+	 * @return Output data, or {@code null} if input was {@code null}. Returned buffer may be a view of the input or of
+	 *         memory reused by the stage, and remains valid only until the same thread invokes the stage again.
+	 */
+	ByteBuffer apply(String topic, ByteBuffer data);
+
+	/**
+	 * Transform remaining content of given buffer, exchanging metadata through Kafka record headers. Stages
+	 * configured with {@code metadata.location=headers} write metadata to headers instead of output bytes, and all
+	 * stages read it from headers when present. Default implementation ignores headers.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}, in which case metadata is embedded in the data.
+	 * @param data Input data. Position of the buffer is not modified. May be {@code null}.
+	 * @return Output data, see {@link #apply(String, ByteBuffer)}.
+	 */
+	default ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		return apply( topic, data );
+	}
+}
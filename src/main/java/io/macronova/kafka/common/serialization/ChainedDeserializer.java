@@ -15,15 +15,21 @@
  */
 package io.macronova.kafka.common.serialization;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
 
 /**
- * Executes ordered chain of deserializers passing output of one to another.
+ * Executes ordered chain of deserializers passing output of one to another. Consecutive deserializers implementing
+ * {@link ByteStage} exchange {@link ByteBuffer} directly, only output of the last one is copied to byte array.
+ * Record headers are passed to byte stages and to deserializers implementing {@link ExtendedDeserializer}.
  * <p/>
  * Example configuration:
  * <br/><blockquote><pre>
@@ -32,7 +38,7 @@ import org.apache.kafka.common.serialization.Deserializer;
  * 1.deserializer = org.apache.kafka.common.serialization.StringDeserializer
  * </pre></blockquote>
  */
-public class ChainedDeserializer extends BaseChainedSerDe implements Deserializer<Object> {
+public class ChainedDeserializer extends BaseChainedSerDe implements ExtendedDeserializer<Object> {
 	public static final String DESERIALIZER_CLASS_CONFIG = "deserializer";
 	private final List<Deserializer<Object>> deserializers = new ArrayList<>();
 
@@ -75,15 +81,49 @@ public class ChainedDeserializer extends BaseChainedSerDe implements Deserialize
 
 	@Override
 	public Object deserialize(String topic, byte[] data) {
+		return deserialize( topic, null, data );
+	}
+
+	@Override
+	public Object deserialize(String topic, Headers headers, byte[] data) {
 		Object result = data;
+		// Output of previous byte stage, passed to consecutive stages without materializing byte array.
+		ByteBuffer buffer = null;
 		for ( Deserializer<Object> deserializer : deserializers ) {
-			result = deserializer.deserialize( topic, (byte[]) result );
+			if ( deserializer instanceof ByteStage && ( buffer != null || result instanceof byte[] ) ) {
+				buffer = ( (ByteStage) deserializer ).apply(
+						topic, headers, buffer != null ? buffer : ByteBuffer.wrap( (byte[]) result )
+				);
+				result = null;
+			}
+			else {
+				if ( buffer != null ) {
+					result = IOUtils.toByteArray( buffer );
+					buffer = null;
+				}
+				if ( headers != null && deserializer instanceof ExtendedDeserializer ) {
+					result = ( (ExtendedDeserializer<Object>) deserializer ).deserialize( topic, headers, (byte[]) result );
+				}
+				else {
+					result = deserializer.deserialize( topic, (byte[]) result );
+				}
+			}
 		}
-		return result;
+		return buffer != null ? IOUtils.toByteArray( buffer ) : result;
 	}
 
+	/**
+	 * Close child deserializers, which may hold key store watchers and shared key store handles.
+	 */
 	@Override
 	public void close() {
-		deserializers.clear();
+		try {
+			for ( Deserializer<Object> child : deserializers ) {
+				IOUtils.closeQuietly( child );
+			}
+		}
+		finally {
+			deserializers.clear();
+		}
 	}
 }
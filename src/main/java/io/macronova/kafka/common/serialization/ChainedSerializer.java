@@ -15,15 +15,21 @@
  */
 package io.macronova.kafka.common.serialization;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
 import org.apache.kafka.common.serialization.Serializer;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
 
 /**
- * Executes ordered chain of serializers passing output of one to another.
+ * Executes ordered chain of serializers passing output of one to another. Consecutive serializers implementing
+ * {@link ByteStage} exchange {@link ByteBuffer} directly, only output of the last one is copied to byte array.
+ * Record headers are passed to byte stages and to serializers implementing {@link ExtendedSerializer}.
  * <p/>
  * Example configuration:
  * <br/><blockquote><pre>
@@ -32,7 +38,7 @@ import org.apache.kafka.common.serialization.Serializer;
  * 1.schema.registry.url = http://localhost:8081/
  * </pre></blockquote>
  */
-public class ChainedSerializer extends BaseChainedSerDe implements Serializer<Object> {
+public class ChainedSerializer extends BaseChainedSerDe implements ExtendedSerializer<Object> {
 	public static final String SERIALIZER_CLASS_CONFIG = "serializer";
 	private final List<Serializer<Object>> serializers = new ArrayList<>();
 
@@ -75,15 +81,49 @@ public class ChainedSerializer extends BaseChainedSerDe implements Serializer<Ob
 
 	@Override
 	public byte[] serialize(String topic, Object data) {
+		return serialize( topic, null, data );
+	}
+
+	@Override
+	public byte[] serialize(String topic, Headers headers, Object data) {
 		Object result = data;
+		// Output of previous byte stage, passed to consecutive stages without materializing byte array.
+		ByteBuffer buffer = null;
 		for ( Serializer<Object> serializer : serializers ) {
-			result = serializer.serialize( topic, result );
+			if ( serializer instanceof ByteStage && ( buffer != null || result instanceof byte[] ) ) {
+				buffer = ( (ByteStage) serializer ).apply(
+						topic, headers, buffer != null ? buffer : ByteBuffer.wrap( (byte[]) result )
+				);
+				result = null;
+			}
+			else {
+				if ( buffer != null ) {
+					result = IOUtils.toByteArray( buffer );
+					buffer = null;
+				}
+				if ( headers != null && serializer instanceof ExtendedSerializer ) {
+					result = ( (ExtendedSerializer<Object>) serializer ).serialize( topic, headers, result );
+				}
+				else {
+					result = serializer.serialize( topic, result );
+				}
+			}
 		}
-		return (byte[]) result;
+		return buffer != null ? IOUtils.toByteArray( buffer ) : (byte[]) result;
 	}
 
+	/**
+	 * Close child serializers, which may hold key store watchers and shared key store handles.
+	 */
 	@Override
 	public void close() {
-		serializers.clear();
+		try {
+			for ( Serializer<Object> child : serializers ) {
+				IOUtils.closeQuietly( child );
+			}
+		}
+		finally {
+			serializers.clear();
+		}
 	}
 }
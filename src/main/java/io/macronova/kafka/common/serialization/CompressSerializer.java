@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+import io.macronova.kafka.common.serialization.config.CompressSerializerConfig;
+import io.macronova.kafka.common.serialization.utils.CompressionCodec;
+import io.macronova.kafka.common.serialization.utils.Entropy;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
+
+/**
+ * Compress data with LZ4, Snappy or Zstandard. Ciphertext does not compress, therefore Kafka producer compression
+ * is ineffective for encrypted topics. Place compression serializer before encryption in {@link ChainedSerializer}
+ * to reduce network and storage cost. Small records and records estimated to be incompressible based on sampled
+ * entropy are stored uncompressed, as well as records which would grow after compression.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * codec = zstd
+ * level = 3
+ * </pre></blockquote>
+ *
+ * Zstandard codec accepts pre-trained dictionary ({@code dictionary.path}), which improves compression of small
+ * records several times. Dictionary identifier is written to every record, so that consumers can keep decoding
+ * records compressed with previous dictionaries. Dictionaries are created with
+ * {@link io.macronova.kafka.common.serialization.utils.ZstdDictionaryTrainer}.
+ * <p/>
+ *
+ * Output byte array format (dictionary identifier and length of uncompressed data are 4-byte big-endian integers):
+ * <blockquote><pre>
+ * +--------------------------------------------+
+ * | codec | length | compressed                |
+ * +--------------------------------------------+
+ * | codec | dictionary | length | compressed   |
+ * +--------------------------------------------+
+ * | 0     | data                               |
+ * +--------------------------------------------+
+ * </pre></blockquote>
+ */
+public class CompressSerializer implements Serializer<byte[]>, ByteStage {
+	private static final int ENTROPY_MIN_SIZE = 1024;
+	private static final int SCRATCH_MAX_SIZE = 1024 * 1024;
+
+	/**
+	 * Per-thread buffer receiving compressed data, reused unless record exceeds {@value #SCRATCH_MAX_SIZE} bytes.
+	 */
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ 0 ];
+		}
+	};
+
+	private CompressionCodec codec = null;
+	private int headerLength = 0;
+	private int minSize = 0;
+	private double entropyThreshold = 0.0;
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		final CompressSerializerConfig config = new CompressSerializerConfig( configs );
+		try {
+			if ( config.getDictionaryPath() != null ) {
+				codec = CompressionCodec.create( readDictionary( config.getDictionaryPath() ), config.getLevel() );
+			}
+			else {
+				codec = CompressionCodec.create( config.getCodec(), config.getLevel() );
+			}
+			codec.maxCompressedLength( 0 );
+		}
+		catch ( Throwable e ) {
+			// Missing codec library surfaces as NoClassDefFoundError.
+			throw new ConfigException( String.format( "Failed to initialize compression codec: %s.", e.getMessage() ), e );
+		}
+		headerLength = codec.getDictionaryId() != 0 ? 9 : 5;
+		minSize = config.getMinSize();
+		entropyThreshold = config.getEntropyThreshold();
+	}
+
+	@Override
+	public byte[] serialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		// Compressed output is always shorter than the per-thread buffer, hence it gets copied.
+		return IOUtils.toByteArray( compress( data, 0, data.length ) );
+	}
+
+	/**
+	 * Compress remaining content of given buffer. Compressed output is a view of per-thread buffer, valid until
+	 * next invocation by the same thread.
+	 */
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		if ( data.hasArray() ) {
+			return compress( data.array(), data.arrayOffset() + data.position(), data.remaining() );
+		}
+		final byte[] bytes = IOUtils.toByteArray( data );
+		return compress( bytes, 0, bytes.length );
+	}
+
+	/**
+	 * @return Buffer covering whole backing array of uncompressed output, or a view of per-thread buffer
+	 *         containing compressed output.
+	 */
+	private ByteBuffer compress(byte[] data, int offset, int length) {
+		if ( length < minSize
+				|| ( length >= ENTROPY_MIN_SIZE && Entropy.estimate( data, offset, length ) > entropyThreshold ) ) {
+			return uncompressed( data, offset, length );
+		}
+		try {
+			final int maxLength = headerLength + codec.maxCompressedLength( length );
+			byte[] scratch = SCRATCH.get();
+			if ( scratch.length < maxLength ) {
+				scratch = new byte[ maxLength ];
+				if ( maxLength <= SCRATCH_MAX_SIZE ) {
+					SCRATCH.set( scratch );
+				}
+			}
+			final int outputLength = headerLength + codec.compress(
+					data, offset, length, scratch, headerLength, maxLength - headerLength
+			);
+			if ( outputLength > length ) {
+				return uncompressed( data, offset, length );
+			}
+			final ByteBuffer header = ByteBuffer.wrap( scratch, 0, headerLength );
+			header.put( codec.getId() );
+			if ( codec.getDictionaryId() != 0 ) {
+				header.putInt( codec.getDictionaryId() );
+			}
+			header.putInt( length );
+			return ByteBuffer.wrap( scratch, 0, outputLength );
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to compress content: %s.", e.getMessage() ), e );
+		}
+	}
+
+	static byte[] readDictionary(String path) throws IOException {
+		return Files.readAllBytes( Paths.get( path ) );
+	}
+
+	private static ByteBuffer uncompressed(byte[] data, int offset, int length) {
+		final byte[] output = new byte[ 1 + length ];
+		output[0] = CompressionCodec.NONE;
+		System.arraycopy( data, offset, output, 1, length );
+		return ByteBuffer.wrap( output );
+	}
+
+	@Override
+	public void close() {
+		codec = null;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import io.macronova.kafka.common.serialization.config.DecompressDeserializerConfig;
+import io.macronova.kafka.common.serialization.utils.CompressionCodec;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
+
+/**
+ * Decompress data produced by {@link CompressSerializer}. Codec is determined by the first byte of input data,
+ * so deserializer handles records compressed with different codecs. Records compressed with Zstandard dictionary
+ * require the dictionary to be listed in {@code dictionary.path} property. Uncompressed length declared by the record
+ * is bounded by {@code decompression.max.bytes}, so that malicious input cannot exhaust memory.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * dictionary.path = /etc/kafka/events-v2.dict,/etc/kafka/events-v1.dict
+ * decompression.max.bytes = 16777216
+ * </pre></blockquote>
+ */
+public class DecompressDeserializer implements Deserializer<byte[]>, ByteStage {
+	private final CompressionCodec[] codecs = new CompressionCodec[ CompressionCodec.ZSTD + 1 ];
+	private final Map<Integer, CompressionCodec> dictionaries = new HashMap<>();
+	private int maxLength = DecompressDeserializerConfig.DECOMPRESSION_MAX_BYTES_DEFAULT;
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		final DecompressDeserializerConfig config = new DecompressDeserializerConfig( configs );
+		maxLength = config.getDecompressionMaxBytes();
+		for ( String path : config.getDictionaryPaths() ) {
+			try {
+				final CompressionCodec codec = CompressionCodec.create( CompressSerializer.readDictionary( path ), 0 );
+				dictionaries.put( codec.getDictionaryId(), codec );
+			}
+			catch ( Throwable e ) {
+				throw new ConfigException( String.format( "Failed to load compression dictionary '%s': %s.", path, e.getMessage() ), e );
+			}
+		}
+	}
+
+	@Override
+	public byte[] deserialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( deserialize( topic, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Decompress given buffer. Uncompressed records are returned without copying.
+	 *
+	 * @param topic Topic name.
+	 * @param data Codec identifier followed by compressed data. Position of the buffer is not modified.
+	 * @return Buffer wrapping decompressed data, or read-only view of the input for uncompressed records.
+	 */
+	public ByteBuffer deserialize(String topic, ByteBuffer data) {
+		return decompress( data, true );
+	}
+
+	/**
+	 * Same as {@link #deserialize(String, ByteBuffer)}, but returns writable view of the input for uncompressed
+	 * records, given that byte stages never modify their input.
+	 */
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		return decompress( data, false );
+	}
+
+	private ByteBuffer decompress(ByteBuffer data, boolean readOnly) {
+		if ( data == null ) {
+			return null;
+		}
+		try {
+			final ByteBuffer input = data.duplicate();
+			if ( ! input.hasRemaining() ) {
+				throw new SerializationException( "Missing compression codec identifier." );
+			}
+			final byte id = input.get();
+			if ( id == CompressionCodec.NONE ) {
+				return readOnly ? input.slice().asReadOnlyBuffer() : input.slice();
+			}
+			if ( input.remaining() < ( id == CompressionCodec.ZSTD_DICTIONARY ? 8 : 4 ) ) {
+				throw new SerializationException( "Unexpected end of compressed content." );
+			}
+			final CompressionCodec codec = id == CompressionCodec.ZSTD_DICTIONARY ? dictionary( input.getInt() ) : codec( id );
+			final int length = input.getInt();
+			if ( length < 0 ) {
+				throw new SerializationException( String.format( "Invalid uncompressed length %d.", length ) );
+			}
+			if ( length > maxLength ) {
+				throw new SerializationException(
+						String.format( "Uncompressed length %d exceeds limit of %d bytes.", length, maxLength )
+				);
+			}
+			final byte[] output = new byte[ length ];
+			if ( input.hasArray() ) {
+				codec.decompress( input.array(), input.arrayOffset() + input.position(), input.remaining(), output, 0, length );
+			}
+			else {
+				final byte[] compressed = IOUtils.toByteArray( input );
+				codec.decompress( compressed, 0, compressed.length, output, 0, length );
+			}
+			return ByteBuffer.wrap( output );
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to decompress content: %s.", e.getMessage() ), e );
+		}
+	}
+
+	private CompressionCodec dictionary(int id) {
+		final CompressionCodec codec = dictionaries.get( id );
+		if ( codec == null ) {
+			throw new SerializationException( String.format( "Unknown compression dictionary %d.", id ) );
+		}
+		return codec;
+	}
+
+	private CompressionCodec codec(byte id) {
+		if ( id < 0 || id >= codecs.length ) {
+			throw new SerializationException( String.format( "Unknown compression codec identifier %d.", id ) );
+		}
+		CompressionCodec codec = codecs[ id ];
+		if ( codec == null ) {
+			// Benign race, codecs are stateless from the caller perspective.
+			codec = CompressionCodec.create( id );
+			codecs[ id ] = codec;
+		}
+		return codec;
+	}
+
+	@Override
+	public void close() {
+	}
+}
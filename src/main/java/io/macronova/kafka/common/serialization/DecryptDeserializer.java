@@ -15,22 +15,28 @@
  */
 package io.macronova.kafka.common.serialization;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.Key;
 import java.security.KeyStore;
-import java.security.PrivateKey;
 import java.util.Map;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
 import io.macronova.kafka.common.serialization.config.DecryptDeserializerConfig;
+import io.macronova.kafka.common.serialization.utils.CipherPlan;
+import io.macronova.kafka.common.serialization.utils.CipherPlanRegistry;
 import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
 import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+import io.macronova.kafka.common.serialization.utils.KeyStoreWatcher;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
 
 /**
  * Decrypt data with secret key or certificate loaded from keystore. If chosen cipher requires initialization vector,
@@ -53,37 +59,127 @@ import io.macronova.kafka.common.serialization.utils.IOUtils;
  * key.store.alias.password = donotchange
  * </pre></blockquote>
  *
+ * Example configuration (key ring, data encrypted with any of the keys):
+ * <blockquote><pre>
+ * transformation = AES/CBC/PKCS5Padding
+ * secrets = AFE2B05E3CB2B87AE0B2CF1D9C27A9B5,770A8A65DA156D24EE2A093277530142
+ * </pre></blockquote>
+ *
  * Deserializer expects input data representation analogical to output generated by {@link EncryptSerializer}.
+ * In case of key ring, decryption key is looked up by identifier present in the input (see {@link KeyRing}).
+ * With {@code metadata.location = headers}, key identifier and initialization vector are read from record headers
+ * whenever present.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, {@link WireFormat} header is validated against known transformations,
+ * keys and expected lengths before decryption. Besides configured transformation, records may use any of
+ * {@code wire.format.allowed.transformations}, so that topics mixing different modes of configured algorithm can
+ * be consumed during migration.
  */
-public class DecryptDeserializer implements Deserializer<byte[]> {
-	private DecryptDeserializerConfig config = null;
-	private PrivateKey privateKey = null;
+public class DecryptDeserializer implements ExtendedDeserializer<byte[]>, ByteStage {
+	private KeyStoreRegistry.Handle keyStoreHandle = null;
+	private KeyStoreWatcher.Watch keyStoreWatch = null;
+	private CipherPlan plan = null;
+	private boolean useKeyRing = false;
+	private volatile KeyRing keyRing = null;
+	private boolean useHeaders = false;
+	private String keyIdHeader = null;
+	private String ivHeader = null;
+	private CipherPlanRegistry plans = null;
+	private boolean requireWireFormat = false;
+	private boolean detectWireFormat = false;
 
 	@Override
 	public void configure(Map<String, ?> configs, boolean isKey) {
-		config = new DecryptDeserializerConfig( configs );
+		final DecryptDeserializerConfig config = new DecryptDeserializerConfig( configs );
+		try {
+			plan = EncryptionHelper.cipherPlan(
+					config.getTransformation(), null, SecurityProviders.forCipher( config.getProvider(), config.getTransformation() )
+			);
+			plans = new CipherPlanRegistry( plan, config.getWireFormatAllowedTransformations(), config.getProvider() );
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize cipher: %s.", e.getMessage() ), e );
+		}
+		requireWireFormat = DecryptDeserializerConfig.WIRE_FORMAT_V1.equals( config.getWireFormat() );
+		detectWireFormat = DecryptDeserializerConfig.WIRE_FORMAT_AUTO.equals( config.getWireFormat() );
+		if ( ( requireWireFormat || detectWireFormat ) && WireFormat.cipherId( config.getTransformation() ) == 0 ) {
+			throw new ConfigException(
+					String.format( "Transformation '%s' is not supported by wire format.", config.getTransformation() )
+			);
+		}
+		useKeyRing = config.useKeyRing();
+		final String headerPrefix = HeaderHelper.prefix( config.getHeaderPrefix(), isKey );
+		useHeaders = config.useHeaders();
+		keyIdHeader = headerPrefix + HeaderHelper.KEY_ID;
+		ivHeader = headerPrefix + HeaderHelper.IV;
 		if ( config.useCertificate() ) {
 			try {
-				final KeyStore keyStore = EncryptionHelper.loadKeyStore(
-						config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
-				);
-				final KeyStore.PasswordProtection keyPassword = new KeyStore.PasswordProtection(
-						config.getKeyAliasPassword().toCharArray()
-				);
-				final KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) keyStore.getEntry(
-						config.getKeyAlias(), keyPassword
+				loadKeyStore( config );
+			}
+			catch ( Exception e ) {
+				throw new ConfigException( String.format( "Failed to retrieve private key: %s.", e.getMessage() ), e );
+			}
+		}
+		else {
+			try {
+				final KeyRing secrets = new KeyRing();
+				for ( byte[] secret : config.getSecrets() ) {
+					secrets.addSecret( EncryptionHelper.secretKey( config.getTransformation(), secret ), secret );
+				}
+				keyRing = secrets;
+			}
+			catch ( Exception e ) {
+				throw new ConfigException( String.format( "Failed to parse secret key: %s.", e.getMessage() ), e );
+			}
+		}
+		if ( config.useCertificate() && config.getKeyStoreReloadIntervalMs() > 0L ) {
+			keyStoreWatch = KeyStoreWatcher.watch(
+					config.getKeyStorePath(), config.getKeyStoreReloadIntervalMs(), new KeyStoreWatcher.Listener() {
+						@Override
+						public void onChange() throws Exception {
+							loadKeyStore( config );
+						}
+					}
+			);
+		}
+	}
+
+	/**
+	 * Load private keys from key store and replace the ones used for decryption. Invoked also by key store watcher.
+	 */
+	private synchronized void loadKeyStore(DecryptDeserializerConfig config) throws Exception {
+		if ( plan == null ) {
+			// Closed concurrently.
+			return;
+		}
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire(
+				config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
+		);
+		try {
+			final KeyRing privateKeys = new KeyRing();
+			for ( String alias : config.getKeyAliases() ) {
+				final KeyStore.PrivateKeyEntry privateKeyEntry = handle.getPrivateKeyEntry(
+						alias, config.getKeyAliasPassword().toCharArray()
 				);
 				if ( privateKeyEntry == null ) {
 					throw new ConfigException(
-							String.format( "Could not find alias '%s' in key store '%s'.", config.getKeyAlias(), config.getKeyStorePath() )
+							String.format( "Could not find alias '%s' in key store '%s'.", alias, config.getKeyStorePath() )
 					);
 				}
-				privateKey = privateKeyEntry.getPrivateKey();
-			}
-			catch ( Exception e ) {
-				throw new ConfigException( String.format( "Failed to retrieve private key: %s.", e.getMessage() ), e );
+				privateKeys.add(
+						privateKeyEntry.getPrivateKey(),
+						privateKeyEntry.getCertificate().getPublicKey().getEncoded()
+				);
 			}
+			keyRing = privateKeys;
 		}
+		catch ( Exception e ) {
+			handle.close();
+			throw e;
+		}
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = handle;
 	}
 
 	@Override
@@ -91,37 +187,128 @@ public class DecryptDeserializer implements Deserializer<byte[]> {
 		if ( data == null ) {
 			return null;
 		}
-		InputStream inputStream = null;
-		ByteArrayOutputStream outputStream = null;
+		return IOUtils.toByteArray( deserialize( topic, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Decrypt remaining content of given buffer without copying it upfront.
+	 *
+	 * @param topic Topic name.
+	 * @param data Encrypted data. Position of the buffer is not modified.
+	 * @return Buffer wrapping decrypted data.
+	 */
+	public ByteBuffer deserialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
 		try {
-			inputStream = new ByteArrayInputStream( data );
-			outputStream = new ByteArrayOutputStream();
-			final Cipher cipher = config.useCertificate()
-					? EncryptionHelper.initializeCipher(
-							Cipher.DECRYPT_MODE, config.getTransformation(), privateKey, inputStream, null
-					)
-					: EncryptionHelper.initializeCipher(
-							Cipher.DECRYPT_MODE, config.getTransformation(), config.getSecret(), inputStream, null
-					);
+			final KeyRing keys = keyRing;
+			if ( requireWireFormat || ( detectWireFormat && WireFormat.present( data, WireFormat.TYPE_ENCRYPT ) ) ) {
+				return decryptWireFormat( keys, data.duplicate() );
+			}
+			if ( useKeyRing ) {
+				// Lookup key by identifier written by serializer.
+				final ByteBuffer payload = data.duplicate();
+				final Key key = lookupKey( keys, EncryptionHelper.read( payload, KeyRing.KEY_ID_LENGTH ) );
+				return EncryptionHelper.decrypt( plan, key, payload );
+			}
+			return EncryptionHelper.decrypt( plan, keys.getPrimaryKey(), data );
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to decrypt content: %s.", e.getMessage() ), e );
+		}
+	}
 
-			final CipherInputStream cipherInputStream = new CipherInputStream( inputStream, cipher );
-			IOUtils.copy( cipherInputStream, outputStream );
-			cipherInputStream.close();
+	@Override
+	public byte[] deserialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( deserialize( topic, headers, ByteBuffer.wrap( data ) ) );
+	}
 
-			return outputStream.toByteArray();
+	/**
+	 * Decrypt remaining content of given buffer, reading key identifier and initialization vector from record
+	 * headers when present and enabled. Otherwise metadata is expected at the beginning of encrypted data.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}.
+	 * @param data Encrypted data. Position of the buffer is not modified.
+	 * @return Buffer wrapping decrypted data.
+	 */
+	public ByteBuffer deserialize(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		if ( ! useHeaders ) {
+			return deserialize( topic, data );
+		}
+		final byte[] keyId = HeaderHelper.get( headers, keyIdHeader );
+		final byte[] iv = HeaderHelper.get( headers, ivHeader );
+		if ( keyId == null && iv == null ) {
+			return deserialize( topic, data );
+		}
+		try {
+			final KeyRing keys = keyRing;
+			final Key key = keyId != null ? lookupKey( keys, keyId ) : keys.getPrimaryKey();
+			return EncryptionHelper.decryptDetached( plan, key, iv, data );
 		}
 		catch ( Exception e ) {
 			throw new SerializationException( String.format( "Failed to decrypt content: %s.", e.getMessage() ), e );
 		}
-		finally {
-			IOUtils.closeQuietly( inputStream );
-			IOUtils.closeQuietly( outputStream );
+	}
+
+	/**
+	 * Validate wire format header against known transformations, keys and expected lengths before decryption.
+	 */
+	private ByteBuffer decryptWireFormat(KeyRing keys, ByteBuffer payload) throws Exception {
+		final WireFormat.Header header = WireFormat.read( payload, WireFormat.TYPE_ENCRYPT );
+		final CipherPlan selected = plans.get( header.getAlgorithm() );
+		if ( selected == null ) {
+			throw new SerializationException( String.format( "Unsupported transformation identifier %d", header.getAlgorithm() ) );
+		}
+		final Key key = keys.get( header.getKeyId() );
+		if ( key == null ) {
+			throw new SerializationException( String.format( "Unknown key identifier %08x", header.getKeyId() ) );
+		}
+		final int ivLength = selected.requiresIV() ? selected.getIvLength() : 0;
+		if ( header.getMetadataLength() != ivLength
+				|| ! WireFormat.validCiphertextLength( selected, payload.remaining() - ivLength ) ) {
+			throw new SerializationException( "Malformed content" );
+		}
+		return EncryptionHelper.decrypt( selected, key, payload );
+	}
+
+	private Key lookupKey(KeyRing keys, byte[] keyIdBytes) {
+		if ( keyIdBytes.length != KeyRing.KEY_ID_LENGTH ) {
+			throw new SerializationException( "Invalid key identifier" );
+		}
+		final int keyId = ByteBuffer.wrap( keyIdBytes ).getInt();
+		final Key key = keys.get( keyId );
+		if ( key == null ) {
+			throw new SerializationException( String.format( "Unknown key identifier %08x", keyId ) );
 		}
+		return key;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		return deserialize( topic, data );
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		return deserialize( topic, headers, data );
 	}
 
 	@Override
-	public void close() {
-		config = null;
-		privateKey = null;
+	public synchronized void close() {
+		IOUtils.closeQuietly( keyStoreWatch );
+		keyStoreWatch = null;
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = null;
+		plan = null;
+		plans = null;
+		keyRing = null;
 	}
 }
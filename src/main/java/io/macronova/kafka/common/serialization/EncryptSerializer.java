@@ -15,23 +15,26 @@
  */
 package io.macronova.kafka.common.serialization;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.security.KeyStore;
-import java.security.PublicKey;
+import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
 import java.util.Map;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 
 import io.macronova.kafka.common.serialization.config.EncryptSerializerConfig;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+import io.macronova.kafka.common.serialization.utils.CipherPlan;
 import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
 import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+import io.macronova.kafka.common.serialization.utils.KeyStoreWatcher;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
 
 /**
  * Encrypt data with secret key or certificate loaded from keystore. Whenever required, serializer generates
@@ -53,38 +56,127 @@ import io.macronova.kafka.common.serialization.utils.IOUtils;
  * key.store.alias = key1
  * </pre></blockquote>
  *
+ * Example configuration (key ring, data encrypted with the first key):
+ * <blockquote><pre>
+ * transformation = AES/CBC/PKCS5Padding
+ * secrets = 770A8A65DA156D24EE2A093277530142,AFE2B05E3CB2B87AE0B2CF1D9C27A9B5
+ * </pre></blockquote>
+ *
  * Output data representation:
  * <blockquote><pre>
- * +------------------------------------+
- * | initialization vector  | encrypted |
- * | (optional, 8-16 bytes) |   data    |
- * +------------------------------------+
+ * +----------------------------------------------------------+
+ * | key identifier      | initialization vector  | encrypted |
+ * | (key ring, 4 bytes) | (optional, 8-16 bytes) |   data    |
+ * +----------------------------------------------------------+
  * </pre></blockquote>
+ *
+ * Key identifier is present only if key ring has been configured (see {@link KeyRing}).
+ * <p/>
+ *
+ * With {@code metadata.location = headers}, key identifier and initialization vector are written to record
+ * headers {@code <prefix>key.id} and {@code <prefix>iv}, and output contains encrypted data only.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, output starts with {@link WireFormat} header carrying transformation
+ * and key identifier, followed by initialization vector and encrypted data.
  */
-public class EncryptSerializer implements Serializer<byte[]> {
-	private EncryptSerializerConfig config = null;
-	private PublicKey publicKey = null;
+public class EncryptSerializer implements ExtendedSerializer<byte[]>, ByteStage {
+	private KeyStoreRegistry.Handle keyStoreHandle = null;
+	private KeyStoreWatcher.Watch keyStoreWatch = null;
+	private CipherPlan plan = null;
+	private boolean useKeyRing = false;
+	private volatile KeyRing keyRing = null;
+	private boolean useHeaders = false;
+	private String keyIdHeader = null;
+	private String ivHeader = null;
+	private int algorithmId = 0;
 
 	@Override
 	public void configure(Map<String, ?> configs, boolean isKey) {
-		config = new EncryptSerializerConfig( configs );
+		final EncryptSerializerConfig config = new EncryptSerializerConfig( configs );
+		try {
+			plan = EncryptionHelper.cipherPlan(
+					config.getTransformation(), null, SecurityProviders.forCipher( config.getProvider(), config.getTransformation() )
+			);
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize cipher: %s.", e.getMessage() ), e );
+		}
+		if ( ! EncryptSerializerConfig.WIRE_FORMAT_LEGACY.equals( config.getWireFormat() ) ) {
+			algorithmId = WireFormat.cipherId( config.getTransformation() );
+			if ( algorithmId == 0 ) {
+				throw new ConfigException(
+						String.format( "Transformation '%s' is not supported by wire format.", config.getTransformation() )
+				);
+			}
+		}
+		useKeyRing = config.useKeyRing();
+		useHeaders = config.useHeaders();
+		final String headerPrefix = HeaderHelper.prefix( config.getHeaderPrefix(), isKey );
+		keyIdHeader = headerPrefix + HeaderHelper.KEY_ID;
+		ivHeader = headerPrefix + HeaderHelper.IV;
 		if ( config.useCertificate() ) {
 			try {
-				final KeyStore keyStore = EncryptionHelper.loadKeyStore(
-						config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
-				);
-				final Certificate certificate = keyStore.getCertificate( config.getKeyAlias() );
+				loadKeyStore( config );
+			}
+			catch ( Exception e ) {
+				throw new ConfigException( String.format( "Failed to retrieve public key: %s.", e.getMessage() ), e );
+			}
+		}
+		else {
+			try {
+				final KeyRing secrets = new KeyRing();
+				for ( byte[] secret : config.getSecrets() ) {
+					secrets.addSecret( EncryptionHelper.secretKey( config.getTransformation(), secret ), secret );
+				}
+				keyRing = secrets;
+			}
+			catch ( Exception e ) {
+				throw new ConfigException( String.format( "Failed to parse secret key: %s.", e.getMessage() ), e );
+			}
+		}
+		if ( config.useCertificate() && config.getKeyStoreReloadIntervalMs() > 0L ) {
+			keyStoreWatch = KeyStoreWatcher.watch(
+					config.getKeyStorePath(), config.getKeyStoreReloadIntervalMs(), new KeyStoreWatcher.Listener() {
+						@Override
+						public void onChange() throws Exception {
+							loadKeyStore( config );
+						}
+					}
+			);
+		}
+	}
+
+	/**
+	 * Load public keys from key store and replace the ones used for encryption. Invoked also by key store watcher.
+	 */
+	private synchronized void loadKeyStore(EncryptSerializerConfig config) throws Exception {
+		if ( plan == null ) {
+			// Closed concurrently.
+			return;
+		}
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire(
+				config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
+		);
+		try {
+			final KeyRing publicKeys = new KeyRing();
+			for ( String alias : config.getKeyAliases() ) {
+				final Certificate certificate = handle.getCertificate( alias );
 				if ( certificate == null ) {
 					throw new ConfigException(
-							String.format( "Could not find alias '%s' in key store '%s'.", config.getKeyAlias(), config.getKeyStorePath() )
+							String.format( "Could not find alias '%s' in key store '%s'.", alias, config.getKeyStorePath() )
 					);
 				}
-				publicKey = certificate.getPublicKey();
-			}
-			catch ( Exception e ) {
-				throw new ConfigException( String.format( "Failed to retrieve public key: %s.", e.getMessage() ), e );
+				publicKeys.add( certificate.getPublicKey(), certificate.getPublicKey().getEncoded() );
 			}
+			keyRing = publicKeys;
 		}
+		catch ( Exception e ) {
+			handle.close();
+			throw e;
+		}
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = handle;
 	}
 
 	@Override
@@ -92,37 +184,98 @@ public class EncryptSerializer implements Serializer<byte[]> {
 		if ( data == null ) {
 			return null;
 		}
-		final InputStream inputStream = new ByteArrayInputStream( data );
-		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		return serialize( topic, ByteBuffer.wrap( data ) );
+	}
+
+	/**
+	 * Encrypt remaining content of given buffer without copying it upfront.
+	 *
+	 * @param topic Topic name.
+	 * @param data Data to encrypt. Position of the buffer is not modified.
+	 * @return Encrypted data.
+	 */
+	public byte[] serialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
 		try {
-			final Cipher cipher = config.useCertificate()
-					? EncryptionHelper.initializeCipher(
-							Cipher.ENCRYPT_MODE, config.getTransformation(), publicKey,
-							null, outputStream
-					)
-					: EncryptionHelper.initializeCipher(
-							Cipher.ENCRYPT_MODE, config.getTransformation(), config.getSecret(),
-							null, outputStream
-					);
+			final KeyRing keys = keyRing;
+			if ( algorithmId != 0 ) {
+				final byte[] header = WireFormat.header(
+						WireFormat.TYPE_ENCRYPT, algorithmId, ByteBuffer.wrap( keys.getPrimaryKeyId() ).getInt(),
+						plan.requiresIV() ? plan.getIvLength() : 0
+				);
+				return EncryptionHelper.encrypt( plan, keys.getPrimaryKey(), header, data );
+			}
+			return EncryptionHelper.encrypt(
+					plan, keys.getPrimaryKey(), useKeyRing ? keys.getPrimaryKeyId() : null, data
+			);
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to encrypt content: %s.", e.getMessage() ), e );
+		}
+	}
 
-			final CipherInputStream cipherInputStream = new CipherInputStream( inputStream, cipher );
-			IOUtils.copy( cipherInputStream, outputStream );
-			cipherInputStream.close();
+	@Override
+	public byte[] serialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return serialize( topic, headers, ByteBuffer.wrap( data ) );
+	}
 
-			return outputStream.toByteArray();
+	/**
+	 * Encrypt remaining content of given buffer, storing key identifier and initialization vector in record
+	 * headers if configured.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}, in which case metadata is prepended to the output.
+	 * @param data Data to encrypt. Position of the buffer is not modified.
+	 * @return Encrypted data.
+	 */
+	public byte[] serialize(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		if ( ! useHeaders || headers == null ) {
+			return serialize( topic, data );
+		}
+		try {
+			final KeyRing keys = keyRing;
+			final byte[] iv = EncryptionHelper.randomIV( plan );
+			final byte[] result = EncryptionHelper.encryptDetached( plan, keys.getPrimaryKey(), iv, data );
+			if ( useKeyRing ) {
+				HeaderHelper.set( headers, keyIdHeader, keys.getPrimaryKeyId() );
+			}
+			if ( iv != null ) {
+				HeaderHelper.set( headers, ivHeader, iv );
+			}
+			return result;
 		}
 		catch ( Exception e ) {
 			throw new SerializationException( String.format( "Failed to encrypt content: %s.", e.getMessage() ), e );
 		}
-		finally {
-			IOUtils.closeQuietly( inputStream );
-			IOUtils.closeQuietly( outputStream );
-		}
 	}
 
 	@Override
-	public void close() {
-		config = null;
-		publicKey = null;
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		final byte[] result = serialize( topic, data );
+		return result != null ? ByteBuffer.wrap( result ) : null;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		final byte[] result = serialize( topic, headers, data );
+		return result != null ? ByteBuffer.wrap( result ) : null;
+	}
+
+	@Override
+	public synchronized void close() {
+		IOUtils.closeQuietly( keyStoreWatch );
+		keyStoreWatch = null;
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = null;
+		plan = null;
+		keyRing = null;
 	}
 }
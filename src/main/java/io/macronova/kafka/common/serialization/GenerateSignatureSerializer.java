@@ -15,20 +15,27 @@
  */
 package io.macronova.kafka.common.serialization;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.Signature;
-import java.util.Arrays;
 import java.util.Map;
 
 import io.macronova.kafka.common.serialization.config.GenerateSignatureConfig;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
 import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
 import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.KeyStoreWatcher;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.SignaturePool;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
 
 /**
  * Sign data with private key (typically RSA or DSA) loaded from keystore.
@@ -50,32 +57,93 @@ import io.macronova.kafka.common.serialization.utils.IOUtils;
  * | signature | data |
  * +------------------+
  * </pre></blockquote>
+ *
+ * With {@code metadata.location = headers}, signature is written to record header {@code <prefix>signature}
+ * and data is passed through unchanged.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, output starts with {@link WireFormat} header carrying algorithm,
+ * identifier of the key pair and signature length, followed by signature and data.
  */
-public class GenerateSignatureSerializer implements Serializer<byte[]> {
+public class GenerateSignatureSerializer implements ExtendedSerializer<byte[]>, ByteStage {
+	private KeyStoreRegistry.Handle keyStoreHandle = null;
+	private KeyStoreWatcher.Watch keyStoreWatch = null;
 	private GenerateSignatureConfig config = null;
-	private PrivateKey privateKey = null;
+	private SignaturePool signaturePool = null;
+	private boolean lengthPrefix = false;
+	private volatile SigningKey signingKey = null;
+	private boolean useHeaders = false;
+	private String signatureHeader = null;
+	private int algorithmId = 0;
 
 	@Override
 	public void configure(Map<String, ?> configs, boolean isKey) {
 		config = new GenerateSignatureConfig( configs );
 		try {
-			final KeyStore keyStore = EncryptionHelper.loadKeyStore(
-					config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
-			);
-			final KeyStore.PasswordProtection keyPassword = new KeyStore.PasswordProtection(
-					config.getKeyAliasPassword().toCharArray()
+			final Provider provider = SecurityProviders.forSignature( config.getProvider(), config.getAlgorithm() );
+			signaturePool = new SignaturePool( config.getAlgorithm(), provider );
+			lengthPrefix = config.useLengthPrefix();
+			useHeaders = config.useHeaders();
+			signatureHeader = HeaderHelper.prefix( config.getHeaderPrefix(), isKey ) + HeaderHelper.SIGNATURE;
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize signature: %s.", e.getMessage() ), e );
+		}
+		if ( ! GenerateSignatureConfig.WIRE_FORMAT_LEGACY.equals( config.getWireFormat() ) ) {
+			algorithmId = WireFormat.signatureId( config.getAlgorithm() );
+			if ( algorithmId == 0 ) {
+				throw new ConfigException(
+						String.format( "Signature algorithm '%s' is not supported by wire format.", config.getAlgorithm() )
+				);
+			}
+		}
+		try {
+			loadPrivateKey();
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to retrieve private key: %s.", e.getMessage() ), e );
+		}
+		if ( config.getKeyStoreReloadIntervalMs() > 0L ) {
+			keyStoreWatch = KeyStoreWatcher.watch(
+					config.getKeyStorePath(), config.getKeyStoreReloadIntervalMs(), new KeyStoreWatcher.Listener() {
+						@Override
+						public void onChange() throws Exception {
+							loadPrivateKey();
+						}
+					}
 			);
-			final KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) keyStore.getEntry( config.getKeyAlias(), keyPassword );
+		}
+	}
+
+	/**
+	 * Load private key from key store and replace the one used for signing. Invoked also by key store watcher.
+	 */
+	private synchronized void loadPrivateKey() throws Exception {
+		if ( config == null ) {
+			// Closed concurrently.
+			return;
+		}
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire(
+				config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
+		);
+		try {
+			final KeyStore.PrivateKeyEntry privateKeyEntry = handle.getPrivateKeyEntry( config.getKeyAlias(), config.getKeyAliasPassword().toCharArray() );
 			if ( privateKeyEntry == null ) {
 				throw new ConfigException(
 						String.format( "Could not find alias '%s' in key store '%s'.", config.getKeyAlias(), config.getKeyStorePath() )
 				);
 			}
-			privateKey = privateKeyEntry.getPrivateKey();
+			signingKey = new SigningKey(
+					privateKeyEntry.getPrivateKey(),
+					KeyRing.keyId( privateKeyEntry.getCertificate().getPublicKey().getEncoded() )
+			);
 		}
 		catch ( Exception e ) {
-			throw new ConfigException( String.format( "Failed to retrieve private key: %s.", e.getMessage() ), e );
+			handle.close();
+			throw e;
 		}
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = handle;
 	}
 
 	@Override
@@ -83,33 +151,164 @@ public class GenerateSignatureSerializer implements Serializer<byte[]> {
 		if ( data == null ) {
 			return null;
 		}
-		InputStream inputStream = null;
+		return serialize( topic, ByteBuffer.wrap( data ) );
+	}
+
+	/**
+	 * Sign remaining content of given buffer without copying it upfront.
+	 *
+	 * @param topic Topic name.
+	 * @param data Data to sign. Position of the buffer is not modified.
+	 * @return Signature followed by data.
+	 */
+	public byte[] serialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
 		try {
-			inputStream = new ByteArrayInputStream( data );
-			final Signature signature = EncryptionHelper.initializeSignature( config.getAlgorithm(), privateKey, true );
-			byte[] buffer = new byte[ 8192 ];
-			int bytesCount = 0;
-			while ( (bytesCount = inputStream.read( buffer )) != -1 ) {
-				signature.update( buffer, 0, bytesCount );
+			if ( algorithmId != 0 ) {
+				return signWireFormat( data );
+			}
+			final byte[] signature = sign( data );
+			final byte[] output = new byte[ signature.length + data.remaining() ];
+			System.arraycopy( signature, 0, output, 0, signature.length );
+			data.duplicate().get( output, signature.length, data.remaining() );
+			return output;
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to sign content: %s.", e.getMessage() ), e );
+		}
+	}
+
+	/**
+	 * @return Wire format header, followed by signature and data.
+	 */
+	private byte[] signWireFormat(ByteBuffer data) throws Exception {
+		final SigningKey key = signingKey;
+		final byte[] signature = signature( key.privateKey, data );
+		final byte[] output = new byte[ WireFormat.HEADER_LENGTH + signature.length + data.remaining() ];
+		WireFormat.write( output, WireFormat.TYPE_SIGNATURE, algorithmId, key.keyId, signature.length );
+		System.arraycopy( signature, 0, output, WireFormat.HEADER_LENGTH, signature.length );
+		data.duplicate().get( output, WireFormat.HEADER_LENGTH + signature.length, data.remaining() );
+		return output;
+	}
+
+	/**
+	 * Sign remaining content of given buffer.
+	 *
+	 * @param content Data to sign. Position of the buffer is not modified.
+	 * @return Signature represented according to configured framing, i.e. optionally preceded by its length.
+	 * @throws Exception Indicates failure.
+	 */
+	byte[] sign(ByteBuffer content) throws Exception {
+		final PrivateKey key = signingKey.privateKey;
+		final byte[] signatureBytes = signature( key, content );
+		if ( ! lengthPrefix ) {
+			final int expectedLength = EncryptionHelper.getSignatureLength( key );
+			if ( expectedLength > 0 && expectedLength != signatureBytes.length ) {
+				throw new SerializationException(
+						String.format( "Signature length %d differs from expected %d", signatureBytes.length, expectedLength )
+				);
 			}
-			final byte[] signatureBytes = signature.sign();
+			return signatureBytes;
+		}
+		final byte[] output = new byte[ 2 + signatureBytes.length ];
+		output[0] = (byte) ( signatureBytes.length >>> 8 );
+		output[1] = (byte) signatureBytes.length;
+		System.arraycopy( signatureBytes, 0, output, 2, signatureBytes.length );
+		return output;
+	}
 
-			byte[] output = Arrays.copyOf( signatureBytes, data.length + signatureBytes.length );
-			System.arraycopy( data, 0, output, signatureBytes.length, data.length );
+	private byte[] signature(PrivateKey key, ByteBuffer content) throws Exception {
+		try {
+			final Signature signature = signaturePool.signer( key );
+			EncryptionHelper.update( signature, content );
+			return signature.sign();
+		}
+		catch ( Exception e ) {
+			signaturePool.invalidate();
+			throw e;
+		}
+	}
 
-			return output;
+	@Override
+	public byte[] serialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		if ( ! useHeaders || headers == null ) {
+			return serialize( topic, data );
+		}
+		signToHeader( headers, ByteBuffer.wrap( data ) );
+		return data;
+	}
+
+	/**
+	 * Protect remaining content of given buffer, storing signature in record header if configured.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}, in which case signature is prepended to the output.
+	 * @param data Data to protect. Position of the buffer is not modified.
+	 * @return Data optionally preceded by signature.
+	 */
+	public byte[] serialize(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null || ! useHeaders || headers == null ) {
+			return serialize( topic, data );
+		}
+		signToHeader( headers, data );
+		return IOUtils.toByteArray( data );
+	}
+
+	/**
+	 * Sign remaining content of given buffer and store signature in record header. Header carries signature
+	 * length, hence signature is not framed.
+	 */
+	private void signToHeader(Headers headers, ByteBuffer data) {
+		try {
+			HeaderHelper.set( headers, signatureHeader, signature( signingKey.privateKey, data ) );
 		}
 		catch ( Exception e ) {
 			throw new SerializationException( String.format( "Failed to sign content: %s.", e.getMessage() ), e );
 		}
-		finally {
-			IOUtils.closeQuietly( inputStream );
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		final byte[] result = serialize( topic, data );
+		return result != null ? ByteBuffer.wrap( result ) : null;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null || ! useHeaders || headers == null ) {
+			return apply( topic, data );
 		}
+		signToHeader( headers, data );
+		return data.duplicate();
 	}
 
 	@Override
-	public void close() {
+	public synchronized void close() {
+		IOUtils.closeQuietly( keyStoreWatch );
+		keyStoreWatch = null;
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = null;
 		config = null;
-		privateKey = null;
+		signaturePool = null;
+		signingKey = null;
+	}
+
+	/**
+	 * Private key together with identifier of corresponding public key. Replaced as a whole when key store
+	 * is reloaded.
+	 */
+	private static final class SigningKey {
+		private final PrivateKey privateKey;
+		private final int keyId;
+
+		private SigningKey(PrivateKey privateKey, int keyId) {
+			this.privateKey = privateKey;
+			this.keyId = keyId;
+		}
 	}
 }
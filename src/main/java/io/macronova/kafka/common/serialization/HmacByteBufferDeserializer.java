@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+/**
+ * Variant of {@link HmacDeserializer} returning {@link ByteBuffer}. Returned buffer is a read-only view of
+ * input data following the tag, so that payload is never copied. Supports the same configuration properties as
+ * {@link HmacDeserializer}.
+ */
+public class HmacByteBufferDeserializer implements ExtendedDeserializer<ByteBuffer> {
+	private final HmacDeserializer deserializer = new HmacDeserializer();
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		deserializer.configure( configs, isKey );
+	}
+
+	@Override
+	public ByteBuffer deserialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return deserializer.deserialize( topic, ByteBuffer.wrap( data ) );
+	}
+
+	@Override
+	public ByteBuffer deserialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return deserializer.deserialize( topic, headers, ByteBuffer.wrap( data ) );
+	}
+
+	@Override
+	public void close() {
+		deserializer.close();
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import javax.crypto.Mac;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+import io.macronova.kafka.common.serialization.config.HmacDeserializerConfig;
+import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.MacPool;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
+
+/**
+ * Verify message authentication code (HMAC) generated by {@link HmacSerializer}. Tags are compared in constant
+ * time. Deserializer throws {@link SerializationException} if tag does not match data.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * algorithm = HmacSHA256
+ * secret = 770A8A65DA156D24EE2A093277530142
+ * tag.length = 16
+ * </pre></blockquote>
+ *
+ * With {@code metadata.location = headers}, tag is read from record header {@code <prefix>tag} whenever present,
+ * in which case input contains data only.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, {@link WireFormat} header is validated against configured algorithm,
+ * secret and tag length before computing authentication code.
+ */
+public class HmacDeserializer implements ExtendedDeserializer<byte[]>, ByteStage {
+	private MacPool macPool = null;
+	private int tagLength = 0;
+	private boolean useHeaders = false;
+	private String tagHeader = null;
+	private int algorithmId = 0;
+	private int keyId = 0;
+	private boolean requireWireFormat = false;
+	private boolean detectWireFormat = false;
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		final HmacDeserializerConfig config = new HmacDeserializerConfig( configs );
+		macPool = HmacSerializer.createMacPool( config.getAlgorithm(), config.getSecret(), config.getProvider() );
+		tagLength = HmacSerializer.tagLength( config.getTagLength(), macPool );
+		useHeaders = config.useHeaders();
+		tagHeader = HeaderHelper.prefix( config.getHeaderPrefix(), isKey ) + HeaderHelper.TAG;
+		requireWireFormat = HmacDeserializerConfig.WIRE_FORMAT_V1.equals( config.getWireFormat() );
+		detectWireFormat = HmacDeserializerConfig.WIRE_FORMAT_AUTO.equals( config.getWireFormat() );
+		algorithmId = WireFormat.macId( config.getAlgorithm() );
+		if ( ( requireWireFormat || detectWireFormat ) && algorithmId == 0 ) {
+			throw new ConfigException(
+					String.format( "MAC algorithm '%s' is not supported by wire format.", config.getAlgorithm() )
+			);
+		}
+		keyId = KeyRing.secretKeyId( config.getSecret() );
+	}
+
+	@Override
+	public byte[] deserialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( deserialize( topic, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Verify authentication tag of given buffer without copying it.
+	 *
+	 * @param topic Topic name.
+	 * @param data Authentication tag followed by data. Position of the buffer is not modified.
+	 * @return Read-only view of data following the tag.
+	 */
+	public ByteBuffer deserialize(String topic, ByteBuffer data) {
+		final ByteBuffer result = apply( topic, data );
+		return result != null ? result.asReadOnlyBuffer() : null;
+	}
+
+	/**
+	 * Same as {@link #deserialize(String, ByteBuffer)}, but returns writable view of the input, given that byte
+	 * stages never modify their input.
+	 */
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		Mac mac = null;
+		try {
+			final ByteBuffer payload = data.duplicate();
+			if ( requireWireFormat || ( detectWireFormat && WireFormat.present( data, WireFormat.TYPE_HMAC ) ) ) {
+				readWireFormat( payload );
+			}
+			if ( payload.remaining() < tagLength ) {
+				throw new SerializationException( "Unexpected end of authenticated content." );
+			}
+			final byte[] tag = EncryptionHelper.read( payload, tagLength );
+			mac = macPool.get();
+			mac.update( payload.duplicate() );
+			if ( ! EncryptionHelper.constantTimeEquals( mac.doFinal(), 0, tag, 0, tagLength ) ) {
+				throw new SerializationException( "Incorrect authentication tag." );
+			}
+			return payload.slice();
+		}
+		catch ( Exception e ) {
+			if ( mac != null ) {
+				mac.reset();
+			}
+			throw new SerializationException( String.format( "Failed to verify authentication tag: %s.", e.getMessage() ), e );
+		}
+	}
+
+	/**
+	 * Validate wire format header against configured algorithm, secret and tag length.
+	 *
+	 * @param payload Input buffer. Position is advanced past the header.
+	 */
+	private void readWireFormat(ByteBuffer payload) {
+		final WireFormat.Header header = WireFormat.read( payload, WireFormat.TYPE_HMAC );
+		if ( header.getAlgorithm() != algorithmId ) {
+			throw new SerializationException( String.format( "Unsupported MAC algorithm identifier %d", header.getAlgorithm() ) );
+		}
+		if ( header.getKeyId() != keyId ) {
+			throw new SerializationException( String.format( "Unknown key identifier %08x", header.getKeyId() ) );
+		}
+		if ( header.getMetadataLength() != tagLength ) {
+			throw new SerializationException( "Invalid length of authentication tag." );
+		}
+	}
+
+	@Override
+	public byte[] deserialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( apply( topic, headers, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Verify authentication tag of given buffer without copying it, reading authentication tag from record header when present.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}.
+	 * @param data Input data. Position of the buffer is not modified.
+	 * @return Read-only view of verified data.
+	 */
+	public ByteBuffer deserialize(String topic, Headers headers, ByteBuffer data) {
+		final ByteBuffer result = apply( topic, headers, data );
+		return result != null ? result.asReadOnlyBuffer() : null;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		final byte[] tag = useHeaders ? HeaderHelper.get( headers, tagHeader ) : null;
+		if ( data == null || tag == null ) {
+			return apply( topic, data );
+		}
+		Mac mac = null;
+		try {
+			if ( tag.length != tagLength ) {
+				throw new SerializationException( "Invalid length of authentication tag." );
+			}
+			mac = macPool.get();
+			mac.update( data.duplicate() );
+			if ( ! EncryptionHelper.constantTimeEquals( mac.doFinal(), 0, tag, 0, tagLength ) ) {
+				throw new SerializationException( "Incorrect authentication tag." );
+			}
+			return data.duplicate();
+		}
+		catch ( Exception e ) {
+			if ( mac != null ) {
+				mac.reset();
+			}
+			throw new SerializationException( String.format( "Failed to verify authentication tag: %s.", e.getMessage() ), e );
+		}
+	}
+
+	@Override
+	public void close() {
+		macPool = null;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+import io.macronova.kafka.common.serialization.config.HmacSerializerConfig;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.MacPool;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
+
+/**
+ * Protect integrity of data with message authentication code (HMAC) computed with secret key shared by producers
+ * and consumers. Much cheaper alternative to digital signatures, when non-repudiation is not required.
+ * Serializer prepends authentication tag, optionally truncated, to data byte array.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * algorithm = HmacSHA256
+ * secret = 770A8A65DA156D24EE2A093277530142
+ * tag.length = 16
+ * </pre></blockquote>
+ *
+ * Output byte array format:
+ * <blockquote><pre>
+ * +------------+
+ * | tag | data |
+ * +------------+
+ * </pre></blockquote>
+ *
+ * With {@code metadata.location = headers}, tag is written to record header {@code <prefix>tag} and data is
+ * passed through unchanged.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, output starts with {@link WireFormat} header carrying algorithm,
+ * identifier of the secret and tag length, followed by tag and data.
+ */
+public class HmacSerializer implements ExtendedSerializer<byte[]>, ByteStage {
+	private MacPool macPool = null;
+	private int tagLength = 0;
+	private boolean useHeaders = false;
+	private String tagHeader = null;
+	private byte[] header = null;
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		final HmacSerializerConfig config = new HmacSerializerConfig( configs );
+		macPool = createMacPool( config.getAlgorithm(), config.getSecret(), config.getProvider() );
+		tagLength = tagLength( config.getTagLength(), macPool );
+		useHeaders = config.useHeaders();
+		tagHeader = HeaderHelper.prefix( config.getHeaderPrefix(), isKey ) + HeaderHelper.TAG;
+		if ( ! HmacSerializerConfig.WIRE_FORMAT_LEGACY.equals( config.getWireFormat() ) ) {
+			final int algorithmId = WireFormat.macId( config.getAlgorithm() );
+			if ( algorithmId == 0 ) {
+				throw new ConfigException(
+						String.format( "MAC algorithm '%s' is not supported by wire format.", config.getAlgorithm() )
+				);
+			}
+			// Header does not change between records.
+			header = WireFormat.header(
+					WireFormat.TYPE_HMAC, algorithmId, KeyRing.secretKeyId( config.getSecret() ), tagLength
+			);
+		}
+	}
+
+	static MacPool createMacPool(String algorithm, byte[] secret, String provider) {
+		try {
+			return new MacPool(
+					algorithm, new SecretKeySpec( secret, algorithm ), SecurityProviders.forMac( provider, algorithm )
+			);
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize MAC: %s.", e.getMessage() ), e );
+		}
+	}
+
+	static int tagLength(int configured, MacPool macPool) {
+		if ( configured > macPool.getMacLength() ) {
+			throw new ConfigException(
+					String.format( "Tag length %d exceeds output length of %s (%d bytes).", configured, macPool.getAlgorithm(), macPool.getMacLength() )
+			);
+		}
+		return configured > 0 ? configured : macPool.getMacLength();
+	}
+
+	@Override
+	public byte[] serialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return serialize( topic, ByteBuffer.wrap( data ) );
+	}
+
+	/**
+	 * Authenticate remaining content of given buffer without copying it upfront.
+	 *
+	 * @param topic Topic name.
+	 * @param data Data to authenticate. Position of the buffer is not modified.
+	 * @return Authentication tag followed by data.
+	 */
+	public byte[] serialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		Mac mac = null;
+		try {
+			mac = macPool.get();
+			mac.update( data.duplicate() );
+			final int offset = header != null ? header.length : 0;
+			final byte[] output = new byte[ offset + tagLength + data.remaining() ];
+			if ( header != null ) {
+				System.arraycopy( header, 0, output, 0, offset );
+			}
+			if ( tagLength == macPool.getMacLength() ) {
+				mac.doFinal( output, offset );
+			}
+			else {
+				System.arraycopy( mac.doFinal(), 0, output, offset, tagLength );
+			}
+			data.duplicate().get( output, offset + tagLength, data.remaining() );
+			return output;
+		}
+		catch ( Exception e ) {
+			if ( mac != null ) {
+				mac.reset();
+			}
+			throw new SerializationException( String.format( "Failed to compute authentication tag: %s.", e.getMessage() ), e );
+		}
+	}
+
+	@Override
+	public byte[] serialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		if ( ! useHeaders || headers == null ) {
+			return serialize( topic, data );
+		}
+		tagToHeader( headers, ByteBuffer.wrap( data ) );
+		return data;
+	}
+
+	/**
+	 * Protect remaining content of given buffer, storing authentication tag in record header if configured.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}, in which case authentication tag is prepended to the output.
+	 * @param data Data to protect. Position of the buffer is not modified.
+	 * @return Data optionally preceded by authentication tag.
+	 */
+	public byte[] serialize(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null || ! useHeaders || headers == null ) {
+			return serialize( topic, data );
+		}
+		tagToHeader( headers, data );
+		return IOUtils.toByteArray( data );
+	}
+
+	private void tagToHeader(Headers headers, ByteBuffer data) {
+		Mac mac = null;
+		try {
+			mac = macPool.get();
+			mac.update( data.duplicate() );
+			final byte[] tag = mac.doFinal();
+			HeaderHelper.set( headers, tagHeader, tag.length == tagLength ? tag : Arrays.copyOf( tag, tagLength ) );
+		}
+		catch ( Exception e ) {
+			if ( mac != null ) {
+				mac.reset();
+			}
+			throw new SerializationException( String.format( "Failed to compute authentication tag: %s.", e.getMessage() ), e );
+		}
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		final byte[] result = serialize( topic, data );
+		return result != null ? ByteBuffer.wrap( result ) : null;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null || ! useHeaders || headers == null ) {
+			return apply( topic, data );
+		}
+		tagToHeader( headers, data );
+		return data.duplicate();
+	}
+
+	@Override
+	public void close() {
+		macPool = null;
+	}
+}
@@ -15,22 +15,33 @@
  */
 package io.macronova.kafka.common.serialization;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.util.Map;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 import io.macronova.kafka.common.serialization.config.HybridDecryptDeserializerConfig;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+import io.macronova.kafka.common.serialization.utils.CipherPlan;
+import io.macronova.kafka.common.serialization.utils.CipherPlanRegistry;
 import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
 import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+import io.macronova.kafka.common.serialization.utils.KeyStoreWatcher;
+import io.macronova.kafka.common.serialization.utils.KeyAgreementPlan;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.SecretKeyCache;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
 
 /**
  * See {@link HybridEncryptSerializer}.
@@ -44,36 +55,128 @@ import io.macronova.kafka.common.serialization.utils.IOUtils;
  * asymmetric.key.store.password = changeit
  * asymmetric.key.store.alias = key1
  * asymmetric.key.store.alias.password = donotchange
+ * key.cache.size = 1000
+ * key.cache.ttl.ms = 3600000
  * </pre></blockquote>
+ *
+ * For {@code asymmetric.transformation = ECDH}, secret key is derived from ephemeral public key present
+ * in the input and private key retrieved from key store (see {@link KeyAgreementPlan}).
+ * <p/>
+ *
+ * Decrypted secret keys are cached (see {@link SecretKeyCache}), so that records encrypted by serializer reusing
+ * the same secret key skip expensive private key operation.
+ * <p/>
+ *
+ * With {@code metadata.location = headers}, encoded secret key and initialization vector are read from record headers
+ * whenever present.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, {@link WireFormat} header is validated against identifier of the key
+ * pair and expected lengths before private key operation. Besides configured symmetric transformation, records may
+ * use any of {@code wire.format.allowed.transformations}.
  */
-public class HybridDecryptDeserializer implements Deserializer<byte[]> {
-	private HybridDecryptDeserializerConfig config = null;
-	private PrivateKey privateKey = null;
+public class HybridDecryptDeserializer implements ExtendedDeserializer<byte[]>, ByteStage {
+	private KeyStoreRegistry.Handle keyStoreHandle = null;
+	private KeyStoreWatcher.Watch keyStoreWatch = null;
+	private CipherPlan symmetricPlan = null;
+	private Provider asymmetricProvider = null;
+	private volatile KeyDecryption keyDecryption = null;
+	private SecretKeyCache keyCache = null;
+	private boolean useHeaders = false;
+	private String wrappedKeyHeader = null;
+	private String ivHeader = null;
+	private CipherPlanRegistry plans = null;
+	private boolean requireWireFormat = false;
+	private boolean detectWireFormat = false;
 
 	@Override
 	public void configure(Map<String, ?> configs, boolean isKey) {
-		config = new HybridDecryptDeserializerConfig( configs );
+		final HybridDecryptDeserializerConfig config = new HybridDecryptDeserializerConfig( configs );
 		try {
-			final KeyStore keyStore = EncryptionHelper.loadKeyStore(
-					config.getAsymmetricKeyStorePath(), config.getAsymmetricKeyStoreType(),
-					config.getAsymmetricKeyStorePassword().toCharArray()
+			symmetricPlan = EncryptionHelper.cipherPlan(
+					config.getSymmetricTransformation(), null,
+					SecurityProviders.forCipher( config.getProvider(), config.getSymmetricTransformation() )
 			);
-			final KeyStore.PasswordProtection keyPassword = new KeyStore.PasswordProtection(
-					config.getAsymmetricKeyAliasPassword().toCharArray()
+			asymmetricProvider = config.useKeyAgreement()
+					? SecurityProviders.forKeyAgreement( config.getProvider() )
+					: SecurityProviders.forCipher( config.getProvider(), config.getAsymmetricTransformation() );
+			plans = new CipherPlanRegistry( symmetricPlan, config.getWireFormatAllowedTransformations(), config.getProvider() );
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize cipher: %s.", e.getMessage() ), e );
+		}
+		requireWireFormat = HybridDecryptDeserializerConfig.WIRE_FORMAT_V1.equals( config.getWireFormat() );
+		detectWireFormat = HybridDecryptDeserializerConfig.WIRE_FORMAT_AUTO.equals( config.getWireFormat() );
+		if ( ( requireWireFormat || detectWireFormat ) && WireFormat.cipherId( config.getSymmetricTransformation() ) == 0 ) {
+			throw new ConfigException(
+					String.format( "Transformation '%s' is not supported by wire format.", config.getSymmetricTransformation() )
 			);
-			final KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) keyStore.getEntry(
-					config.getAsymmetricKeyAlias(), keyPassword
+		}
+		try {
+			loadPrivateKey( config );
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to retrieve private key: %s.", e.getMessage() ), e );
+		}
+		final String headerPrefix = HeaderHelper.prefix( config.getHeaderPrefix(), isKey );
+		useHeaders = config.useHeaders();
+		wrappedKeyHeader = headerPrefix + HeaderHelper.WRAPPED_KEY;
+		ivHeader = headerPrefix + HeaderHelper.IV;
+		keyCache = config.getKeyCacheSize() > 0 ? new SecretKeyCache( config.getKeyCacheSize(), config.getKeyCacheTtlMs() ) : null;
+		if ( config.getAsymmetricKeyStoreReloadIntervalMs() > 0L ) {
+			keyStoreWatch = KeyStoreWatcher.watch(
+					config.getAsymmetricKeyStorePath(), config.getAsymmetricKeyStoreReloadIntervalMs(),
+					new KeyStoreWatcher.Listener() {
+						@Override
+						public void onChange() throws Exception {
+							loadPrivateKey( config );
+						}
+					}
+			);
+		}
+	}
+
+	/**
+	 * Load private key from key store and replace the one used to decrypt secret keys. Invoked also by key store
+	 * watcher. Cached secret keys remain valid, because they are indexed by encrypted form.
+	 */
+	private synchronized void loadPrivateKey(HybridDecryptDeserializerConfig config) throws Exception {
+		if ( symmetricPlan == null ) {
+			// Closed concurrently.
+			return;
+		}
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire(
+				config.getAsymmetricKeyStorePath(), config.getAsymmetricKeyStoreType(),
+				config.getAsymmetricKeyStorePassword().toCharArray()
+		);
+		try {
+			final KeyStore.PrivateKeyEntry privateKeyEntry = handle.getPrivateKeyEntry(
+					config.getAsymmetricKeyAlias(), config.getAsymmetricKeyAliasPassword().toCharArray()
 			);
 			if ( privateKeyEntry == null ) {
 				throw new ConfigException(
 						String.format( "Could not find alias '%s' in key store '%s'.", config.getAsymmetricKeyAlias(), config.getAsymmetricKeyStorePath() )
 				);
 			}
-			privateKey = privateKeyEntry.getPrivateKey();
+			final PrivateKey privateKey = privateKeyEntry.getPrivateKey();
+			final int keyId = KeyRing.keyId( privateKeyEntry.getCertificate().getPublicKey().getEncoded() );
+			if ( config.useKeyAgreement() ) {
+				final KeyAgreementPlan keyAgreementPlan = EncryptionHelper.keyAgreementPlan( privateKey, asymmetricProvider );
+				keyDecryption = new KeyDecryption( null, keyAgreementPlan, keyAgreementPlan.getEncapsulationLength(), keyId );
+			}
+			else {
+				keyDecryption = new KeyDecryption(
+						EncryptionHelper.cipherPlan( config.getAsymmetricTransformation(), privateKey, asymmetricProvider ), null,
+						EncryptionHelper.getKeyLength( privateKey ) / 8, keyId
+				);
+			}
 		}
 		catch ( Exception e ) {
-			throw new ConfigException( String.format( "Failed to retrieve private key: %s.", e.getMessage() ), e );
+			handle.close();
+			throw e;
 		}
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = handle;
 	}
 
 	@Override
@@ -81,52 +184,183 @@ public class HybridDecryptDeserializer implements Deserializer<byte[]> {
 		if ( data == null ) {
 			return null;
 		}
-		InputStream inputStream = null;
-		ByteArrayOutputStream outputStream = null;
+		return IOUtils.toByteArray( deserialize( topic, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Decrypt remaining content of given buffer without copying it upfront.
+	 *
+	 * @param topic Topic name.
+	 * @param data Encrypted data. Position of the buffer is not modified.
+	 * @return Buffer wrapping decrypted data.
+	 */
+	public ByteBuffer deserialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		final KeyDecryption decryption = keyDecryption;
+		final int encryptedKeyLength = decryption.encryptedKeyLength;
 		try {
-			inputStream = new ByteArrayInputStream( data );
-			outputStream = new ByteArrayOutputStream();
+			if ( requireWireFormat || ( detectWireFormat && WireFormat.present( data, WireFormat.TYPE_HYBRID ) ) ) {
+				return decryptWireFormat( decryption, data.duplicate() );
+			}
 
 			// Read and decrypt random symmetric key.
-			final Cipher asymmetricCipher = EncryptionHelper.initializeCipher(
-					Cipher.DECRYPT_MODE, config.getAsymmetricTransformation(),
-					privateKey, inputStream, null
-			);
-			final byte[] keyEncrypted = new byte[ EncryptionHelper.getKeyLength( privateKey ) / 8 ];
-			if ( inputStream.read( keyEncrypted ) != keyEncrypted.length ) {
+			if ( data.remaining() < encryptedKeyLength ) {
 				throw new SerializationException( "Unexpected end of encrypted content." );
 			}
-			final ByteArrayInputStream keyInputStream = new ByteArrayInputStream( keyEncrypted );
-			final ByteArrayOutputStream keyOutputStream = new ByteArrayOutputStream();
-			CipherInputStream cipherInputStream = new CipherInputStream( keyInputStream, asymmetricCipher );
-			IOUtils.copy( cipherInputStream, keyOutputStream );
-			keyInputStream.close();
-			cipherInputStream.close();
-			keyOutputStream.close();
-			final byte[] keyDecrypted = keyOutputStream.toByteArray();
+			final ByteBuffer keyEncrypted = data.duplicate();
+			keyEncrypted.limit( keyEncrypted.position() + encryptedKeyLength );
+			final SecretKey secretKey = secretKey( decryption, keyEncrypted );
 
 			// Decrypt payload.
-			final Cipher symmetricCipher = EncryptionHelper.initializeCipher(
-					Cipher.DECRYPT_MODE, config.getSymmetricTransformation(), keyDecrypted, inputStream, null
-			);
-			cipherInputStream = new CipherInputStream( inputStream, symmetricCipher );
-			IOUtils.copy( cipherInputStream, outputStream );
-			cipherInputStream.close();
+			final ByteBuffer payload = data.duplicate();
+			payload.position( payload.position() + encryptedKeyLength );
+			return EncryptionHelper.decrypt( symmetricPlan, secretKey, payload );
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to decrypt content: %s.", e.getMessage() ), e );
+		}
+	}
+
+	@Override
+	public byte[] deserialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( deserialize( topic, headers, ByteBuffer.wrap( data ) ) );
+	}
 
-			return outputStream.toByteArray();
+	/**
+	 * Decrypt remaining content of given buffer, reading encoded secret key and initialization vector from record
+	 * headers when present and enabled. Otherwise metadata is expected at the beginning of encrypted data.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}.
+	 * @param data Encrypted data. Position of the buffer is not modified.
+	 * @return Buffer wrapping decrypted data.
+	 */
+	public ByteBuffer deserialize(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		final byte[] keyEncrypted = useHeaders ? HeaderHelper.get( headers, wrappedKeyHeader ) : null;
+		if ( keyEncrypted == null ) {
+			return deserialize( topic, data );
+		}
+		final KeyDecryption decryption = keyDecryption;
+		try {
+			if ( keyEncrypted.length != decryption.encryptedKeyLength ) {
+				throw new SerializationException( "Invalid length of encrypted key." );
+			}
+			final SecretKey secretKey = secretKey( decryption, ByteBuffer.wrap( keyEncrypted ) );
+			return EncryptionHelper.decryptDetached(
+					symmetricPlan, secretKey, HeaderHelper.get( headers, ivHeader ), data
+			);
 		}
 		catch ( Exception e ) {
 			throw new SerializationException( String.format( "Failed to decrypt content: %s.", e.getMessage() ), e );
 		}
-		finally {
-			IOUtils.closeQuietly( inputStream );
-			IOUtils.closeQuietly( outputStream );
+	}
+
+	/**
+	 * Validate wire format header against key pair and expected lengths before recovering secret key.
+	 */
+	private ByteBuffer decryptWireFormat(KeyDecryption decryption, ByteBuffer payload) throws Exception {
+		final WireFormat.Header header = WireFormat.read( payload, WireFormat.TYPE_HYBRID );
+		final CipherPlan selected = plans.get( header.getAlgorithm() );
+		if ( selected == null ) {
+			throw new SerializationException( String.format( "Unsupported transformation identifier %d", header.getAlgorithm() ) );
+		}
+		if ( header.getKeyId() != decryption.keyId ) {
+			throw new SerializationException( String.format( "Unknown key identifier %08x", header.getKeyId() ) );
+		}
+		final int ivLength = selected.requiresIV() ? selected.getIvLength() : 0;
+		if ( header.getMetadataLength() != decryption.encryptedKeyLength + ivLength
+				|| ! WireFormat.validCiphertextLength( selected, payload.remaining() - header.getMetadataLength() ) ) {
+			throw new SerializationException( "Malformed content" );
+		}
+		final ByteBuffer keyEncrypted = payload.duplicate();
+		keyEncrypted.limit( keyEncrypted.position() + decryption.encryptedKeyLength );
+		final SecretKey secretKey = secretKey( decryption, keyEncrypted );
+		payload.position( payload.position() + decryption.encryptedKeyLength );
+		return EncryptionHelper.decrypt( selected, secretKey, payload );
+	}
+
+	/**
+	 * @return Secret key recovered from its encoded form, looked up in cache first if enabled.
+	 */
+	private SecretKey secretKey(KeyDecryption decryption, ByteBuffer keyEncrypted) throws Exception {
+		if ( keyCache == null ) {
+			return decryptKey( decryption, keyEncrypted );
+		}
+		final ByteBuffer digest = keyCache.digest( keyEncrypted );
+		SecretKey secretKey = keyCache.get( digest );
+		if ( secretKey == null ) {
+			secretKey = decryptKey( decryption, keyEncrypted );
+			keyCache.put( digest, secretKey );
+		}
+		return secretKey;
+	}
+
+	private SecretKey decryptKey(KeyDecryption decryption, ByteBuffer keyEncrypted) throws Exception {
+		if ( decryption.keyAgreementPlan != null ) {
+			return decryption.keyAgreementPlan.decapsulate( keyEncrypted, symmetricPlan.getAlgorithm() );
 		}
+		final CipherPlan asymmetricPlan = decryption.asymmetricPlan;
+		final Cipher asymmetricCipher = asymmetricPlan.cipher();
+		asymmetricCipher.init( Cipher.DECRYPT_MODE, asymmetricPlan.getKey() );
+		final byte[] keyDecrypted = new byte[ asymmetricCipher.getOutputSize( decryption.encryptedKeyLength ) ];
+		final int keyLength = asymmetricCipher.doFinal( keyEncrypted, ByteBuffer.wrap( keyDecrypted ) );
+		return new SecretKeySpec( keyDecrypted, 0, keyLength, symmetricPlan.getAlgorithm() );
+	}
+
+	/**
+	 * @return Cache of decrypted secret keys, {@code null} if disabled.
+	 */
+	public SecretKeyCache getKeyCache() {
+		return keyCache;
 	}
 
 	@Override
-	public void close() {
-		config = null;
-		privateKey = null;
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		return deserialize( topic, data );
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		return deserialize( topic, headers, data );
+	}
+
+	@Override
+	public synchronized void close() {
+		IOUtils.closeQuietly( keyStoreWatch );
+		keyStoreWatch = null;
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = null;
+		symmetricPlan = null;
+		plans = null;
+		keyDecryption = null;
+		if ( keyCache != null ) {
+			keyCache.clear();
+		}
+	}
+
+	/**
+	 * Key material used to recover secret keys. Replaced as a whole when key store is reloaded.
+	 */
+	private static final class KeyDecryption {
+		private final CipherPlan asymmetricPlan;
+		private final KeyAgreementPlan keyAgreementPlan;
+		private final int encryptedKeyLength;
+		private final int keyId;
+
+		private KeyDecryption(CipherPlan asymmetricPlan, KeyAgreementPlan keyAgreementPlan, int encryptedKeyLength,
+							  int keyId) {
+			this.asymmetricPlan = asymmetricPlan;
+			this.keyAgreementPlan = keyAgreementPlan;
+			this.encryptedKeyLength = encryptedKeyLength;
+			this.keyId = keyId;
+		}
 	}
 }
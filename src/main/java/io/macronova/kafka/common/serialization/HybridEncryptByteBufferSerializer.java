@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+
+/**
+ * Variant of {@link HybridEncryptSerializer} accepting {@link ByteBuffer}. Remaining content of the buffer is
+ * encrypted directly, without copying it to intermediate array. Position of the buffer is not modified. Supports the
+ * same configuration properties as {@link HybridEncryptSerializer}.
+ */
+public class HybridEncryptByteBufferSerializer implements ExtendedSerializer<ByteBuffer> {
+	private final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		serializer.configure( configs, isKey );
+	}
+
+	@Override
+	public byte[] serialize(String topic, ByteBuffer data) {
+		return serializer.serialize( topic, data );
+	}
+
+	@Override
+	public byte[] serialize(String topic, Headers headers, ByteBuffer data) {
+		return serializer.serialize( topic, headers, data );
+	}
+
+	@Override
+	public void close() {
+		serializer.close();
+	}
+}
@@ -15,26 +15,33 @@
  */
 package io.macronova.kafka.common.serialization;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.security.KeyStore;
+import java.nio.ByteBuffer;
+import java.security.Provider;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
 import io.macronova.kafka.common.serialization.config.HybridEncryptSerializerConfig;
+import io.macronova.kafka.common.serialization.utils.CipherPlan;
 import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
 import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+import io.macronova.kafka.common.serialization.utils.KeyStoreWatcher;
+import io.macronova.kafka.common.serialization.utils.RandomSource;
+import io.macronova.kafka.common.serialization.utils.KeyAgreementPlan;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
 
 /**
  * Hybrid encryption encodes payload with randomly generated key and symmetric algorithm, for example AES.
@@ -51,8 +58,21 @@ import io.macronova.kafka.common.serialization.utils.IOUtils;
  * asymmetric.key.store.path = /tmp/keystore.jks
  * asymmetric.key.store.password = changeit
  * asymmetric.key.store.alias = key1
+ * data.key.max.records = 1000
+ * data.key.max.age.ms = 60000
  * </pre></blockquote>
  *
+ * Setting {@code asymmetric.transformation} to {@code ECDH} replaces RSA encryption of secret key with ephemeral
+ * elliptic curve key agreement (see {@link KeyAgreementPlan}). Key store needs to contain elliptic curve key pair,
+ * e.g. P-256. Encoded ephemeral public key (65 bytes for P-256) takes place of RSA encoded secret key in the output.
+ * <p/>
+ *
+ * By default every record is encrypted with newly generated secret key. Properties {@code data.key.max.records}
+ * and {@code data.key.max.age.ms} allow to reuse secret key, together with its asymmetrically encrypted form,
+ * for given number of records or period of time. Key is rotated once any of the limits is reached. Data
+ * representation does not change, so reusing secret key is transparent to {@link HybridDecryptDeserializer}.
+ * <p/>
+ *
  * Output data representation:
  * <blockquote><pre>
  * +--------------------------------------------------------------+
@@ -60,32 +80,117 @@ import io.macronova.kafka.common.serialization.utils.IOUtils;
  * | key used for AES   | (optional, 8-16 bytes) |      data      |
  * +--------------------------------------------------------------+
  * </pre></blockquote>
+ *
+ * With {@code metadata.location = headers}, encoded secret key and initialization vector are written to record
+ * headers {@code <prefix>wrapped.key} and {@code <prefix>iv}, and output contains encrypted data only.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, output starts with {@link WireFormat} header carrying symmetric
+ * transformation, identifier of the public key and combined length of encoded secret key and initialization vector.
  */
-public class HybridEncryptSerializer implements Serializer<byte[]> {
-	private static final SecureRandom random = new SecureRandom();
-
-	private HybridEncryptSerializerConfig config = null;
-	private PublicKey publicKey = null;
+public class HybridEncryptSerializer implements ExtendedSerializer<byte[]>, ByteStage {
+	private KeyStoreRegistry.Handle keyStoreHandle = null;
+	private KeyStoreWatcher.Watch keyStoreWatch = null;
+	private CipherPlan symmetricPlan = null;
+	private Provider asymmetricProvider = null;
+	private volatile KeyEncryption keyEncryption = null;
+	private long dataKeyMaxRecords = 1L;
+	private long dataKeyMaxAgeMs = 0L;
+	private volatile DataKey dataKey = null;
+	private boolean useHeaders = false;
+	private String wrappedKeyHeader = null;
+	private String ivHeader = null;
+	private int algorithmId = 0;
 
 	@Override
 	public void configure(Map<String, ?> configs, boolean isKey) {
-		config = new HybridEncryptSerializerConfig( configs );
+		final HybridEncryptSerializerConfig config = new HybridEncryptSerializerConfig( configs );
 		try {
-			final KeyStore keyStore = EncryptionHelper.loadKeyStore(
-					config.getAsymmetricKeyStorePath(), config.getAsymmetricKeyStoreType(),
-					config.getAsymmetricKeyStorePassword().toCharArray()
+			symmetricPlan = EncryptionHelper.cipherPlan(
+					config.getSymmetricTransformation(), null,
+					SecurityProviders.forCipher( config.getProvider(), config.getSymmetricTransformation() )
 			);
-			final Certificate certificate = keyStore.getCertificate( config.getAsymmetricKeyAlias() );
+			asymmetricProvider = config.useKeyAgreement()
+					? SecurityProviders.forKeyAgreement( config.getProvider() )
+					: SecurityProviders.forCipher( config.getProvider(), config.getAsymmetricTransformation() );
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize cipher: %s.", e.getMessage() ), e );
+		}
+		if ( ! HybridEncryptSerializerConfig.WIRE_FORMAT_LEGACY.equals( config.getWireFormat() ) ) {
+			algorithmId = WireFormat.cipherId( config.getSymmetricTransformation() );
+			if ( algorithmId == 0 ) {
+				throw new ConfigException(
+						String.format( "Transformation '%s' is not supported by wire format.", config.getSymmetricTransformation() )
+				);
+			}
+		}
+		dataKeyMaxRecords = config.getDataKeyMaxRecords();
+		dataKeyMaxAgeMs = config.getDataKeyMaxAgeMs();
+		useHeaders = config.useHeaders();
+		final String headerPrefix = HeaderHelper.prefix( config.getHeaderPrefix(), isKey );
+		wrappedKeyHeader = headerPrefix + HeaderHelper.WRAPPED_KEY;
+		ivHeader = headerPrefix + HeaderHelper.IV;
+		try {
+			loadPublicKey( config );
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to retrieve public key: %s.", e.getMessage() ), e );
+		}
+		if ( config.getAsymmetricKeyStoreReloadIntervalMs() > 0L ) {
+			keyStoreWatch = KeyStoreWatcher.watch(
+					config.getAsymmetricKeyStorePath(), config.getAsymmetricKeyStoreReloadIntervalMs(),
+					new KeyStoreWatcher.Listener() {
+						@Override
+						public void onChange() throws Exception {
+							loadPublicKey( config );
+						}
+					}
+			);
+		}
+	}
+
+	/**
+	 * Load public key from key store and replace the one used to encrypt secret keys. Invoked also by key store
+	 * watcher. Secret key which might be reused is discarded.
+	 */
+	private synchronized void loadPublicKey(HybridEncryptSerializerConfig config) throws Exception {
+		if ( symmetricPlan == null ) {
+			// Closed concurrently.
+			return;
+		}
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire(
+				config.getAsymmetricKeyStorePath(), config.getAsymmetricKeyStoreType(),
+				config.getAsymmetricKeyStorePassword().toCharArray()
+		);
+		try {
+			final Certificate certificate = handle.getCertificate( config.getAsymmetricKeyAlias() );
 			if ( certificate == null ) {
 				throw new ConfigException(
 						String.format( "Could not find alias '%s' in key store '%s'.", config.getAsymmetricKeyAlias(), config.getAsymmetricKeyStorePath() )
 				);
 			}
-			publicKey = certificate.getPublicKey();
+			final PublicKey publicKey = certificate.getPublicKey();
+			final int keyId = KeyRing.keyId( publicKey.getEncoded() );
+			if ( config.useKeyAgreement() ) {
+				keyEncryption = new KeyEncryption(
+						null, EncryptionHelper.keyAgreementPlan( publicKey, asymmetricProvider ), 0, keyId
+				);
+			}
+			else {
+				keyEncryption = new KeyEncryption(
+						EncryptionHelper.cipherPlan( config.getAsymmetricTransformation(), publicKey, asymmetricProvider ), null,
+						EncryptionHelper.getKeyLength( publicKey ) / 8, keyId
+				);
+			}
+			dataKey = null;
 		}
 		catch ( Exception e ) {
-			throw new ConfigException( String.format( "Failed to retrieve public key: %s.", e.getMessage() ), e );
+			handle.close();
+			throw e;
 		}
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = handle;
 	}
 
 	@Override
@@ -93,50 +198,204 @@ public class HybridEncryptSerializer implements Serializer<byte[]> {
 		if ( data == null ) {
 			return null;
 		}
-		final InputStream inputStream = new ByteArrayInputStream( data );
-		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		return serialize( topic, ByteBuffer.wrap( data ) );
+	}
+
+	/**
+	 * Encrypt remaining content of given buffer without copying it upfront.
+	 *
+	 * @param topic Topic name.
+	 * @param data Data to encrypt. Position of the buffer is not modified.
+	 * @return Encrypted data.
+	 */
+	public byte[] serialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
 		try {
-			// Generate random secret key for symmetric encryption.
-			final KeyGenerator keyGenerator = KeyGenerator.getInstance(
-					EncryptionHelper.extractAlgorithm( config.getSymmetricTransformation() )
-			);
-			keyGenerator.init( EncryptionHelper.getKeyLength( publicKey ) / 8, random );
-			final SecretKey secretKey = keyGenerator.generateKey();
+			final DataKey key = acquireDataKey();
 
-			// Encrypt secret key with asymmetric algorithm.
-			final Cipher asymmetricCipher = EncryptionHelper.initializeCipher(
-					Cipher.ENCRYPT_MODE, config.getAsymmetricTransformation(),
-					publicKey, null, outputStream
-			);
-			final InputStream keyInputStream = new ByteArrayInputStream( secretKey.getEncoded() );
-			CipherInputStream cipherInputStream = new CipherInputStream( keyInputStream, asymmetricCipher );
-			IOUtils.copy( cipherInputStream, outputStream );
-			keyInputStream.close();
-			cipherInputStream.close();
-
-			// Encrypt data using symmetric algorithm.
-			final Cipher symmetricCipher = EncryptionHelper.initializeCipher(
-					Cipher.ENCRYPT_MODE, config.getSymmetricTransformation(),
-					secretKey.getEncoded(), null, outputStream
-			);
-			cipherInputStream = new CipherInputStream( inputStream, symmetricCipher );
-			IOUtils.copy( cipherInputStream, outputStream );
-			cipherInputStream.close();
+			// Encrypt data using symmetric algorithm, output prefixed with encrypted key.
+			return EncryptionHelper.encrypt( symmetricPlan, key.secretKey, key.prefix, data );
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to encrypt content: %s.", e.getMessage() ), e );
+		}
+	}
 
-			return outputStream.toByteArray();
+	@Override
+	public byte[] serialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return serialize( topic, headers, ByteBuffer.wrap( data ) );
+	}
+
+	/**
+	 * Encrypt remaining content of given buffer, storing encoded secret key and initialization vector in record
+	 * headers if configured.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}, in which case metadata is prepended to the output.
+	 * @param data Data to encrypt. Position of the buffer is not modified.
+	 * @return Encrypted data.
+	 */
+	public byte[] serialize(String topic, Headers headers, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		if ( ! useHeaders || headers == null ) {
+			return serialize( topic, data );
+		}
+		try {
+			final DataKey key = acquireDataKey();
+			final byte[] iv = EncryptionHelper.randomIV( symmetricPlan );
+			final byte[] result = EncryptionHelper.encryptDetached( symmetricPlan, key.secretKey, iv, data );
+			HeaderHelper.set( headers, wrappedKeyHeader, key.keyEncrypted );
+			if ( iv != null ) {
+				HeaderHelper.set( headers, ivHeader, iv );
+			}
+			return result;
 		}
 		catch ( Exception e ) {
 			throw new SerializationException( String.format( "Failed to encrypt content: %s.", e.getMessage() ), e );
 		}
-		finally {
-			IOUtils.closeQuietly( inputStream );
-			IOUtils.closeQuietly( outputStream );
+	}
+
+	/**
+	 * @return Secret key which can be used to encrypt next record. Rotates current key if it reached usage limits.
+	 * @throws Exception Indicates failure.
+	 */
+	private DataKey acquireDataKey() throws Exception {
+		if ( dataKeyMaxRecords <= 1L && dataKeyMaxAgeMs <= 0L ) {
+			// Reuse disabled, generate key without contention.
+			return generateDataKey();
+		}
+		DataKey key = dataKey;
+		if ( key != null && key.tryAcquire() ) {
+			return key;
+		}
+		synchronized ( this ) {
+			// Another thread might have already rotated the key.
+			key = dataKey;
+			if ( key != null && key.tryAcquire() ) {
+				return key;
+			}
+			key = generateDataKey();
+			key.tryAcquire();
+			dataKey = key;
+			return key;
+		}
+	}
+
+	private DataKey generateDataKey() throws Exception {
+		final KeyEncryption encryption = keyEncryption;
+		final long expiresAt = dataKeyMaxAgeMs > 0L ? System.currentTimeMillis() + dataKeyMaxAgeMs : Long.MAX_VALUE;
+		if ( encryption.keyAgreementPlan != null ) {
+			// Derive secret key from ephemeral key agreement.
+			final KeyAgreementPlan.Encapsulation encapsulation = encryption.keyAgreementPlan.encapsulate(
+					symmetricPlan.getAlgorithm(), RandomSource.current()
+			);
+			return new DataKey(
+					encapsulation.getSecretKey(), encapsulation.getEncoded(), prefix( encryption, encapsulation.getEncoded() ),
+					dataKeyMaxRecords, expiresAt
+			);
+		}
+
+		// Generate random secret key for symmetric encryption.
+		final KeyGenerator keyGenerator = KeyGenerator.getInstance( symmetricPlan.getAlgorithm() );
+		keyGenerator.init( encryption.secretKeyLength, RandomSource.current() );
+		final SecretKey secretKey = keyGenerator.generateKey();
+
+		// Encrypt secret key with asymmetric algorithm.
+		final byte[] keyEncrypted = EncryptionHelper.encrypt(
+				encryption.asymmetricPlan, encryption.asymmetricPlan.getKey(), null,
+				ByteBuffer.wrap( secretKey.getEncoded() )
+		);
+
+		return new DataKey( secretKey, keyEncrypted, prefix( encryption, keyEncrypted ), dataKeyMaxRecords, expiresAt );
+	}
+
+	/**
+	 * @return Encoded secret key, preceded by wire format header if configured.
+	 */
+	private byte[] prefix(KeyEncryption encryption, byte[] keyEncrypted) {
+		if ( algorithmId == 0 ) {
+			return keyEncrypted;
 		}
+		final int ivLength = symmetricPlan.requiresIV() ? symmetricPlan.getIvLength() : 0;
+		final byte[] prefix = new byte[ WireFormat.HEADER_LENGTH + keyEncrypted.length ];
+		WireFormat.write(
+				prefix, WireFormat.TYPE_HYBRID, algorithmId, encryption.keyId, keyEncrypted.length + ivLength
+		);
+		System.arraycopy( keyEncrypted, 0, prefix, WireFormat.HEADER_LENGTH, keyEncrypted.length );
+		return prefix;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		final byte[] result = serialize( topic, data );
+		return result != null ? ByteBuffer.wrap( result ) : null;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		final byte[] result = serialize( topic, headers, data );
+		return result != null ? ByteBuffer.wrap( result ) : null;
 	}
 
 	@Override
-	public void close() {
-		config = null;
-		publicKey = null;
+	public synchronized void close() {
+		IOUtils.closeQuietly( keyStoreWatch );
+		keyStoreWatch = null;
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = null;
+		symmetricPlan = null;
+		keyEncryption = null;
+		dataKey = null;
+	}
+
+	/**
+	 * Key material used to protect randomly generated secret keys. Replaced as a whole when key store is reloaded.
+	 */
+	private static final class KeyEncryption {
+		private final CipherPlan asymmetricPlan;
+		private final KeyAgreementPlan keyAgreementPlan;
+		private final int secretKeyLength;
+		private final int keyId;
+
+		private KeyEncryption(CipherPlan asymmetricPlan, KeyAgreementPlan keyAgreementPlan, int secretKeyLength,
+							  int keyId) {
+			this.asymmetricPlan = asymmetricPlan;
+			this.keyAgreementPlan = keyAgreementPlan;
+			this.secretKeyLength = secretKeyLength;
+			this.keyId = keyId;
+		}
+	}
+
+	/**
+	 * Randomly generated secret key together with its asymmetrically encrypted form, output prefix and usage limits.
+	 */
+	private static final class DataKey {
+		private final SecretKey secretKey;
+		private final byte[] keyEncrypted;
+		private final byte[] prefix;
+		private final AtomicLong remaining;
+		private final long expiresAt;
+
+		private DataKey(SecretKey secretKey, byte[] keyEncrypted, byte[] prefix, long maxRecords, long expiresAt) {
+			this.secretKey = secretKey;
+			this.keyEncrypted = keyEncrypted;
+			this.prefix = prefix;
+			this.remaining = new AtomicLong( maxRecords );
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean tryAcquire() {
+			if ( expiresAt != Long.MAX_VALUE && System.currentTimeMillis() >= expiresAt ) {
+				return false;
+			}
+			return remaining.getAndDecrement() > 0L;
+		}
 	}
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.util.Map;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+/**
+ * Defers deserialization until application reads the value. Deserializer returns {@link LazyValue} handle holding
+ * received bytes and configured delegate, which runs on first invocation of {@link LazyValue#get()}. Consumers
+ * skipping records based on key, headers or offset avoid decryption and signature verification of dropped records.
+ * Delegate defaults to {@link ChainedDeserializer} and receives complete configuration.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * 0.deserializer = io.macronova.kafka.common.serialization.DecryptDeserializer
+ * 0.transformation = AES/GCM/NoPadding
+ * 0.secret = 770A8A65DA156D24EE2A093277530142
+ * 1.deserializer = org.apache.kafka.common.serialization.StringDeserializer
+ * </pre></blockquote>
+ *
+ * Errors, e.g. invalid signature, surface from {@link LazyValue#get()} instead of {@code KafkaConsumer#poll()}.
+ * Handles need to be resolved before the consumer, and hence the delegate, gets closed. Tombstones are
+ * deserialized to {@code null}, not to a handle.
+ */
+public class LazyDeserializer implements ExtendedDeserializer<LazyValue<Object>> {
+	public static final String DESERIALIZER_CLASS_CONFIG = "lazy.deserializer";
+	private ExtendedDeserializer<?> deserializer = null;
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		final Object configured = configs.get( DESERIALIZER_CLASS_CONFIG );
+		final String deserializerClass = configured != null ? configured.toString() : ChainedDeserializer.class.getName();
+		try {
+			final Deserializer<?> delegate = Class.forName( deserializerClass ).asSubclass( Deserializer.class ).newInstance();
+			delegate.configure( configs, isKey );
+			deserializer = delegate instanceof ExtendedDeserializer
+					? (ExtendedDeserializer<?>) delegate : new ExtendedDeserializer.Wrapper<>( delegate );
+		}
+		catch ( ConfigException e ) {
+			throw e;
+		}
+		catch ( Exception e ) {
+			throw new ConfigException(
+					String.format( "Failed to instantiate deserializer [%s]: %s.", deserializerClass, e.getMessage() )
+			);
+		}
+	}
+
+	@Override
+	public LazyValue<Object> deserialize(String topic, byte[] data) {
+		return deserialize( topic, null, data );
+	}
+
+	@Override
+	public LazyValue<Object> deserialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return new LazyValue<>( topic, headers, data, deserializer );
+	}
+
+	@Override
+	public void close() {
+		if ( deserializer != null ) {
+			deserializer.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+/**
+ * Handle to record content deserialized on first access by {@link LazyDeserializer}. Result is memoized, so that
+ * consecutive invocations of {@link #get()} return the same object. Handle may be passed between threads.
+ *
+ * @param <T> Type of deserialized value.
+ */
+public final class LazyValue<T> {
+	private final String topic;
+	private final Headers headers;
+	private final byte[] data;
+	private ExtendedDeserializer<? extends T> deserializer;
+	private volatile boolean resolved = false;
+	private T value = null;
+
+	LazyValue(String topic, Headers headers, byte[] data, ExtendedDeserializer<? extends T> deserializer) {
+		this.topic = topic;
+		this.headers = headers;
+		this.data = data;
+		this.deserializer = deserializer;
+	}
+
+	/**
+	 * Deserialize content unless already done.
+	 *
+	 * @return Deserialized value.
+	 * @throws org.apache.kafka.common.errors.SerializationException Indicates failure, e.g. invalid signature.
+	 *         Failed attempt is not memoized.
+	 */
+	public T get() {
+		if ( ! resolved ) {
+			synchronized ( this ) {
+				if ( ! resolved ) {
+					value = deserializer.deserialize( topic, headers, data );
+					deserializer = null;
+					resolved = true;
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return {@code true} if content has already been deserialized.
+	 */
+	public boolean isResolved() {
+		return resolved;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public Headers getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return Serialized content as received from broker. Must not be modified.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+}
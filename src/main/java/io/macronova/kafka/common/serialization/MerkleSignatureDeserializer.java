@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import io.macronova.kafka.common.serialization.config.MerkleSignatureDeserializerConfig;
+import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.MerkleTree;
+
+/**
+ * Verifies records signed by {@link MerkleSignatureSerializer}, and throws {@link SerializationException} if
+ * inclusion proof or root signature turns out invalid. Signature of every root is verified once, subsequent
+ * records of the same batch require only hashing of the record and its proof. Supports the same configuration
+ * properties as {@link VerifySignatureDeserializer}, and additionally {@code root.cache.size}.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * algorithm = SHA256withRSA
+ * key.store.path = /tmp/keystore.jks
+ * key.store.password = changeit
+ * key.store.alias = key1
+ * </pre></blockquote>
+ *
+ * Input byte array format:
+ * <blockquote><pre>
+ * +------------------------------------------+
+ * | signature | leaves | index | proof | data |
+ * +------------------------------------------+
+ * </pre></blockquote>
+ */
+public class MerkleSignatureDeserializer implements Deserializer<byte[]> {
+	private final VerifySignatureDeserializer verifier = new VerifySignatureDeserializer();
+	private Map<ByteBuffer, PublicKey> verifiedRoots = null;
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		final int cacheSize = new MerkleSignatureDeserializerConfig( configs ).getRootCacheSize();
+		verifier.configure( configs, isKey );
+		verifiedRoots = Collections.synchronizedMap( new LinkedHashMap<ByteBuffer, PublicKey>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, PublicKey> eldest) {
+				return size() > cacheSize;
+			}
+		} );
+	}
+
+	@Override
+	public byte[] deserialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( deserialize( topic, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Verify inclusion proof and root signature of given buffer without copying it.
+	 *
+	 * @param topic Topic name.
+	 * @param data Signed record. Position of the buffer is not modified.
+	 * @return Read-only view of data following the proof.
+	 */
+	public ByteBuffer deserialize(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		try {
+			final PublicKey key = verifier.getPublicKey();
+			final ByteBuffer payload = data.duplicate();
+			final byte[] signature = verifier.readSignature( payload, key );
+			if ( payload.remaining() < 8 ) {
+				throw new SerializationException( "Unexpected end of signed content." );
+			}
+			final int leaves = payload.getInt();
+			final int index = payload.getInt();
+			final int proofLength = MerkleTree.proofLength( leaves, index ) * MerkleTree.HASH_LENGTH;
+			if ( payload.remaining() < proofLength ) {
+				throw new SerializationException( "Unexpected end of signed content." );
+			}
+			final ByteBuffer record = ( (ByteBuffer) payload.duplicate().position( payload.position() + proofLength ) ).slice();
+			final byte[] root = MerkleTree.root( MerkleTree.leafHash( record ), leaves, index, payload );
+
+			final ByteBuffer signedRoot = ByteBuffer.wrap( MerkleSignatureSerializer.signedRoot( leaves, root ) );
+			if ( verifiedRoots.get( signedRoot ) != key ) {
+				if ( ! verifier.verify( key, signature, signedRoot ) ) {
+					throw new SerializationException( "Incorrect signature." );
+				}
+				verifiedRoots.put( signedRoot, key );
+			}
+
+			return record.asReadOnlyBuffer();
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to verify signature: %s.", e.getMessage() ), e );
+		}
+	}
+
+	@Override
+	public void close() {
+		verifier.close();
+		verifiedRoots = null;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+import io.macronova.kafka.common.serialization.utils.MerkleTree;
+
+/**
+ * Sign batch of records with single digital signature. Serializer hashes every record, builds Merkle tree over
+ * the batch and signs only its root. Every record carries the root signature together with inclusion proof,
+ * so that it can be verified independently of other records by {@link MerkleSignatureDeserializer}.
+ * Supports the same configuration properties as {@link GenerateSignatureSerializer}.
+ * <p/>
+ *
+ * Kafka producer serializes records one at a time, therefore {@link #serialize(String, byte[])} signs a tree
+ * consisting of single record. Signing cost is amortized by {@link #serialize(String, List)}, which accepts
+ * batch of records accumulated by the application, e.g. within a time window or up to given count.
+ * <p/>
+ *
+ * Example configuration:
+ * <blockquote><pre>
+ * algorithm = SHA256withRSA
+ * key.store.path = /tmp/keystore.jks
+ * key.store.password = changeit
+ * key.store.alias = key1
+ * key.store.alias.password = donotchange
+ * </pre></blockquote>
+ *
+ * Output byte array format (leaves and index are 4-byte big-endian integers, proof is a sequence
+ * of 32-byte SHA-256 hashes):
+ * <blockquote><pre>
+ * +------------------------------------------+
+ * | signature | leaves | index | proof | data |
+ * +------------------------------------------+
+ * </pre></blockquote>
+ */
+public class MerkleSignatureSerializer implements Serializer<byte[]> {
+	private final GenerateSignatureSerializer signer = new GenerateSignatureSerializer();
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+		signer.configure( configs, isKey );
+	}
+
+	@Override
+	public byte[] serialize(String topic, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return serialize( topic, Collections.singletonList( data ) ).get( 0 );
+	}
+
+	/**
+	 * Sign batch of records with single signature.
+	 *
+	 * @param topic Topic name.
+	 * @param batch Records to sign. Must not contain {@code null} elements.
+	 * @return Signed records in the order of input batch.
+	 */
+	public List<byte[]> serialize(String topic, List<byte[]> batch) {
+		if ( batch.isEmpty() ) {
+			return Collections.emptyList();
+		}
+		try {
+			final List<byte[]> leaves = new ArrayList<>( batch.size() );
+			for ( byte[] data : batch ) {
+				leaves.add( MerkleTree.leafHash( ByteBuffer.wrap( data ) ) );
+			}
+			final MerkleTree tree = new MerkleTree( leaves );
+			final byte[] signature = signer.sign( ByteBuffer.wrap( signedRoot( tree.size(), tree.getRoot() ) ) );
+
+			final List<byte[]> result = new ArrayList<>( batch.size() );
+			for ( int i = 0; i < batch.size(); ++i ) {
+				final byte[] data = batch.get( i );
+				final byte[] proof = tree.proof( i );
+				final ByteBuffer output = ByteBuffer.allocate( signature.length + 8 + proof.length + data.length );
+				output.put( signature ).putInt( tree.size() ).putInt( i ).put( proof ).put( data );
+				result.add( output.array() );
+			}
+			return result;
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to sign content: %s.", e.getMessage() ), e );
+		}
+	}
+
+	/**
+	 * @param leaves Number of leaves.
+	 * @param root Root hash.
+	 * @return Content covered by signature, i.e. number of leaves followed by root hash.
+	 */
+	static byte[] signedRoot(int leaves, byte[] root) {
+		return ByteBuffer.allocate( 4 + root.length ).putInt( leaves ).put( root ).array();
+	}
+
+	@Override
+	public void close() {
+		signer.close();
+	}
+}
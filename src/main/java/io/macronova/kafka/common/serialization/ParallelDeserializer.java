@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+
+/**
+ * Deserializes whole poll batch on multiple threads. Kafka consumer invokes deserializers on the polling thread,
+ * which limits expensive operations, e.g. hybrid decryption, to single core. Configure consumer with
+ * {@code ByteArrayDeserializer} and pass polled records to {@link #deserialize(ConsumerRecords)}.
+ * <p/>
+ *
+ * Records of every partition are split into chunks processed concurrently by given executor (common
+ * {@link ForkJoinPool} by default), while calling thread takes over chunks not yet started by the executor.
+ * Results are placed at the position of their input, so order within partition is preserved. Key and value
+ * deserializers are shared by all threads and need to be thread-safe, which holds for all serializers of this
+ * library and for {@link ChainedDeserializer} composed of thread-safe deserializers.
+ * <p/>
+ *
+ * Example usage:
+ * <blockquote><pre>
+ * final ParallelDeserializer&lt;String, Object&gt; parallel = new ParallelDeserializer&lt;&gt;(
+ *         new StringDeserializer(), chainedDeserializer, executor, 32
+ * );
+ * final ConsumerRecords&lt;String, Object&gt; records = parallel.deserialize( consumer.poll( 100 ) );
+ * </pre></blockquote>
+ *
+ * @param <K> Type of record key.
+ * @param <V> Type of record value.
+ */
+public class ParallelDeserializer<K, V> implements Closeable {
+	public static final int DEFAULT_CHUNK_SIZE = 32;
+
+	private final ExtendedDeserializer<K> keyDeserializer;
+	private final ExtendedDeserializer<V> valueDeserializer;
+	private final Executor executor;
+	private final int chunkSize;
+
+	/**
+	 * Deserialize records using common {@link ForkJoinPool}.
+	 *
+	 * @param keyDeserializer Configured key deserializer.
+	 * @param valueDeserializer Configured value deserializer.
+	 */
+	public ParallelDeserializer(Deserializer<K> keyDeserializer, Deserializer<V> valueDeserializer) {
+		this( keyDeserializer, valueDeserializer, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE );
+	}
+
+	/**
+	 * @param keyDeserializer Configured key deserializer.
+	 * @param valueDeserializer Configured value deserializer.
+	 * @param executor Executor processing chunks of records. Not shut down by {@link #close()}.
+	 * @param chunkSize Number of consecutive records of single partition processed by one task.
+	 */
+	public ParallelDeserializer(Deserializer<K> keyDeserializer, Deserializer<V> valueDeserializer,
+								Executor executor, int chunkSize) {
+		if ( chunkSize <= 0 ) {
+			throw new IllegalArgumentException( "Chunk size has to be positive." );
+		}
+		this.keyDeserializer = extended( keyDeserializer );
+		this.valueDeserializer = extended( valueDeserializer );
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+	}
+
+	private static <T> ExtendedDeserializer<T> extended(Deserializer<T> deserializer) {
+		return deserializer instanceof ExtendedDeserializer
+				? (ExtendedDeserializer<T>) deserializer : new ExtendedDeserializer.Wrapper<>( deserializer );
+	}
+
+	/**
+	 * Deserialize keys and values of given records.
+	 *
+	 * @param records Records polled with {@code ByteArrayDeserializer}.
+	 * @return Deserialized records, in the same order.
+	 * @throws SerializationException Indicates failure to deserialize any of the records. Thrown once all chunks
+	 *         completed.
+	 */
+	public ConsumerRecords<K, V> deserialize(ConsumerRecords<byte[], byte[]> records) {
+		if ( records.isEmpty() ) {
+			return ConsumerRecords.empty();
+		}
+		final Map<TopicPartition, ConsumerRecord<K, V>[]> results = new LinkedHashMap<>();
+		final List<FutureTask<Void>> tasks = new ArrayList<>();
+		for ( TopicPartition partition : records.partitions() ) {
+			final List<ConsumerRecord<byte[], byte[]>> input = records.records( partition );
+			// Generic array creation is not allowed. Array is private to this method and only exposed through
+			// Arrays.asList() of matching element type, hence the cast is safe.
+			@SuppressWarnings( "unchecked" )
+			final ConsumerRecord<K, V>[] output = (ConsumerRecord<K, V>[]) new ConsumerRecord<?, ?>[ input.size() ];
+			results.put( partition, output );
+			for ( int from = 0; from < input.size(); from += chunkSize ) {
+				tasks.add( new FutureTask<Void>( chunk( input, output, from, Math.min( from + chunkSize, input.size() ) ), null ) );
+			}
+		}
+		for ( int i = 1; i < tasks.size(); ++i ) {
+			try {
+				executor.execute( tasks.get( i ) );
+			}
+			catch ( RejectedExecutionException e ) {
+				// Picked up by calling thread below.
+			}
+		}
+		// Calling thread processes chunks not yet started by executor, running task again has no effect.
+		for ( FutureTask<Void> task : tasks ) {
+			task.run();
+		}
+		RuntimeException failure = null;
+		for ( FutureTask<Void> task : tasks ) {
+			try {
+				task.get();
+			}
+			catch ( ExecutionException e ) {
+				if ( failure == null ) {
+					failure = e.getCause() instanceof RuntimeException
+							? (RuntimeException) e.getCause()
+							: new SerializationException( String.format( "Failed to deserialize record: %s.", e.getCause().getMessage() ), e.getCause() );
+				}
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new SerializationException( "Interrupted while waiting for deserialization.", e );
+			}
+		}
+		if ( failure != null ) {
+			throw failure;
+		}
+		final Map<TopicPartition, List<ConsumerRecord<K, V>>> deserialized = new LinkedHashMap<>();
+		for ( Map.Entry<TopicPartition, ConsumerRecord<K, V>[]> entry : results.entrySet() ) {
+			deserialized.put( entry.getKey(), Arrays.asList( entry.getValue() ) );
+		}
+		return new ConsumerRecords<>( deserialized );
+	}
+
+	private Runnable chunk(final List<ConsumerRecord<byte[], byte[]>> input, final ConsumerRecord<K, V>[] output,
+						   final int from, final int to) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				for ( int i = from; i < to; ++i ) {
+					output[i] = deserialize( input.get( i ) );
+				}
+			}
+		};
+	}
+
+	private ConsumerRecord<K, V> deserialize(ConsumerRecord<byte[], byte[]> record) {
+		final Headers headers = record.headers();
+		final K key = keyDeserializer.deserialize( record.topic(), headers, record.key() );
+		final V value = valueDeserializer.deserialize( record.topic(), headers, record.value() );
+		return new ConsumerRecord<>(
+				record.topic(), record.partition(), record.offset(), record.timestamp(), record.timestampType(), null,
+				record.serializedKeySize(), record.serializedValueSize(), key, value, headers
+		);
+	}
+
+	/**
+	 * Close key and value deserializers. Executor remains untouched.
+	 */
+	@Override
+	public void close() {
+		keyDeserializer.close();
+		valueDeserializer.close();
+	}
+}
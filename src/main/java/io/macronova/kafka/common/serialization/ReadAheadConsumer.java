@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Overlaps deserialization, e.g. decryption, of upcoming batches with processing of the current one. Wrapped
+ * consumer, configured with {@code ByteArrayDeserializer}, is polled ahead of the application and fetched batches
+ * are deserialized by {@link ParallelDeserializer} on given executor. Number of batches read ahead is bounded.
+ * <p/>
+ *
+ * All calls to wrapped consumer happen on the thread invoking this class, which, just like {@code KafkaConsumer},
+ * is not thread-safe. Consumer position runs ahead of records delivered to the application, therefore offset
+ * commits need to go through {@link #commitSync()} or {@link #commitAsync(OffsetCommitCallback)}, which cover
+ * delivered records only, and {@code enable.auto.commit} has to be disabled. Records read ahead for partitions
+ * which get paused or sought are discarded and, in case of pausing, consumer rewinds to the first record not yet
+ * delivered. Records of revoked partitions are discarded after user-supplied rebalance listener completes, so
+ * that the listener can still commit delivered offsets.
+ * <p/>
+ *
+ * Example usage:
+ * <blockquote><pre>
+ * final ReadAheadConsumer&lt;String, Object&gt; readAhead = new ReadAheadConsumer&lt;&gt;(
+ *         new KafkaConsumer&lt;&gt;( properties, new ByteArrayDeserializer(), new ByteArrayDeserializer() ),
+ *         new StringDeserializer(), chainedDeserializer, executor, 2
+ * );
+ * readAhead.subscribe( Collections.singletonList( "topic1" ) );
+ * while ( running ) {
+ *     process( readAhead.poll( 100 ) );
+ *     readAhead.commitSync();
+ * }
+ * </pre></blockquote>
+ *
+ * @param <K> Type of record key.
+ * @param <V> Type of record value.
+ */
+public class ReadAheadConsumer<K, V> implements Closeable {
+	private final Consumer<byte[], byte[]> consumer;
+	private final ParallelDeserializer<K, V> deserializer;
+	private final Executor executor;
+	private final int depth;
+	private final Deque<Batch> pending = new ArrayDeque<>();
+	private final Map<TopicPartition, OffsetAndMetadata> delivered = new HashMap<>();
+
+	/**
+	 * @param consumer Consumer polling serialized records. Not closed by {@link #close()}.
+	 * @param keyDeserializer Configured key deserializer.
+	 * @param valueDeserializer Configured value deserializer.
+	 * @param executor Executor deserializing batches read ahead.
+	 * @param depth Maximum number of batches read ahead of the one returned to application.
+	 */
+	public ReadAheadConsumer(Consumer<byte[], byte[]> consumer, Deserializer<K> keyDeserializer,
+							 Deserializer<V> valueDeserializer, Executor executor, int depth) {
+		if ( depth <= 0 ) {
+			throw new IllegalArgumentException( "Read-ahead depth has to be positive." );
+		}
+		this.consumer = consumer;
+		this.deserializer = new ParallelDeserializer<>(
+				keyDeserializer, valueDeserializer, executor, ParallelDeserializer.DEFAULT_CHUNK_SIZE
+		);
+		this.executor = executor;
+		this.depth = depth;
+	}
+
+	public void subscribe(Collection<String> topics) {
+		subscribe( topics, null );
+	}
+
+	/**
+	 * @param topics Topics to subscribe.
+	 * @param listener Rebalance listener invoked before records read ahead for revoked partitions are discarded.
+	 *                 May be {@code null}.
+	 */
+	public void subscribe(Collection<String> topics, final ConsumerRebalanceListener listener) {
+		consumer.subscribe( topics, new ConsumerRebalanceListener() {
+			@Override
+			public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+				try {
+					if ( listener != null ) {
+						listener.onPartitionsRevoked( partitions );
+					}
+				}
+				finally {
+					discard( partitions );
+					delivered.keySet().removeAll( partitions );
+				}
+			}
+
+			@Override
+			public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+				if ( listener != null ) {
+					listener.onPartitionsAssigned( partitions );
+				}
+			}
+		} );
+	}
+
+	public void assign(Collection<TopicPartition> partitions) {
+		final Set<TopicPartition> removed = new HashSet<>( consumer.assignment() );
+		removed.removeAll( partitions );
+		discard( removed );
+		delivered.keySet().removeAll( removed );
+		consumer.assign( partitions );
+	}
+
+	/**
+	 * Return next deserialized batch and read further batches ahead.
+	 *
+	 * @param timeout Maximum time to block if no batch has been read ahead, in milliseconds.
+	 * @return Deserialized records.
+	 * @throws SerializationException Indicates failure to deserialize any of the records. Consumer is rewound
+	 *         to the first record not yet delivered and batches read ahead are discarded, so that failed records
+	 *         are fetched again by next poll, unless application seeks past them.
+	 */
+	public ConsumerRecords<K, V> poll(long timeout) {
+		if ( pending.isEmpty() && ! fetch( timeout ) ) {
+			return ConsumerRecords.empty();
+		}
+		// Deserialize following batches while application processes current one. Current batch stays queued,
+		// so that rebalance triggered by polling discards its records of revoked partitions as well.
+		while ( pending.size() <= depth ) {
+			if ( ! fetch( 0L ) ) {
+				break;
+			}
+		}
+		final ConsumerRecords<K, V> records;
+		try {
+			records = pending.peek().get();
+		}
+		catch ( RuntimeException e ) {
+			// Consumer position already moved past records read ahead.
+			rewind();
+			throw e;
+		}
+		pending.poll();
+		for ( TopicPartition partition : records.partitions() ) {
+			final List<ConsumerRecord<K, V>> partitionRecords = records.records( partition );
+			delivered.put(
+					partition, new OffsetAndMetadata( partitionRecords.get( partitionRecords.size() - 1 ).offset() + 1 )
+			);
+		}
+		return records;
+	}
+
+	private boolean fetch(long timeout) {
+		final ConsumerRecords<byte[], byte[]> records = consumer.poll( timeout );
+		if ( records.isEmpty() ) {
+			return false;
+		}
+		final Batch batch = new Batch( records );
+		pending.add( batch );
+		try {
+			executor.execute( batch.task );
+		}
+		catch ( RejectedExecutionException e ) {
+			// Deserialized by polling thread on delivery.
+		}
+		return true;
+	}
+
+	/**
+	 * Pause partitions, discard records read ahead for them and rewind to the first record not yet delivered.
+	 */
+	public void pause(Collection<TopicPartition> partitions) {
+		consumer.pause( partitions );
+		for ( TopicPartition partition : partitions ) {
+			final Long offset = firstPendingOffset( partition );
+			if ( offset != null ) {
+				consumer.seek( partition, offset );
+			}
+		}
+		discard( partitions );
+	}
+
+	public void resume(Collection<TopicPartition> partitions) {
+		consumer.resume( partitions );
+	}
+
+	/**
+	 * Discard records read ahead for given partition and seek to given offset.
+	 */
+	public void seek(TopicPartition partition, long offset) {
+		discard( Collections.singleton( partition ) );
+		consumer.seek( partition, offset );
+	}
+
+	/**
+	 * Seek every partition with records read ahead back to its first pending record and discard all batches.
+	 */
+	private void rewind() {
+		final Set<TopicPartition> partitions = new HashSet<>();
+		for ( Batch batch : pending ) {
+			partitions.addAll( batch.partitions );
+		}
+		for ( TopicPartition partition : partitions ) {
+			consumer.seek( partition, firstPendingOffset( partition ) );
+		}
+		for ( Batch batch : pending ) {
+			batch.task.cancel( false );
+		}
+		pending.clear();
+	}
+
+	private Long firstPendingOffset(TopicPartition partition) {
+		for ( Batch batch : pending ) {
+			if ( batch.partitions.contains( partition ) ) {
+				return batch.records.records( partition ).get( 0 ).offset();
+			}
+		}
+		return null;
+	}
+
+	private void discard(Collection<TopicPartition> partitions) {
+		for ( Batch batch : pending ) {
+			batch.partitions.removeAll( partitions );
+		}
+	}
+
+	/**
+	 * @return Offsets following last records delivered to application, per partition.
+	 */
+	public Map<TopicPartition, OffsetAndMetadata> delivered() {
+		return Collections.unmodifiableMap( delivered );
+	}
+
+	/**
+	 * Commit offsets of records delivered to application.
+	 */
+	public void commitSync() {
+		if ( ! delivered.isEmpty() ) {
+			consumer.commitSync( new HashMap<>( delivered ) );
+		}
+	}
+
+	/**
+	 * Commit offsets of records delivered to application asynchronously.
+	 *
+	 * @param callback Commit callback. May be {@code null}.
+	 */
+	public void commitAsync(OffsetCommitCallback callback) {
+		if ( ! delivered.isEmpty() ) {
+			consumer.commitAsync( new HashMap<>( delivered ), callback );
+		}
+	}
+
+	/**
+	 * Discard records read ahead and close deserializers. Wrapped consumer remains open.
+	 */
+	@Override
+	public void close() {
+		for ( Batch batch : pending ) {
+			batch.task.cancel( false );
+		}
+		pending.clear();
+		deserializer.close();
+	}
+
+	/**
+	 * Batch of records read ahead. Partitions get removed from the batch when their records are discarded.
+	 */
+	private final class Batch {
+		private final ConsumerRecords<byte[], byte[]> records;
+		private final Set<TopicPartition> partitions;
+		private final FutureTask<ConsumerRecords<K, V>> task;
+
+		private Batch(final ConsumerRecords<byte[], byte[]> records) {
+			this.records = records;
+			this.partitions = new HashSet<>( records.partitions() );
+			this.task = new FutureTask<>( new Callable<ConsumerRecords<K, V>>() {
+				@Override
+				public ConsumerRecords<K, V> call() {
+					return deserializer.deserialize( records );
+				}
+			} );
+		}
+
+		private ConsumerRecords<K, V> get() {
+			// Run on polling thread unless executor has already started.
+			task.run();
+			final ConsumerRecords<K, V> result;
+			try {
+				result = task.get();
+			}
+			catch ( ExecutionException e ) {
+				if ( e.getCause() instanceof RuntimeException ) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new SerializationException( String.format( "Failed to deserialize records: %s.", e.getCause().getMessage() ), e.getCause() );
+			}
+			catch ( InterruptedException e ) {
+				throw new InterruptException( e );
+			}
+			if ( partitions.size() == result.partitions().size() ) {
+				return result;
+			}
+			final Map<TopicPartition, List<ConsumerRecord<K, V>>> remaining = new LinkedHashMap<>();
+			for ( TopicPartition partition : result.partitions() ) {
+				if ( partitions.contains( partition ) ) {
+					remaining.put( partition, result.records( partition ) );
+				}
+			}
+			return new ConsumerRecords<>( remaining );
+		}
+	}
+}
@@ -15,21 +15,28 @@
  */
 package io.macronova.kafka.common.serialization;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.security.KeyStore;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.Certificate;
-import java.util.Arrays;
 import java.util.Map;
 
 import io.macronova.kafka.common.serialization.config.VerifySignatureConfig;
 import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
+import io.macronova.kafka.common.serialization.utils.HeaderHelper;
 import io.macronova.kafka.common.serialization.utils.IOUtils;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+import io.macronova.kafka.common.serialization.utils.KeyRing;
+import io.macronova.kafka.common.serialization.utils.KeyStoreWatcher;
+import io.macronova.kafka.common.serialization.utils.SecurityProviders;
+import io.macronova.kafka.common.serialization.utils.SignaturePool;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
-import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
 
 /**
  * Verifies correctness of signature, and throws {@link SerializationException} if it turns out invalid.
@@ -50,29 +57,97 @@ import org.apache.kafka.common.serialization.Deserializer;
  * | signature | data |
  * +------------------+
  * </pre></blockquote>
+ *
+ * With {@code metadata.location = headers}, signature is read from record header {@code <prefix>signature} whenever
+ * present, in which case input contains data only.
+ * <p/>
+ *
+ * With {@code wire.format = v1} or {@code auto}, {@link WireFormat} header is validated against configured algorithm,
+ * identifier of the public key and expected signature length before verification.
  */
-public class VerifySignatureDeserializer implements Deserializer<byte[]> {
+public class VerifySignatureDeserializer implements ExtendedDeserializer<byte[]>, ByteStage {
+	private KeyStoreRegistry.Handle keyStoreHandle = null;
+	private KeyStoreWatcher.Watch keyStoreWatch = null;
 	private VerifySignatureConfig config = null;
-	private PublicKey publicKey = null;
+	private SignaturePool signaturePool = null;
+	private boolean lengthPrefix = false;
+	private volatile VerificationKey verificationKey = null;
+	private boolean useHeaders = false;
+	private String signatureHeader = null;
+	private int algorithmId = 0;
+	private boolean requireWireFormat = false;
+	private boolean detectWireFormat = false;
 
 	@Override
 	public void configure(Map<String, ?> configs, boolean isKey) {
 		config = new VerifySignatureConfig( configs );
 		try {
-			final KeyStore keyStore = EncryptionHelper.loadKeyStore(
-					config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
+			final Provider provider = SecurityProviders.forSignature( config.getProvider(), config.getAlgorithm() );
+			signaturePool = new SignaturePool( config.getAlgorithm(), provider );
+			lengthPrefix = config.useLengthPrefix();
+			useHeaders = config.useHeaders();
+			signatureHeader = HeaderHelper.prefix( config.getHeaderPrefix(), isKey ) + HeaderHelper.SIGNATURE;
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to initialize signature: %s.", e.getMessage() ), e );
+		}
+		requireWireFormat = VerifySignatureConfig.WIRE_FORMAT_V1.equals( config.getWireFormat() );
+		detectWireFormat = VerifySignatureConfig.WIRE_FORMAT_AUTO.equals( config.getWireFormat() );
+		algorithmId = WireFormat.signatureId( config.getAlgorithm() );
+		if ( ( requireWireFormat || detectWireFormat ) && algorithmId == 0 ) {
+			throw new ConfigException(
+					String.format( "Signature algorithm '%s' is not supported by wire format.", config.getAlgorithm() )
 			);
-			final Certificate certificate = keyStore.getCertificate( config.getKeyAlias() );
+		}
+		try {
+			loadPublicKey();
+		}
+		catch ( Exception e ) {
+			throw new ConfigException( String.format( "Failed to retrieve public key: %s.", e.getMessage() ), e );
+		}
+		if ( config.getKeyStoreReloadIntervalMs() > 0L ) {
+			keyStoreWatch = KeyStoreWatcher.watch(
+					config.getKeyStorePath(), config.getKeyStoreReloadIntervalMs(), new KeyStoreWatcher.Listener() {
+						@Override
+						public void onChange() throws Exception {
+							loadPublicKey();
+						}
+					}
+			);
+		}
+	}
+
+	/**
+	 * Load public key from key store and replace the one used for verification. Invoked also by key store watcher.
+	 */
+	private synchronized void loadPublicKey() throws Exception {
+		if ( config == null ) {
+			// Closed concurrently.
+			return;
+		}
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire(
+				config.getKeyStorePath(), config.getKeyStoreType(), config.getKeyStorePassword().toCharArray()
+		);
+		try {
+			final Certificate certificate = handle.getCertificate( config.getKeyAlias() );
 			if ( certificate == null ) {
 				throw new ConfigException(
 						String.format( "Could not find alias '%s' in key store '%s'.", config.getKeyAlias(), config.getKeyStorePath() )
 				);
 			}
-			publicKey = certificate.getPublicKey();
+			final PublicKey publicKey = EncryptionHelper.translatePublicKey( certificate.getPublicKey() );
+			verificationKey = new VerificationKey(
+					publicKey, KeyRing.keyId( certificate.getPublicKey().getEncoded() ),
+					EncryptionHelper.isVariableLengthSignature( config.getAlgorithm() )
+							? -1 : EncryptionHelper.getSignatureLength( publicKey )
+			);
 		}
 		catch ( Exception e ) {
-			throw new ConfigException( String.format( "Failed to retrieve public key: %s.", e.getMessage() ), e );
+			handle.close();
+			throw e;
 		}
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = handle;
 	}
 
 	@Override
@@ -80,38 +155,177 @@ public class VerifySignatureDeserializer implements Deserializer<byte[]> {
 		if ( data == null ) {
 			return null;
 		}
-		final InputStream inputStream = new ByteArrayInputStream( data );
-		try {
-			final Signature signature = EncryptionHelper.initializeSignature( config.getAlgorithm(), publicKey, false );
-			byte[] proposedSignature = new byte[ EncryptionHelper.getKeyLength( publicKey ) / 8 ];
-			if ( inputStream.read( proposedSignature ) != proposedSignature.length ) {
-				throw new SerializationException( "Unexpected end of encrypted content." );
-			}
+		return IOUtils.toByteArray( deserialize( topic, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Verify signature of given buffer without copying it.
+	 *
+	 * @param topic Topic name.
+	 * @param data Signature followed by data. Position of the buffer is not modified.
+	 * @return Read-only view of data following the signature.
+	 */
+	public ByteBuffer deserialize(String topic, ByteBuffer data) {
+		final ByteBuffer result = apply( topic, data );
+		return result != null ? result.asReadOnlyBuffer() : null;
+	}
 
-			byte[] buffer = new byte[ 8192 ];
-			int bytesCount = 0;
-			while ( (bytesCount = inputStream.read( buffer )) != -1 ) {
-				signature.update( buffer, 0, bytesCount );
+	/**
+	 * Read signature represented according to configured framing.
+	 *
+	 * @param payload Input buffer. Position is advanced past the signature.
+	 * @param key Public key used to determine length of fixed-length signature.
+	 * @return Signature bytes.
+	 */
+	byte[] readSignature(ByteBuffer payload, PublicKey key) {
+		final int signatureLength;
+		if ( lengthPrefix ) {
+			if ( payload.remaining() < 2 ) {
+				throw new SerializationException( "Unexpected end of signed content." );
 			}
+			signatureLength = payload.getShort() & 0xFFFF;
+		}
+		else {
+			signatureLength = EncryptionHelper.getSignatureLength( key );
+		}
+		return EncryptionHelper.read( payload, signatureLength );
+	}
+
+	/**
+	 * Read signature following wire format header, validating header against configured algorithm and key.
+	 *
+	 * @param payload Input buffer. Position is advanced past the signature.
+	 * @param key Public key used for verification.
+	 * @return Signature bytes.
+	 */
+	private byte[] readWireFormat(ByteBuffer payload, VerificationKey key) {
+		final WireFormat.Header header = WireFormat.read( payload, WireFormat.TYPE_SIGNATURE );
+		if ( header.getAlgorithm() != algorithmId ) {
+			throw new SerializationException( String.format( "Unsupported signature algorithm identifier %d", header.getAlgorithm() ) );
+		}
+		if ( header.getKeyId() != key.keyId ) {
+			throw new SerializationException( String.format( "Unknown key identifier %08x", header.getKeyId() ) );
+		}
+		if ( header.getMetadataLength() == 0
+				|| ( key.signatureLength > 0 && header.getMetadataLength() != key.signatureLength ) ) {
+			throw new SerializationException( "Malformed content" );
+		}
+		return EncryptionHelper.read( payload, header.getMetadataLength() );
+	}
+
+	/**
+	 * @param key Public key.
+	 * @param signature Proposed signature.
+	 * @param content Signed data. Position of the buffer is not modified.
+	 * @return {@code true} if signature is valid, {@code false} otherwise.
+	 * @throws GeneralSecurityException Indicates failure.
+	 */
+	boolean verify(PublicKey key, byte[] signature, ByteBuffer content) throws GeneralSecurityException {
+		try {
+			final Signature verifier = signaturePool.verifier( key );
+			EncryptionHelper.update( verifier, content );
+			return verifier.verify( signature );
+		}
+		catch ( GeneralSecurityException e ) {
+			signaturePool.invalidate();
+			throw e;
+		}
+	}
 
-			boolean valid = signature.verify( proposedSignature );
-			if ( ! valid ) {
+	/**
+	 * @return Public key currently used for verification.
+	 */
+	PublicKey getPublicKey() {
+		return verificationKey.publicKey;
+	}
+
+	/**
+	 * Same as {@link #deserialize(String, ByteBuffer)}, but returns writable view of the input, given that byte
+	 * stages never modify their input.
+	 */
+	@Override
+	public ByteBuffer apply(String topic, ByteBuffer data) {
+		if ( data == null ) {
+			return null;
+		}
+		try {
+			final VerificationKey key = verificationKey;
+			final ByteBuffer payload = data.duplicate();
+			final byte[] proposedSignature
+					= requireWireFormat || ( detectWireFormat && WireFormat.present( data, WireFormat.TYPE_SIGNATURE ) )
+					? readWireFormat( payload, key ) : readSignature( payload, key.publicKey );
+			if ( ! verify( key.publicKey, proposedSignature, payload ) ) {
 				throw new SerializationException( "Incorrect signature." );
 			}
-
-			return Arrays.copyOfRange( data, proposedSignature.length, data.length );
+			return payload.slice();
 		}
 		catch ( Exception e ) {
 			throw new SerializationException( String.format( "Failed to verify signature: %s.", e.getMessage() ), e );
 		}
-		finally {
-			IOUtils.closeQuietly( inputStream );
+	}
+
+	@Override
+	public byte[] deserialize(String topic, Headers headers, byte[] data) {
+		if ( data == null ) {
+			return null;
+		}
+		return IOUtils.toByteArray( apply( topic, headers, ByteBuffer.wrap( data ) ) );
+	}
+
+	/**
+	 * Verify signature of given buffer without copying it, reading signature from record header when present.
+	 *
+	 * @param topic Topic name.
+	 * @param headers Record headers. May be {@code null}.
+	 * @param data Input data. Position of the buffer is not modified.
+	 * @return Read-only view of verified data.
+	 */
+	public ByteBuffer deserialize(String topic, Headers headers, ByteBuffer data) {
+		final ByteBuffer result = apply( topic, headers, data );
+		return result != null ? result.asReadOnlyBuffer() : null;
+	}
+
+	@Override
+	public ByteBuffer apply(String topic, Headers headers, ByteBuffer data) {
+		final byte[] proposedSignature = useHeaders ? HeaderHelper.get( headers, signatureHeader ) : null;
+		if ( data == null || proposedSignature == null ) {
+			return apply( topic, data );
+		}
+		try {
+			if ( ! verify( verificationKey.publicKey, proposedSignature, data ) ) {
+				throw new SerializationException( "Incorrect signature." );
+			}
+			return data.duplicate();
+		}
+		catch ( Exception e ) {
+			throw new SerializationException( String.format( "Failed to verify signature: %s.", e.getMessage() ), e );
 		}
 	}
 
 	@Override
-	public void close() {
+	public synchronized void close() {
+		IOUtils.closeQuietly( keyStoreWatch );
+		keyStoreWatch = null;
+		IOUtils.closeQuietly( keyStoreHandle );
+		keyStoreHandle = null;
 		config = null;
-		publicKey = null;
+		signaturePool = null;
+		verificationKey = null;
+	}
+
+	/**
+	 * Public key together with its identifier and length of fixed-length signatures ({@code -1} if variable).
+	 * Replaced as a whole when key store is reloaded.
+	 */
+	private static final class VerificationKey {
+		private final PublicKey publicKey;
+		private final int keyId;
+		private final int signatureLength;
+
+		private VerificationKey(PublicKey publicKey, int keyId, int signatureLength) {
+			this.publicKey = publicKey;
+			this.keyId = keyId;
+			this.signatureLength = signatureLength;
+		}
 	}
 }
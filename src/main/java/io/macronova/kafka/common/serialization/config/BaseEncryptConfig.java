@@ -15,6 +15,9 @@
  */
 package io.macronova.kafka.common.serialization.config;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.bind.DatatypeConverter;
@@ -49,6 +52,55 @@ public abstract class BaseEncryptConfig extends AbstractConfig {
 	public static final String SECRET_DOC = "Encryption key in hexadecimal format. Required in " +
 			"case of passphrase encryption.";
 
+	public static final String SECRETS_CONFIG = "secrets";
+	public static final String SECRETS_DOC = "Comma-separated list of encryption keys in hexadecimal format (key ring). " +
+			"Serializer encrypts data with the first key and prepends its identifier to the output. Deserializer " +
+			"decrypts data with any of the keys.";
+
+	public static final String KEY_ALIASES_CONFIG = "key.store.aliases";
+	public static final String KEY_ALIASES_DOC = "List of key aliases present in key store (key ring). Serializer " +
+			"encrypts data with the first key and prepends its identifier to the output. Deserializer decrypts data " +
+			"with any of the keys.";
+
+	public static final String KEY_STORE_RELOAD_INTERVAL_MS_CONFIG = "key.store.reload.interval.ms";
+	public static final long KEY_STORE_RELOAD_INTERVAL_MS_DEFAULT = 0L;
+	public static final String KEY_STORE_RELOAD_INTERVAL_MS_DOC = "Interval in milliseconds at which key store file is checked for " +
+			"modifications. Modified key store is reloaded in the background without restarting producer or " +
+			"consumer. Value of 0 disables reloading. Default: 0.";
+
+	public static final String PROVIDER_CONFIG = "provider";
+	public static final String PROVIDER_DEFAULT = "BC";
+	public static final String PROVIDER_DOC = "Name of Java security provider used for cryptographic operations, e.g. BC (Bouncy Castle), " +
+			"SunJCE, or any other registered provider. Value 'auto' benchmarks all providers supporting configured algorithm " +
+			"and selects the fastest one. Default: BC.";
+
+	public static final String METADATA_LOCATION_CONFIG = "metadata.location";
+	public static final String METADATA_LOCATION_VALUE = "value";
+	public static final String METADATA_LOCATION_HEADERS = "headers";
+	public static final String METADATA_LOCATION_DOC = "Location of key identifier and initialization vector written by serializer. Value 'value' " +
+			"prepends it to record value, 'headers' stores it in Kafka record headers and leaves ciphertext alone in the value. " +
+			"Deserializer configured with 'headers' reads metadata from headers whenever present, and from value otherwise. " +
+			"Deserializer configured with 'value' ignores record headers. Default: value.";
+
+	public static final String HEADER_PREFIX_CONFIG = "header.prefix";
+	public static final String HEADER_PREFIX_DOC = "Prefix of record header names carrying metadata. " +
+			"Default: 'key.' for record key and 'value.' for record value.";
+
+	public static final String WIRE_FORMAT_CONFIG = "wire.format";
+	public static final String WIRE_FORMAT_LEGACY = "legacy";
+	public static final String WIRE_FORMAT_V1 = "v1";
+	public static final String WIRE_FORMAT_AUTO = "auto";
+	public static final String WIRE_FORMAT_DOC = "Representation of key identifier and initialization vector in record value. Value 'legacy' keeps format " +
+			"of previous releases. 'v1' prepends versioned header identifying algorithm, key and metadata length, which " +
+			"deserializer validates before any cryptographic operation; records without header are rejected. 'auto' writes " +
+			"header like 'v1', but accepts both formats while reading, which allows to migrate existing topics. " +
+			"Values other than 'legacy' require metadata stored in record value. Default: legacy.";
+
+	public static final String WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_CONFIG = "wire.format.allowed.transformations";
+	public static final String WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_DOC = "Comma-separated list of transformations, besides the configured one, " +
+			"which deserializer accepts in records with wire format header, e.g. during migration from one mode of operation to another. " +
+			"Transformations need to be supported by wire format and use configured algorithm. Default: empty.";
+
 	public BaseEncryptConfig(ConfigDef definition, Map<?, ?> originals) {
 		super( definition, originals, false );
 	}
@@ -60,13 +112,40 @@ public abstract class BaseEncryptConfig extends AbstractConfig {
 				.define( KEY_STORE_PASSWORD_CONFIG, ConfigDef.Type.PASSWORD, null, ConfigDef.Importance.HIGH, KEY_STORE_PASSWORD_DOC )
 				.define( KEY_STORE_TYPE_CONFIG, ConfigDef.Type.STRING, KEY_STORE_TYPE_DEFAULT, ConfigDef.Importance.MEDIUM, KEY_STORE_TYPE_DOC )
 				.define( KEY_ALIAS_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.HIGH, KEY_ALIAS_DOC )
-				.define( SECRET_CONFIG, ConfigDef.Type.PASSWORD, null, ConfigDef.Importance.HIGH, SECRET_DOC );
+				.define( SECRET_CONFIG, ConfigDef.Type.PASSWORD, null, ConfigDef.Importance.HIGH, SECRET_DOC )
+				.define( SECRETS_CONFIG, ConfigDef.Type.PASSWORD, null, ConfigDef.Importance.HIGH, SECRETS_DOC )
+				.define( KEY_ALIASES_CONFIG, ConfigDef.Type.LIST, null, ConfigDef.Importance.HIGH, KEY_ALIASES_DOC )
+				.define( KEY_STORE_RELOAD_INTERVAL_MS_CONFIG, ConfigDef.Type.LONG, KEY_STORE_RELOAD_INTERVAL_MS_DEFAULT, ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.LOW, KEY_STORE_RELOAD_INTERVAL_MS_DOC )
+				.define( PROVIDER_CONFIG, ConfigDef.Type.STRING, PROVIDER_DEFAULT, ConfigDef.Importance.LOW, PROVIDER_DOC )
+				.define(
+						METADATA_LOCATION_CONFIG, ConfigDef.Type.STRING, METADATA_LOCATION_VALUE,
+						ConfigDef.ValidString.in( METADATA_LOCATION_VALUE, METADATA_LOCATION_HEADERS ),
+						ConfigDef.Importance.MEDIUM, METADATA_LOCATION_DOC
+				)
+				.define( HEADER_PREFIX_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, HEADER_PREFIX_DOC )
+				.define(
+						WIRE_FORMAT_CONFIG, ConfigDef.Type.STRING, WIRE_FORMAT_LEGACY,
+						ConfigDef.ValidString.in( WIRE_FORMAT_LEGACY, WIRE_FORMAT_V1, WIRE_FORMAT_AUTO ),
+						ConfigDef.Importance.MEDIUM, WIRE_FORMAT_DOC
+				)
+				.define(
+						WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_CONFIG, ConfigDef.Type.LIST, Collections.emptyList(),
+						ConfigDef.Importance.LOW, WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_DOC
+				);
 	}
 
 	protected void validate() {
-		if ( ( getString( KEY_STORE_PATH_CONFIG ) == null && getPassword( SECRET_CONFIG ) == null )
-				|| ( getString( KEY_STORE_PATH_CONFIG ) != null && getPassword( SECRET_CONFIG ) != null ) ) {
-			throw new ConfigException( String.format( "Exactly one of the following properties need to be specified: %s, %s.", KEY_STORE_PATH_CONFIG, SECRET_CONFIG ) );
+		if ( useHeaders() && ! WIRE_FORMAT_LEGACY.equals( getWireFormat() ) ) {
+			throw new ConfigException(
+					String.format( "Property '%s' requires %s=%s.", WIRE_FORMAT_CONFIG, METADATA_LOCATION_CONFIG, METADATA_LOCATION_VALUE )
+			);
+		}
+		final int keySources = ( getString( KEY_STORE_PATH_CONFIG ) != null ? 1 : 0 )
+				+ ( getPassword( SECRET_CONFIG ) != null ? 1 : 0 ) + ( getPassword( SECRETS_CONFIG ) != null ? 1 : 0 );
+		if ( keySources != 1 ) {
+			throw new ConfigException(
+					String.format( "Exactly one of the following properties need to be specified: %s, %s, %s.", KEY_STORE_PATH_CONFIG, SECRET_CONFIG, SECRETS_CONFIG )
+			);
 		}
 		if ( useCertificate() ) {
 			if ( getPassword( KEY_STORE_PASSWORD_CONFIG ) == null ) {
@@ -74,11 +153,14 @@ public abstract class BaseEncryptConfig extends AbstractConfig {
 						String.format( "Property '%s' cannot be empty when declared '%s'.", KEY_STORE_PASSWORD_CONFIG, KEY_STORE_PATH_CONFIG )
 				);
 			}
-			if ( getString( KEY_ALIAS_CONFIG ) == null ) {
+			if ( ( getString( KEY_ALIAS_CONFIG ) == null ) == ( getList( KEY_ALIASES_CONFIG ) == null ) ) {
 				throw new ConfigException(
-						String.format( "Property '%s' cannot be empty when declared '%s'.", KEY_ALIAS_CONFIG, KEY_STORE_PATH_CONFIG )
+						String.format( "Exactly one of the following properties need to be specified when declared '%s': %s, %s.", KEY_STORE_PATH_CONFIG, KEY_ALIAS_CONFIG, KEY_ALIASES_CONFIG )
 				);
 			}
+			if ( getList( KEY_ALIASES_CONFIG ) != null && getList( KEY_ALIASES_CONFIG ).isEmpty() ) {
+				throw new ConfigException( String.format( "Property '%s' cannot be empty.", KEY_ALIASES_CONFIG ) );
+			}
 		}
 	}
 
@@ -86,6 +168,13 @@ public abstract class BaseEncryptConfig extends AbstractConfig {
 		return getString( KEY_STORE_PATH_CONFIG ) != null;
 	}
 
+	/**
+	 * @return {@code true} if key ring has been configured, and encrypted data is prefixed with key identifier.
+	 */
+	public boolean useKeyRing() {
+		return getPassword( SECRETS_CONFIG ) != null || getList( KEY_ALIASES_CONFIG ) != null;
+	}
+
 	public String getTransformation() {
 		return getString( TRANSFORMATION_CONFIG );
 	}
@@ -98,6 +187,26 @@ public abstract class BaseEncryptConfig extends AbstractConfig {
 		return null;
 	}
 
+	/**
+	 * @return Secret keys of the key ring, or single secret key. First key shall be used for encryption.
+	 */
+	public List<byte[]> getSecrets() {
+		final Password secrets = getPassword( SECRETS_CONFIG );
+		if ( secrets == null ) {
+			return Collections.singletonList( getSecret() );
+		}
+		final List<byte[]> result = new ArrayList<>();
+		for ( String secret : secrets.value().split( "," ) ) {
+			if ( ! secret.trim().isEmpty() ) {
+				result.add( DatatypeConverter.parseHexBinary( secret.trim() ) );
+			}
+		}
+		if ( result.isEmpty() ) {
+			throw new ConfigException( String.format( "Property '%s' cannot be empty.", SECRETS_CONFIG ) );
+		}
+		return result;
+	}
+
 	public String getKeyStorePath() {
 		return getString( KEY_STORE_PATH_CONFIG );
 	}
@@ -113,4 +222,36 @@ public abstract class BaseEncryptConfig extends AbstractConfig {
 	public String getKeyAlias() {
 		return getString( KEY_ALIAS_CONFIG );
 	}
+
+	public long getKeyStoreReloadIntervalMs() {
+		return getLong( KEY_STORE_RELOAD_INTERVAL_MS_CONFIG );
+	}
+
+	public String getProvider() {
+		return getString( PROVIDER_CONFIG );
+	}
+
+	/**
+	 * @return Key aliases of the key ring, or single key alias. First key shall be used for encryption.
+	 */
+	public List<String> getKeyAliases() {
+		final List<String> aliases = getList( KEY_ALIASES_CONFIG );
+		return aliases != null ? aliases : Collections.singletonList( getKeyAlias() );
+	}
+
+	public boolean useHeaders() {
+		return METADATA_LOCATION_HEADERS.equals( getString( METADATA_LOCATION_CONFIG ) );
+	}
+
+	public String getHeaderPrefix() {
+		return getString( HEADER_PREFIX_CONFIG );
+	}
+
+	public String getWireFormat() {
+		return getString( WIRE_FORMAT_CONFIG );
+	}
+
+	public List<String> getWireFormatAllowedTransformations() {
+		return getList( WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_CONFIG );
+	}
 }
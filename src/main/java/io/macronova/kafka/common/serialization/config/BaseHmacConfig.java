@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.config;
+
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+
+public abstract class BaseHmacConfig extends AbstractConfig {
+	public static final String ALGORITHM_CONFIG = "algorithm";
+	public static final String ALGORITHM_DEFAULT = "HmacSHA256";
+	public static final String ALGORITHM_DOC = "Message authentication code algorithm. Default: HmacSHA256.";
+
+	public static final String SECRET_CONFIG = "secret";
+	public static final String SECRET_DOC = "Shared secret key in hexadecimal format.";
+
+	public static final String TAG_LENGTH_CONFIG = "tag.length";
+	public static final int TAG_LENGTH_DEFAULT = 0;
+	public static final int TAG_LENGTH_MIN = 10;
+	public static final String TAG_LENGTH_DOC = "Length of authentication tag in bytes. Tag is truncated to its leftmost " +
+			"bytes, minimum allowed length is 10 bytes (80 bits). Value of 0 disables truncation. Default: 0.";
+
+	public static final String PROVIDER_CONFIG = "provider";
+	public static final String PROVIDER_DEFAULT = "BC";
+	public static final String PROVIDER_DOC = "Name of Java security provider used for cryptographic operations, e.g. BC (Bouncy Castle), " +
+			"SunJCE, or any other registered provider. Value 'auto' benchmarks all providers supporting configured algorithm " +
+			"and selects the fastest one. Default: BC.";
+
+	public static final String METADATA_LOCATION_CONFIG = "metadata.location";
+	public static final String METADATA_LOCATION_VALUE = "value";
+	public static final String METADATA_LOCATION_HEADERS = "headers";
+	public static final String METADATA_LOCATION_DOC = "Location of authentication tag written by serializer. Value 'value' " +
+			"prepends it to record value, 'headers' stores it in Kafka record headers and leaves original data alone in the value. " +
+			"Deserializer configured with 'headers' reads metadata from headers whenever present, and from value otherwise. " +
+			"Deserializer configured with 'value' ignores record headers. Default: value.";
+
+	public static final String HEADER_PREFIX_CONFIG = "header.prefix";
+	public static final String HEADER_PREFIX_DOC = "Prefix of record header names carrying metadata. " +
+			"Default: 'key.' for record key and 'value.' for record value.";
+
+	public static final String WIRE_FORMAT_CONFIG = "wire.format";
+	public static final String WIRE_FORMAT_LEGACY = "legacy";
+	public static final String WIRE_FORMAT_V1 = "v1";
+	public static final String WIRE_FORMAT_AUTO = "auto";
+	public static final String WIRE_FORMAT_DOC = "Representation of authentication tag in record value. Value 'legacy' keeps format " +
+			"of previous releases. 'v1' prepends versioned header identifying algorithm, key and metadata length, which " +
+			"deserializer validates before any cryptographic operation; records without header are rejected. 'auto' writes " +
+			"header like 'v1', but accepts both formats while reading, which allows to migrate existing topics. " +
+			"Values other than 'legacy' require metadata stored in record value. Default: legacy.";
+
+	public BaseHmacConfig(ConfigDef definition, Map<?, ?> originals) {
+		super( definition, originals, false );
+	}
+
+	protected static ConfigDef baseConfigDef() {
+		return new ConfigDef()
+				.define( ALGORITHM_CONFIG, ConfigDef.Type.STRING, ALGORITHM_DEFAULT, ConfigDef.Importance.HIGH, ALGORITHM_DOC )
+				.define( SECRET_CONFIG, ConfigDef.Type.PASSWORD, ConfigDef.Importance.HIGH, SECRET_DOC )
+				.define( TAG_LENGTH_CONFIG, ConfigDef.Type.INT, TAG_LENGTH_DEFAULT, ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.MEDIUM, TAG_LENGTH_DOC )
+				.define( PROVIDER_CONFIG, ConfigDef.Type.STRING, PROVIDER_DEFAULT, ConfigDef.Importance.LOW, PROVIDER_DOC )
+				.define(
+						METADATA_LOCATION_CONFIG, ConfigDef.Type.STRING, METADATA_LOCATION_VALUE,
+						ConfigDef.ValidString.in( METADATA_LOCATION_VALUE, METADATA_LOCATION_HEADERS ),
+						ConfigDef.Importance.MEDIUM, METADATA_LOCATION_DOC
+				)
+				.define( HEADER_PREFIX_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, HEADER_PREFIX_DOC )
+				.define(
+						WIRE_FORMAT_CONFIG, ConfigDef.Type.STRING, WIRE_FORMAT_LEGACY,
+						ConfigDef.ValidString.in( WIRE_FORMAT_LEGACY, WIRE_FORMAT_V1, WIRE_FORMAT_AUTO ),
+						ConfigDef.Importance.MEDIUM, WIRE_FORMAT_DOC
+				);
+	}
+
+	protected void validate() {
+		if ( useHeaders() && ! WIRE_FORMAT_LEGACY.equals( getWireFormat() ) ) {
+			throw new ConfigException(
+					String.format( "Property '%s' requires %s=%s.", WIRE_FORMAT_CONFIG, METADATA_LOCATION_CONFIG, METADATA_LOCATION_VALUE )
+			);
+		}
+		if ( getTagLength() != 0 && getTagLength() < TAG_LENGTH_MIN ) {
+			throw new ConfigException( String.format( "Tag length has to be at least %d bytes.", TAG_LENGTH_MIN ) );
+		}
+	}
+
+	public String getAlgorithm() {
+		return getString( ALGORITHM_CONFIG );
+	}
+
+	public byte[] getSecret() {
+		return DatatypeConverter.parseHexBinary( getPassword( SECRET_CONFIG ).value() );
+	}
+
+	public int getTagLength() {
+		return getInt( TAG_LENGTH_CONFIG );
+	}
+
+	public String getProvider() {
+		return getString( PROVIDER_CONFIG );
+	}
+
+	public boolean useHeaders() {
+		return METADATA_LOCATION_HEADERS.equals( getString( METADATA_LOCATION_CONFIG ) );
+	}
+
+	public String getHeaderPrefix() {
+		return getString( HEADER_PREFIX_CONFIG );
+	}
+
+	public String getWireFormat() {
+		return getString( WIRE_FORMAT_CONFIG );
+	}
+}
@@ -15,6 +15,8 @@
  */
 package io.macronova.kafka.common.serialization.config;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -32,7 +34,9 @@ public abstract class BaseHybridEncryptConfig extends AbstractConfig {
 	public static final String ASYMMETRIC_TRANSFORMATION_CONFIG = "asymmetric.transformation";
 	public static final String ASYMMETRIC_TRANSFORMATION_DOC = "Cryptography transformation that consists " +
 			"of algorithm, mode and padding. Hybrid serializer encrypts randomly generated key (used for " +
-			"symmetric encryption) with asymmetric algorithm. Example: RSA.";
+			"symmetric encryption) with asymmetric algorithm. Example: RSA/None/PKCS1Padding. Use ECDH to derive " +
+			"symmetric key from ephemeral elliptic curve key agreement instead.";
+	public static final String ASYMMETRIC_TRANSFORMATION_ECDH = "ECDH";
 
 	public static final String ASYMMETRIC_KEY_STORE_PATH_CONFIG = "asymmetric.key.store.path";
 	public static final String ASYMMETRIC_KEY_STORE_PATH_DOC = "Path to Java keystore.";
@@ -47,6 +51,45 @@ public abstract class BaseHybridEncryptConfig extends AbstractConfig {
 	public static final String ASYMMETRIC_KEY_ALIAS_CONFIG = "asymmetric.key.store.alias";
 	public static final String ASYMMETRIC_KEY_ALIAS_DOC = "Alias of the key present in key store.";
 
+	public static final String ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_CONFIG = "asymmetric.key.store.reload.interval.ms";
+	public static final long ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_DEFAULT = 0L;
+	public static final String ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_DOC = "Interval in milliseconds at which key store file is checked for " +
+			"modifications. Modified key store is reloaded in the background without restarting producer or " +
+			"consumer. Value of 0 disables reloading. Default: 0.";
+
+	public static final String PROVIDER_CONFIG = "provider";
+	public static final String PROVIDER_DEFAULT = "BC";
+	public static final String PROVIDER_DOC = "Name of Java security provider used for cryptographic operations, e.g. BC (Bouncy Castle), " +
+			"SunJCE, or any other registered provider. Value 'auto' benchmarks all providers supporting configured algorithm " +
+			"and selects the fastest one. Default: BC.";
+
+	public static final String METADATA_LOCATION_CONFIG = "metadata.location";
+	public static final String METADATA_LOCATION_VALUE = "value";
+	public static final String METADATA_LOCATION_HEADERS = "headers";
+	public static final String METADATA_LOCATION_DOC = "Location of encrypted data key and initialization vector written by serializer. Value 'value' " +
+			"prepends it to record value, 'headers' stores it in Kafka record headers and leaves ciphertext alone in the value. " +
+			"Deserializer configured with 'headers' reads metadata from headers whenever present, and from value otherwise. " +
+			"Deserializer configured with 'value' ignores record headers. Default: value.";
+
+	public static final String HEADER_PREFIX_CONFIG = "header.prefix";
+	public static final String HEADER_PREFIX_DOC = "Prefix of record header names carrying metadata. " +
+			"Default: 'key.' for record key and 'value.' for record value.";
+
+	public static final String WIRE_FORMAT_CONFIG = "wire.format";
+	public static final String WIRE_FORMAT_LEGACY = "legacy";
+	public static final String WIRE_FORMAT_V1 = "v1";
+	public static final String WIRE_FORMAT_AUTO = "auto";
+	public static final String WIRE_FORMAT_DOC = "Representation of encrypted data key and initialization vector in record value. Value 'legacy' keeps format " +
+			"of previous releases. 'v1' prepends versioned header identifying algorithm, key and metadata length, which " +
+			"deserializer validates before any cryptographic operation; records without header are rejected. 'auto' writes " +
+			"header like 'v1', but accepts both formats while reading, which allows to migrate existing topics. " +
+			"Values other than 'legacy' require metadata stored in record value. Default: legacy.";
+
+	public static final String WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_CONFIG = "wire.format.allowed.transformations";
+	public static final String WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_DOC = "Comma-separated list of symmetric transformations, besides the configured one, " +
+			"which deserializer accepts in records with wire format header, e.g. during migration from one mode of operation to another. " +
+			"Transformations need to be supported by wire format and use configured algorithm. Default: empty.";
+
 	private static final Pattern transformationPattern = Pattern.compile( "^(.+)/(.+)/(.+)$" );
 
 	public BaseHybridEncryptConfig(ConfigDef definition, Map<?, ?> originals) {
@@ -60,16 +103,42 @@ public abstract class BaseHybridEncryptConfig extends AbstractConfig {
 				.define( ASYMMETRIC_KEY_STORE_PATH_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, ASYMMETRIC_KEY_STORE_PATH_DOC )
 				.define( ASYMMETRIC_KEY_STORE_PASSWORD_CONFIG, ConfigDef.Type.PASSWORD, ConfigDef.Importance.HIGH, ASYMMETRIC_KEY_STORE_PASSWORD_DOC )
 				.define( ASYMMETRIC_KEY_STORE_TYPE_CONFIG, ConfigDef.Type.STRING, ASYMMETRIC_KEY_STORE_TYPE_DEFAULT, ConfigDef.Importance.MEDIUM, ASYMMETRIC_KEY_STORE_TYPE_DOC )
-				.define( ASYMMETRIC_KEY_ALIAS_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, ASYMMETRIC_KEY_ALIAS_DOC );
+				.define( ASYMMETRIC_KEY_ALIAS_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, ASYMMETRIC_KEY_ALIAS_DOC )
+				.define( ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_CONFIG, ConfigDef.Type.LONG, ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_DEFAULT, ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.LOW, ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_DOC )
+				.define( PROVIDER_CONFIG, ConfigDef.Type.STRING, PROVIDER_DEFAULT, ConfigDef.Importance.LOW, PROVIDER_DOC )
+				.define(
+						METADATA_LOCATION_CONFIG, ConfigDef.Type.STRING, METADATA_LOCATION_VALUE,
+						ConfigDef.ValidString.in( METADATA_LOCATION_VALUE, METADATA_LOCATION_HEADERS ),
+						ConfigDef.Importance.MEDIUM, METADATA_LOCATION_DOC
+				)
+				.define( HEADER_PREFIX_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, HEADER_PREFIX_DOC )
+				.define(
+						WIRE_FORMAT_CONFIG, ConfigDef.Type.STRING, WIRE_FORMAT_LEGACY,
+						ConfigDef.ValidString.in( WIRE_FORMAT_LEGACY, WIRE_FORMAT_V1, WIRE_FORMAT_AUTO ),
+						ConfigDef.Importance.MEDIUM, WIRE_FORMAT_DOC
+				)
+				.define(
+						WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_CONFIG, ConfigDef.Type.LIST, Collections.emptyList(),
+						ConfigDef.Importance.LOW, WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_DOC
+				);
 	}
 
 	protected void validate() {
+		if ( useHeaders() && ! WIRE_FORMAT_LEGACY.equals( getWireFormat() ) ) {
+			throw new ConfigException(
+					String.format( "Property '%s' requires %s=%s.", WIRE_FORMAT_CONFIG, METADATA_LOCATION_CONFIG, METADATA_LOCATION_VALUE )
+			);
+		}
 		final Matcher matcher = transformationPattern.matcher( getAsymmetricTransformation() );
-		if ( ! matcher.matches() ) {
+		if ( ! useKeyAgreement() && ! matcher.matches() ) {
 			throw new ConfigException( "Asymmetric transformation has to include padding." );
 		}
 	}
 
+	public boolean useKeyAgreement() {
+		return ASYMMETRIC_TRANSFORMATION_ECDH.equalsIgnoreCase( getAsymmetricTransformation() );
+	}
+
 	public String getSymmetricTransformation() {
 		return getString( SYMMETRIC_TRANSFORMATION_CONFIG );
 	}
@@ -93,4 +162,28 @@ public abstract class BaseHybridEncryptConfig extends AbstractConfig {
 	public String getAsymmetricKeyAlias() {
 		return getString( ASYMMETRIC_KEY_ALIAS_CONFIG );
 	}
+
+	public long getAsymmetricKeyStoreReloadIntervalMs() {
+		return getLong( ASYMMETRIC_KEY_STORE_RELOAD_INTERVAL_MS_CONFIG );
+	}
+
+	public String getProvider() {
+		return getString( PROVIDER_CONFIG );
+	}
+
+	public boolean useHeaders() {
+		return METADATA_LOCATION_HEADERS.equals( getString( METADATA_LOCATION_CONFIG ) );
+	}
+
+	public String getHeaderPrefix() {
+		return getString( HEADER_PREFIX_CONFIG );
+	}
+
+	public String getWireFormat() {
+		return getString( WIRE_FORMAT_CONFIG );
+	}
+
+	public List<String> getWireFormatAllowedTransformations() {
+		return getList( WIRE_FORMAT_ALLOWED_TRANSFORMATIONS_CONFIG );
+	}
 }
@@ -19,6 +19,9 @@ import java.util.Map;
 
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+
+import io.macronova.kafka.common.serialization.utils.EncryptionHelper;
 
 public abstract class BaseSignatureConfig extends AbstractConfig {
 	public static final String ALGORITHM_CONFIG = "algorithm";
@@ -37,17 +40,91 @@ public abstract class BaseSignatureConfig extends AbstractConfig {
 	public static final String KEY_ALIAS_CONFIG = "key.store.alias";
 	public static final String KEY_ALIAS_DOC = "Alias of the key present in key store.";
 
+	public static final String KEY_STORE_RELOAD_INTERVAL_MS_CONFIG = "key.store.reload.interval.ms";
+	public static final long KEY_STORE_RELOAD_INTERVAL_MS_DEFAULT = 0L;
+	public static final String KEY_STORE_RELOAD_INTERVAL_MS_DOC = "Interval in milliseconds at which key store file is checked for " +
+			"modifications. Modified key store is reloaded in the background without restarting producer or " +
+			"consumer. Value of 0 disables reloading. Default: 0.";
+
+	public static final String PROVIDER_CONFIG = "provider";
+	public static final String PROVIDER_DEFAULT = "BC";
+	public static final String PROVIDER_DOC = "Name of Java security provider used for cryptographic operations, e.g. BC (Bouncy Castle), " +
+			"SunJCE, or any other registered provider. Value 'auto' benchmarks all providers supporting configured algorithm " +
+			"and selects the fastest one. Default: BC.";
+
+	public static final String METADATA_LOCATION_CONFIG = "metadata.location";
+	public static final String METADATA_LOCATION_VALUE = "value";
+	public static final String METADATA_LOCATION_HEADERS = "headers";
+	public static final String METADATA_LOCATION_DOC = "Location of signature written by serializer. Value 'value' " +
+			"prepends it to record value, 'headers' stores it in Kafka record headers and leaves original data alone in the value. " +
+			"Deserializer configured with 'headers' reads metadata from headers whenever present, and from value otherwise. " +
+			"Deserializer configured with 'value' ignores record headers. Default: value.";
+
+	public static final String HEADER_PREFIX_CONFIG = "header.prefix";
+	public static final String HEADER_PREFIX_DOC = "Prefix of record header names carrying metadata. " +
+			"Default: 'key.' for record key and 'value.' for record value.";
+
+	public static final String WIRE_FORMAT_CONFIG = "wire.format";
+	public static final String WIRE_FORMAT_LEGACY = "legacy";
+	public static final String WIRE_FORMAT_V1 = "v1";
+	public static final String WIRE_FORMAT_AUTO = "auto";
+	public static final String WIRE_FORMAT_DOC = "Representation of signature in record value. Value 'legacy' keeps format " +
+			"of previous releases. 'v1' prepends versioned header identifying algorithm, key and metadata length, which " +
+			"deserializer validates before any cryptographic operation; records without header are rejected. 'auto' writes " +
+			"header like 'v1', but accepts both formats while reading, which allows to migrate existing topics. " +
+			"Values other than 'legacy' require metadata stored in record value. Default: legacy.";
+
+	public static final String SIGNATURE_FRAMING_CONFIG = "signature.framing";
+	public static final String SIGNATURE_FRAMING_FIXED = "fixed";
+	public static final String SIGNATURE_FRAMING_LENGTH_PREFIXED = "length-prefixed";
+	public static final String SIGNATURE_FRAMING_DOC = "Representation of signature in the output. 'fixed' writes signature " +
+			"of constant length derived from the key (RSA, Ed25519, Ed448, PLAIN-ECDSA), 'length-prefixed' precedes signature " +
+			"with its 2-byte length and is required by algorithms producing variable-length DER signatures, e.g. " +
+			"SHA256withECDSA. Default: fixed.";
+
 	public BaseSignatureConfig(ConfigDef definition, Map<?, ?> originals) {
 		super( definition, originals, false );
 	}
 
+	protected void validate() {
+		if ( useHeaders() && ! WIRE_FORMAT_LEGACY.equals( getWireFormat() ) ) {
+			throw new ConfigException(
+					String.format( "Property '%s' requires %s=%s.", WIRE_FORMAT_CONFIG, METADATA_LOCATION_CONFIG, METADATA_LOCATION_VALUE )
+			);
+		}
+		if ( ! useLengthPrefix() && EncryptionHelper.isVariableLengthSignature( getAlgorithm() ) ) {
+			throw new ConfigException(
+					String.format( "Algorithm %s produces variable-length signatures and requires %s=%s.",
+							getAlgorithm(), SIGNATURE_FRAMING_CONFIG, SIGNATURE_FRAMING_LENGTH_PREFIXED )
+			);
+		}
+	}
+
 	protected static ConfigDef baseConfigDef() {
 		return new ConfigDef()
 				.define( ALGORITHM_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, ALGORITHM_DOC )
 				.define( KEY_STORE_PATH_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, KEY_STORE_PATH_DOC )
 				.define( KEY_STORE_PASSWORD_CONFIG, ConfigDef.Type.PASSWORD, ConfigDef.Importance.HIGH, KEY_STORE_PASSWORD_DOC )
 				.define( KEY_STORE_TYPE_CONFIG, ConfigDef.Type.STRING, KEY_STORE_TYPE_DEFAULT, ConfigDef.Importance.MEDIUM, KEY_STORE_TYPE_DOC )
-				.define( KEY_ALIAS_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, KEY_ALIAS_DOC );
+				.define( KEY_ALIAS_CONFIG, ConfigDef.Type.STRING, ConfigDef.Importance.HIGH, KEY_ALIAS_DOC )
+				.define( KEY_STORE_RELOAD_INTERVAL_MS_CONFIG, ConfigDef.Type.LONG, KEY_STORE_RELOAD_INTERVAL_MS_DEFAULT, ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.LOW, KEY_STORE_RELOAD_INTERVAL_MS_DOC )
+				.define( PROVIDER_CONFIG, ConfigDef.Type.STRING, PROVIDER_DEFAULT, ConfigDef.Importance.LOW, PROVIDER_DOC )
+				.define(
+						SIGNATURE_FRAMING_CONFIG, ConfigDef.Type.STRING, SIGNATURE_FRAMING_FIXED,
+						ConfigDef.ValidString.in( SIGNATURE_FRAMING_FIXED, SIGNATURE_FRAMING_LENGTH_PREFIXED ),
+						ConfigDef.Importance.MEDIUM, SIGNATURE_FRAMING_DOC
+				)
+				.define(
+						METADATA_LOCATION_CONFIG, ConfigDef.Type.STRING, METADATA_LOCATION_VALUE,
+						ConfigDef.ValidString.in( METADATA_LOCATION_VALUE, METADATA_LOCATION_HEADERS ),
+						ConfigDef.Importance.MEDIUM, METADATA_LOCATION_DOC
+				)
+				.define( HEADER_PREFIX_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, HEADER_PREFIX_DOC )
+				.define(
+						WIRE_FORMAT_CONFIG, ConfigDef.Type.STRING, WIRE_FORMAT_LEGACY,
+						ConfigDef.ValidString.in( WIRE_FORMAT_LEGACY, WIRE_FORMAT_V1, WIRE_FORMAT_AUTO ),
+						ConfigDef.Importance.MEDIUM, WIRE_FORMAT_DOC
+				);
 	}
 
 	public String getAlgorithm() {
@@ -69,4 +146,28 @@ public abstract class BaseSignatureConfig extends AbstractConfig {
 	public String getKeyAlias() {
 		return getString( KEY_ALIAS_CONFIG );
 	}
+
+	public long getKeyStoreReloadIntervalMs() {
+		return getLong( KEY_STORE_RELOAD_INTERVAL_MS_CONFIG );
+	}
+
+	public boolean useLengthPrefix() {
+		return SIGNATURE_FRAMING_LENGTH_PREFIXED.equals( getString( SIGNATURE_FRAMING_CONFIG ) );
+	}
+
+	public String getProvider() {
+		return getString( PROVIDER_CONFIG );
+	}
+
+	public boolean useHeaders() {
+		return METADATA_LOCATION_HEADERS.equals( getString( METADATA_LOCATION_CONFIG ) );
+	}
+
+	public String getHeaderPrefix() {
+		return getString( HEADER_PREFIX_CONFIG );
+	}
+
+	public String getWireFormat() {
+		return getString( WIRE_FORMAT_CONFIG );
+	}
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.config;
+
+import java.util.Map;
+
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+
+public class CompressSerializerConfig extends AbstractConfig {
+	private static ConfigDef config = baseConfigDef();
+
+	public static final String CODEC_CONFIG = "codec";
+	public static final String CODEC_DEFAULT = "lz4";
+	public static final String CODEC_DOC = "Compression codec: lz4, snappy or zstd. Default: lz4.";
+
+	public static final String LEVEL_CONFIG = "level";
+	public static final int LEVEL_DEFAULT = 3;
+	public static final String LEVEL_DOC = "Compression level of zstd codec, ignored by other codecs. Default: 3.";
+
+	public static final String MIN_SIZE_CONFIG = "min.size";
+	public static final int MIN_SIZE_DEFAULT = 64;
+	public static final String MIN_SIZE_DOC = "Records smaller than given number of bytes are not compressed. Default: 64.";
+
+	public static final String ENTROPY_THRESHOLD_CONFIG = "entropy.threshold";
+	public static final double ENTROPY_THRESHOLD_DEFAULT = 7.5;
+	public static final String ENTROPY_THRESHOLD_DOC = "Records of at least 1 KB, whose sampled entropy exceeds given number " +
+			"of bits per byte, are considered incompressible and stored as is. Value of 8 disables the check. Default: 7.5.";
+
+	public static final String DICTIONARY_PATH_CONFIG = "dictionary.path";
+	public static final String DICTIONARY_PATH_DOC = "Path to pre-trained Zstandard dictionary, applies only to zstd codec. " +
+			"Dictionaries significantly improve compression of small records. Default: none.";
+
+	public CompressSerializerConfig(Map<?, ?> originals) {
+		super( config, originals, false );
+		validate();
+	}
+
+	private void validate() {
+		if ( getDictionaryPath() != null && ! "zstd".equals( getCodec() ) ) {
+			throw new ConfigException( String.format( "Property %s applies only to zstd codec.", DICTIONARY_PATH_CONFIG ) );
+		}
+	}
+
+	protected static ConfigDef baseConfigDef() {
+		return new ConfigDef()
+				.define(
+						CODEC_CONFIG, ConfigDef.Type.STRING, CODEC_DEFAULT,
+						ConfigDef.ValidString.in( "lz4", "snappy", "zstd" ), ConfigDef.Importance.HIGH, CODEC_DOC
+				)
+				.define( LEVEL_CONFIG, ConfigDef.Type.INT, LEVEL_DEFAULT, ConfigDef.Importance.LOW, LEVEL_DOC )
+				.define( MIN_SIZE_CONFIG, ConfigDef.Type.INT, MIN_SIZE_DEFAULT, ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.LOW, MIN_SIZE_DOC )
+				.define( ENTROPY_THRESHOLD_CONFIG, ConfigDef.Type.DOUBLE, ENTROPY_THRESHOLD_DEFAULT, ConfigDef.Range.between( 0, 8 ), ConfigDef.Importance.LOW, ENTROPY_THRESHOLD_DOC )
+				.define( DICTIONARY_PATH_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.MEDIUM, DICTIONARY_PATH_DOC );
+	}
+
+	public String getCodec() {
+		return getString( CODEC_CONFIG );
+	}
+
+	public int getLevel() {
+		return getInt( LEVEL_CONFIG );
+	}
+
+	public int getMinSize() {
+		return getInt( MIN_SIZE_CONFIG );
+	}
+
+	public double getEntropyThreshold() {
+		return getDouble( ENTROPY_THRESHOLD_CONFIG );
+	}
+
+	public String getDictionaryPath() {
+		return getString( DICTIONARY_PATH_CONFIG );
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.config;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+
+public class DecompressDeserializerConfig extends AbstractConfig {
+	private static ConfigDef config = baseConfigDef();
+
+	public static final String DICTIONARY_PATH_CONFIG = "dictionary.path";
+	public static final String DICTIONARY_PATH_DOC = "Comma-separated list of paths to Zstandard dictionaries used by producers. " +
+			"Keep retired dictionaries on the list as long as records compressed with them may be consumed. Default: none.";
+
+	public static final String DECOMPRESSION_MAX_BYTES_CONFIG = "decompression.max.bytes";
+	public static final int DECOMPRESSION_MAX_BYTES_DEFAULT = 16 * 1024 * 1024;
+	public static final String DECOMPRESSION_MAX_BYTES_DOC = "Maximum uncompressed length of record in bytes. Records declaring larger " +
+			"length are rejected before allocating output buffer. Default: 16 MB.";
+
+	public DecompressDeserializerConfig(Map<?, ?> originals) {
+		super( config, originals, false );
+	}
+
+	protected static ConfigDef baseConfigDef() {
+		return new ConfigDef()
+				.define( DICTIONARY_PATH_CONFIG, ConfigDef.Type.LIST, Collections.emptyList(), ConfigDef.Importance.MEDIUM, DICTIONARY_PATH_DOC )
+				.define(
+						DECOMPRESSION_MAX_BYTES_CONFIG, ConfigDef.Type.INT, DECOMPRESSION_MAX_BYTES_DEFAULT,
+						ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.MEDIUM, DECOMPRESSION_MAX_BYTES_DOC
+				);
+	}
+
+	public List<String> getDictionaryPaths() {
+		return getList( DICTIONARY_PATH_CONFIG );
+	}
+
+	public int getDecompressionMaxBytes() {
+		return getInt( DECOMPRESSION_MAX_BYTES_CONFIG );
+	}
+}
@@ -27,6 +27,7 @@ public class GenerateSignatureConfig extends BaseSignatureConfig {
 
 	public GenerateSignatureConfig(Map<?, ?> originals) {
 		super( config, originals );
+		validate();
 	}
 
 	protected static ConfigDef baseConfigDef() {
@@ -25,6 +25,17 @@ public class HybridDecryptDeserializerConfig extends BaseHybridEncryptConfig {
 	public static final String ASYMMETRIC_KEY_ALIAS_PASSWORD_CONFIG = "asymmetric.key.store.alias.password";
 	public static final String ASYMMETRIC_KEY_ALIAS_PASSWORD_DOC = "Password to access private key present in key store.";
 
+	public static final String KEY_CACHE_SIZE_CONFIG = "key.cache.size";
+	public static final int KEY_CACHE_SIZE_DEFAULT = 1000;
+	public static final String KEY_CACHE_SIZE_DOC = "Maximum number of decrypted secret keys kept in memory, " +
+			"so that records sharing the same key require only one asymmetric decryption. Value of 0 disables " +
+			"the cache. Default: 1000.";
+
+	public static final String KEY_CACHE_TTL_MS_CONFIG = "key.cache.ttl.ms";
+	public static final long KEY_CACHE_TTL_MS_DEFAULT = 3600000L;
+	public static final String KEY_CACHE_TTL_MS_DOC = "Time in milliseconds after which cached secret key " +
+			"expires. Value of 0 disables expiration. Default: 3600000 (one hour).";
+
 	public HybridDecryptDeserializerConfig(Map<?, ?> originals) {
 		super( config, originals );
 		validate();
@@ -33,10 +44,26 @@ public class HybridDecryptDeserializerConfig extends BaseHybridEncryptConfig {
 	protected static ConfigDef baseConfigDef() {
 		final ConfigDef config = BaseHybridEncryptConfig.baseConfigDef();
 		config.define( ASYMMETRIC_KEY_ALIAS_PASSWORD_CONFIG, ConfigDef.Type.PASSWORD, ConfigDef.Importance.HIGH, ASYMMETRIC_KEY_ALIAS_PASSWORD_DOC );
+		config.define(
+				KEY_CACHE_SIZE_CONFIG, ConfigDef.Type.INT, KEY_CACHE_SIZE_DEFAULT,
+				ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.LOW, KEY_CACHE_SIZE_DOC
+		);
+		config.define(
+				KEY_CACHE_TTL_MS_CONFIG, ConfigDef.Type.LONG, KEY_CACHE_TTL_MS_DEFAULT,
+				ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.LOW, KEY_CACHE_TTL_MS_DOC
+		);
 		return config;
 	}
 
 	public String getAsymmetricKeyAliasPassword() {
 		return getPassword( ASYMMETRIC_KEY_ALIAS_PASSWORD_CONFIG ).value();
 	}
+
+	public int getKeyCacheSize() {
+		return getInt( KEY_CACHE_SIZE_CONFIG );
+	}
+
+	public long getKeyCacheTtlMs() {
+		return getLong( KEY_CACHE_TTL_MS_CONFIG );
+	}
 }
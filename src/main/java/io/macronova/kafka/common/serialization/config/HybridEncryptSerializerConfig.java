@@ -22,8 +22,40 @@ import org.apache.kafka.common.config.ConfigDef;
 public class HybridEncryptSerializerConfig extends BaseHybridEncryptConfig {
 	private static ConfigDef config = baseConfigDef();
 
+	public static final String DATA_KEY_MAX_RECORDS_CONFIG = "data.key.max.records";
+	public static final long DATA_KEY_MAX_RECORDS_DEFAULT = 1L;
+	public static final String DATA_KEY_MAX_RECORDS_DOC = "Number of records encrypted with the same randomly " +
+			"generated symmetric key before it is rotated. Reusing the key avoids asymmetric encryption of every record. " +
+			"Default: 1 (new key for every record).";
+
+	public static final String DATA_KEY_MAX_AGE_MS_CONFIG = "data.key.max.age.ms";
+	public static final long DATA_KEY_MAX_AGE_MS_DEFAULT = 0L;
+	public static final String DATA_KEY_MAX_AGE_MS_DOC = "Maximum time in milliseconds for which randomly generated " +
+			"symmetric key can be reused. Value of 0 disables time-based rotation. Default: 0.";
+
 	public HybridEncryptSerializerConfig(Map<?, ?> originals) {
 		super( config, originals );
 		validate();
 	}
+
+	protected static ConfigDef baseConfigDef() {
+		final ConfigDef config = BaseHybridEncryptConfig.baseConfigDef();
+		config.define(
+				DATA_KEY_MAX_RECORDS_CONFIG, ConfigDef.Type.LONG, DATA_KEY_MAX_RECORDS_DEFAULT,
+				ConfigDef.Range.atLeast( 1 ), ConfigDef.Importance.MEDIUM, DATA_KEY_MAX_RECORDS_DOC
+		);
+		config.define(
+				DATA_KEY_MAX_AGE_MS_CONFIG, ConfigDef.Type.LONG, DATA_KEY_MAX_AGE_MS_DEFAULT,
+				ConfigDef.Range.atLeast( 0 ), ConfigDef.Importance.MEDIUM, DATA_KEY_MAX_AGE_MS_DOC
+		);
+		return config;
+	}
+
+	public long getDataKeyMaxRecords() {
+		return getLong( DATA_KEY_MAX_RECORDS_CONFIG );
+	}
+
+	public long getDataKeyMaxAgeMs() {
+		return getLong( DATA_KEY_MAX_AGE_MS_CONFIG );
+	}
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.config;
+
+import java.util.Map;
+
+import org.apache.kafka.common.config.ConfigDef;
+
+public class MerkleSignatureDeserializerConfig extends BaseSignatureConfig {
+	private static ConfigDef config = baseConfigDef();
+
+	public static final String ROOT_CACHE_SIZE_CONFIG = "root.cache.size";
+	public static final int ROOT_CACHE_SIZE_DEFAULT = 1024;
+	public static final String ROOT_CACHE_SIZE_DOC = "Maximum number of verified batch roots remembered by deserializer. " +
+			"Signature of cached root is not verified again. Default: 1024.";
+
+	public MerkleSignatureDeserializerConfig(Map<?, ?> originals) {
+		super( config, originals );
+		validate();
+	}
+
+	protected static ConfigDef baseConfigDef() {
+		final ConfigDef config = BaseSignatureConfig.baseConfigDef();
+		config.define( ROOT_CACHE_SIZE_CONFIG, ConfigDef.Type.INT, ROOT_CACHE_SIZE_DEFAULT, ConfigDef.Range.atLeast( 1 ), ConfigDef.Importance.LOW, ROOT_CACHE_SIZE_DOC );
+		return config;
+	}
+
+	public int getRootCacheSize() {
+		return getInt( ROOT_CACHE_SIZE_CONFIG );
+	}
+}
@@ -24,5 +24,6 @@ public class VerifySignatureConfig extends BaseSignatureConfig {
 
 	public VerifySignatureConfig(Map<?, ?> originals) {
 		super( config, originals );
+		validate();
 	}
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.Provider;
+import java.security.spec.AlgorithmParameterSpec;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Immutable encryption plan compiled once during serializer configuration. Plan captures parsed transformation,
+ * key material, length of initialization vector and security provider, so that processing of individual records
+ * does not require any further configuration lookups or string parsing. Cipher instances are obtained from
+ * thread-confined {@link CipherPool}.
+ */
+public final class CipherPlan {
+	/**
+	 * Block cipher mode of operation.
+	 */
+	public enum Mode {
+		ECB( false ), CBC( true ), CTR( true ), CCM( true ), GCM( true ), OFB( true ), OCB( true ), OTHER( false );
+
+		private final boolean requiresIV;
+
+		Mode(boolean requiresIV) {
+			this.requiresIV = requiresIV;
+		}
+
+		public boolean requiresIV() {
+			return requiresIV;
+		}
+
+		/**
+		 * @param cipher Cipher instance.
+		 * @return Length of initialization vector used by given mode.
+		 */
+		public int ivLength(Cipher cipher) {
+			switch ( this ) {
+				case CBC:
+					return cipher.getBlockSize();
+				case CCM:
+				case GCM:
+				case OCB:
+					return 12;
+				default:
+					return requiresIV ? 16 : 0;
+			}
+		}
+
+		public static Mode of(String name) {
+			if ( name != null ) {
+				for ( Mode mode : values() ) {
+					if ( mode.name().equalsIgnoreCase( name ) ) {
+						return mode;
+					}
+				}
+			}
+			return OTHER;
+		}
+	}
+
+	private static final int GCM_TAG_LENGTH = 128;
+
+	private final String transformation;
+	private final String algorithm;
+	private final Mode mode;
+	private final String padding;
+	private final Key key;
+	private final int ivLength;
+	private final CipherPool pool;
+
+	private CipherPlan(String transformation, String algorithm, Mode mode, String padding, Key key,
+					   int ivLength, CipherPool pool) {
+		this.transformation = transformation;
+		this.algorithm = algorithm;
+		this.mode = mode;
+		this.padding = padding;
+		this.key = key;
+		this.ivLength = ivLength;
+		this.pool = pool;
+	}
+
+	/**
+	 * Compile encryption plan.
+	 *
+	 * @param transformation Cryptography transformation, e.g. {@code AES/CBC/PKCS5Padding}.
+	 * @param key Secret, public or private key. May be {@code null} if key changes with every record.
+	 * @param provider Security provider.
+	 * @return Encryption plan.
+	 * @throws GeneralSecurityException Indicates unsupported transformation.
+	 */
+	public static CipherPlan compile(String transformation, Key key, Provider provider) throws GeneralSecurityException {
+		final String[] parts = transformation.split( "/" );
+		final Mode mode = parts.length > 1 ? Mode.of( parts[1] ) : Mode.OTHER;
+		final CipherPool pool = new CipherPool( transformation, provider );
+		return new CipherPlan(
+				transformation, parts[0], mode, parts.length > 2 ? parts[2] : null, key,
+				mode.ivLength( pool.get() ), pool
+		);
+	}
+
+	/**
+	 * @return Cipher instance confined to the calling thread. Needs to be initialized before usage.
+	 * @throws GeneralSecurityException Indicates failure.
+	 */
+	public Cipher cipher() throws GeneralSecurityException {
+		return pool.get();
+	}
+
+	/**
+	 * @param iv Initialization vector.
+	 * @return Algorithm parameters for given initialization vector. GCM mode uses 128-bit authentication tag,
+	 *         which is the default of Bouncy Castle and required explicitly by other providers (e.g. SunJCE).
+	 */
+	public AlgorithmParameterSpec parameterSpec(byte[] iv) {
+		return mode == Mode.GCM ? new GCMParameterSpec( GCM_TAG_LENGTH, iv ) : new IvParameterSpec( iv );
+	}
+
+	public String getTransformation() {
+		return transformation;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public String getPadding() {
+		return padding;
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	public boolean requiresIV() {
+		return mode.requiresIV();
+	}
+
+	public int getIvLength() {
+		return ivLength;
+	}
+}
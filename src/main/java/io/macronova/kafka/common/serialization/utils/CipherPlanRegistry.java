@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+/**
+ * Encryption plans which deserializer accepts in records carrying {@link WireFormat} header, indexed by algorithm
+ * identifier. Header is not authenticated, hence only configured transformation and explicitly allowed ones
+ * are accepted, e.g. both {@code AES/CBC/PKCS5Padding} and {@code AES/GCM/NoPadding} while topic migrates from one
+ * to another. Plans are compiled upfront, so that record processing never resolves security providers.
+ */
+public final class CipherPlanRegistry {
+	private final CipherPlan[] plans = new CipherPlan[ 256 ];
+
+	/**
+	 * @param configured Plan of configured transformation.
+	 * @param allowed Additional transformations accepted in records.
+	 * @param provider Name of security provider used to compile additional plans.
+	 * @throws GeneralSecurityException Indicates unsupported transformation.
+	 * @throws IllegalArgumentException Indicates transformation not supported by wire format, or using different
+	 *         algorithm than configured one.
+	 */
+	public CipherPlanRegistry(CipherPlan configured, List<String> allowed, String provider) throws GeneralSecurityException {
+		final int configuredId = WireFormat.cipherId( configured.getTransformation() );
+		if ( configuredId != 0 ) {
+			plans[ configuredId ] = configured;
+		}
+		for ( String transformation : allowed ) {
+			final int id = WireFormat.cipherId( transformation );
+			if ( id == 0 ) {
+				throw new IllegalArgumentException(
+						String.format( "Transformation '%s' is not supported by wire format", transformation )
+				);
+			}
+			if ( ! configured.getAlgorithm().equalsIgnoreCase( EncryptionHelper.extractAlgorithm( transformation ) ) ) {
+				throw new IllegalArgumentException(
+						String.format( "Transformation '%s' does not use algorithm %s", transformation, configured.getAlgorithm() )
+				);
+			}
+			if ( plans[ id ] == null ) {
+				plans[ id ] = EncryptionHelper.cipherPlan(
+						transformation, configured.getKey(), SecurityProviders.forCipher( provider, transformation )
+				);
+			}
+		}
+	}
+
+	/**
+	 * @param id Algorithm identifier read from wire format header.
+	 * @return Encryption plan, {@code null} if transformation is not allowed.
+	 */
+	public CipherPlan get(int id) {
+		return id >= 0 && id < plans.length ? plans[ id ] : null;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import javax.crypto.Cipher;
+
+/**
+ * Thread-confined pool of {@link Cipher} instances sharing the same transformation. Every thread lazily obtains
+ * its own cipher on first use and keeps reusing it for subsequent records, so that provider lookup is paid once
+ * per thread instead of once per record. Cipher returned by {@link #get()} must be re-initialized by the caller
+ * before every usage and should never be handed over to another thread.
+ * <p/>
+ * Single pool instance can be safely shared by multiple threads, e.g. application threads concurrently calling
+ * {@code KafkaProducer#send()} on one producer (and hence one serializer).
+ */
+public class CipherPool {
+	private final String transformation;
+	private final Provider provider;
+	private final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+
+	public CipherPool(String transformation, Provider provider) {
+		this.transformation = transformation;
+		this.provider = provider;
+	}
+
+	/**
+	 * @return Cipher instance confined to the calling thread.
+	 * @throws GeneralSecurityException Indicates unsupported transformation.
+	 */
+	public Cipher get() throws GeneralSecurityException {
+		Cipher cipher = ciphers.get();
+		if ( cipher == null ) {
+			cipher = Cipher.getInstance( transformation, provider );
+			ciphers.set( cipher );
+		}
+		return cipher;
+	}
+
+	public String getTransformation() {
+		return transformation;
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.io.IOException;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Block compression algorithm identified by single byte written in front of compressed data. Implementations
+ * are thread-safe and keep native compression contexts per thread, so that records do not allocate them.
+ * Every codec resides in nested class and loads its library only when used, hence applications need
+ * to provide only libraries of codecs they configure: lz4-java and snappy-java ship with Kafka clients,
+ * zstd-jni has to be added explicitly.
+ */
+public abstract class CompressionCodec {
+	public static final byte NONE = 0;
+	public static final byte LZ4 = 1;
+	public static final byte SNAPPY = 2;
+	public static final byte ZSTD = 3;
+	public static final byte ZSTD_DICTIONARY = 4;
+
+	/**
+	 * @param name Codec name: {@code lz4}, {@code snappy} or {@code zstd}.
+	 * @param level Compression level, applies only to Zstandard.
+	 * @return Codec instance.
+	 */
+	public static CompressionCodec create(String name, int level) {
+		switch ( name.toLowerCase() ) {
+			case "lz4":
+				return new Lz4Codec();
+			case "snappy":
+				return new SnappyCodec();
+			case "zstd":
+				return new ZstdCodec( level );
+			default:
+				throw new IllegalArgumentException( String.format( "Unknown compression codec '%s'", name ) );
+		}
+	}
+
+	/**
+	 * @param dictionary Pre-trained Zstandard dictionary declaring its identifier.
+	 * @param level Compression level.
+	 * @return Zstandard codec using given dictionary.
+	 */
+	public static CompressionCodec create(byte[] dictionary, int level) {
+		return new ZstdDictionaryCodec( dictionary, level );
+	}
+
+	/**
+	 * @param id Codec identifier.
+	 * @return Codec instance suitable for decompression.
+	 */
+	public static CompressionCodec create(byte id) {
+		switch ( id ) {
+			case LZ4:
+				return new Lz4Codec();
+			case SNAPPY:
+				return new SnappyCodec();
+			case ZSTD:
+				return new ZstdCodec( ZstdCodec.DEFAULT_LEVEL );
+			default:
+				throw new IllegalArgumentException( String.format( "Unknown compression codec identifier %d", id ) );
+		}
+	}
+
+	/**
+	 * @return Identifier written in front of compressed data.
+	 */
+	public abstract byte getId();
+
+	/**
+	 * @return Identifier of dictionary written after codec identifier, or 0 if codec does not use dictionary.
+	 */
+	public int getDictionaryId() {
+		return 0;
+	}
+
+	/**
+	 * @param length Length of uncompressed data.
+	 * @return Maximum length of compressed data.
+	 */
+	public abstract int maxCompressedLength(int length);
+
+	/**
+	 * @return Length of compressed data written to the destination array.
+	 * @throws Exception Indicates failure.
+	 */
+	public abstract int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws Exception;
+
+	/**
+	 * Decompress data of known original length.
+	 *
+	 * @throws Exception Indicates failure, including corrupted data or length mismatch.
+	 */
+	public abstract void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws Exception;
+
+	private static void checkLength(int expected, int actual) throws IOException {
+		if ( expected != actual ) {
+			throw new IOException( String.format( "Decompressed %d bytes, expected %d", actual, expected ) );
+		}
+	}
+
+	private static final class Lz4Codec extends CompressionCodec {
+		private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+		private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+		@Override
+		public byte getId() {
+			return LZ4;
+		}
+
+		@Override
+		public int maxCompressedLength(int length) {
+			return COMPRESSOR.maxCompressedLength( length );
+		}
+
+		@Override
+		public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+			return COMPRESSOR.compress( src, srcOffset, srcLength, dst, dstOffset, dstLength );
+		}
+
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+			checkLength( dstLength, DECOMPRESSOR.decompress( src, srcOffset, srcLength, dst, dstOffset, dstLength ) );
+		}
+	}
+
+	private static final class SnappyCodec extends CompressionCodec {
+		@Override
+		public byte getId() {
+			return SNAPPY;
+		}
+
+		@Override
+		public int maxCompressedLength(int length) {
+			return Snappy.maxCompressedLength( length );
+		}
+
+		@Override
+		public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+			return Snappy.compress( src, srcOffset, srcLength, dst, dstOffset );
+		}
+
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+			checkLength( dstLength, Snappy.uncompressedLength( src, srcOffset, srcLength ) );
+			Snappy.uncompress( src, srcOffset, srcLength, dst, dstOffset );
+		}
+	}
+
+	private static final class ZstdCodec extends CompressionCodec {
+		private static final int DEFAULT_LEVEL = 3;
+
+		private final ThreadLocal<ZstdCompressCtx> compressors;
+		private final ThreadLocal<ZstdDecompressCtx> decompressors = new ThreadLocal<ZstdDecompressCtx>() {
+			@Override
+			protected ZstdDecompressCtx initialValue() {
+				return new ZstdDecompressCtx();
+			}
+		};
+
+		private ZstdCodec(final int level) {
+			compressors = new ThreadLocal<ZstdCompressCtx>() {
+				@Override
+				protected ZstdCompressCtx initialValue() {
+					return new ZstdCompressCtx().setLevel( level );
+				}
+			};
+		}
+
+		@Override
+		public byte getId() {
+			return ZSTD;
+		}
+
+		@Override
+		public int maxCompressedLength(int length) {
+			return (int) Zstd.compressBound( length );
+		}
+
+		@Override
+		public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+			return compressors.get().compressByteArray( dst, dstOffset, dstLength, src, srcOffset, srcLength );
+		}
+
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+			checkLength( dstLength, decompressors.get().decompressByteArray( dst, dstOffset, dstLength, src, srcOffset, srcLength ) );
+		}
+	}
+
+	private static final class ZstdDictionaryCodec extends CompressionCodec {
+		private final int dictionaryId;
+		private final ZstdDictCompress compressDictionary;
+		private final ZstdDictDecompress decompressDictionary;
+		private final ThreadLocal<ZstdCompressCtx> compressors = new ThreadLocal<ZstdCompressCtx>() {
+			@Override
+			protected ZstdCompressCtx initialValue() {
+				// Dictionary and content size are already present in our header.
+				return new ZstdCompressCtx().loadDict( compressDictionary ).setDictID( false ).setContentSize( false );
+			}
+		};
+		private final ThreadLocal<ZstdDecompressCtx> decompressors = new ThreadLocal<ZstdDecompressCtx>() {
+			@Override
+			protected ZstdDecompressCtx initialValue() {
+				return new ZstdDecompressCtx().loadDict( decompressDictionary );
+			}
+		};
+
+		private ZstdDictionaryCodec(byte[] dictionary, int level) {
+			dictionaryId = (int) Zstd.getDictIdFromDict( dictionary );
+			if ( dictionaryId == 0 ) {
+				throw new IllegalArgumentException( "Dictionary does not declare its identifier" );
+			}
+			compressDictionary = new ZstdDictCompress( dictionary, level );
+			decompressDictionary = new ZstdDictDecompress( dictionary );
+		}
+
+		@Override
+		public byte getId() {
+			return ZSTD_DICTIONARY;
+		}
+
+		@Override
+		public int getDictionaryId() {
+			return dictionaryId;
+		}
+
+		@Override
+		public int maxCompressedLength(int length) {
+			return (int) Zstd.compressBound( length );
+		}
+
+		@Override
+		public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+			return compressors.get().compressByteArray( dst, dstOffset, dstLength, src, srcOffset, srcLength );
+		}
+
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+			checkLength( dstLength, decompressors.get().decompressByteArray( dst, dstOffset, dstLength, src, srcOffset, srcLength ) );
+		}
+	}
+}
@@ -18,29 +18,37 @@ package io.macronova.kafka.common.serialization.utils;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.KeyFactory;
 import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.Signature;
+import java.security.SignatureException;
 import java.security.interfaces.DSAPrivateKey;
 import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.ECKey;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.ECParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.kafka.common.errors.SerializationException;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 public abstract class EncryptionHelper {
-	private static final BouncyCastleProvider provider = new BouncyCastleProvider();
-	private static final SecureRandom random = new SecureRandom();
+	private static final Provider provider = SecurityProviders.bouncyCastle();
+	private static final String ED25519_OID = "1.3.101.112";
+	private static final String ED448_OID = "1.3.101.113";
 
 	/**
 	 * Initialize cipher. Depending on mode, function:
@@ -125,10 +133,238 @@ public abstract class EncryptionHelper {
 		return cipher;
 	}
 
+	/**
+	 * Encrypt data with single {@link Cipher#doFinal(ByteBuffer, ByteBuffer)} invocation. Output array
+	 * is allocated once with size computed by {@link Cipher#getOutputSize(int)}, and contains given prefix,
+	 * followed by random initialization vector (when required by transformation) and encrypted data.
+	 *
+	 * @param plan Encryption plan.
+	 * @param key Secret or public key.
+	 * @param prefix Optional bytes to prepend to output array. May be {@code null}.
+	 * @param data Data to encrypt. Remaining bytes are consumed, position of given buffer is not modified.
+	 * @return Prefix, initialization vector and encrypted data.
+	 * @throws Exception Indicates failure.
+	 */
+	public static byte[] encrypt(CipherPlan plan, Key key, byte[] prefix, ByteBuffer data) throws Exception {
+		final Cipher cipher = plan.cipher();
+		byte[] iv = null;
+		if ( plan.requiresIV() ) {
+			iv = new byte[ plan.getIvLength() ];
+			RandomSource.current().nextBytes( iv );
+			cipher.init( Cipher.ENCRYPT_MODE, key, plan.parameterSpec( iv ) );
+		}
+		else {
+			cipher.init( Cipher.ENCRYPT_MODE, key );
+		}
+		final int prefixLength = prefix != null ? prefix.length : 0;
+		final int headerLength = prefixLength + ( iv != null ? iv.length : 0 );
+		final byte[] output = new byte[ headerLength + cipher.getOutputSize( data.remaining() ) ];
+		if ( prefix != null ) {
+			System.arraycopy( prefix, 0, output, 0, prefixLength );
+		}
+		if ( iv != null ) {
+			System.arraycopy( iv, 0, output, prefixLength, iv.length );
+		}
+		final int length = headerLength + cipher.doFinal(
+				data.duplicate(), ByteBuffer.wrap( output, headerLength, output.length - headerLength )
+		);
+		return length == output.length ? output : Arrays.copyOf( output, length );
+	}
+
+	/**
+	 * Decrypt data with single {@link Cipher#doFinal(ByteBuffer, ByteBuffer)} invocation. If transformation
+	 * requires initialization vector, it is read from the beginning of encrypted content.
+	 *
+	 * @param plan Encryption plan.
+	 * @param key Secret or private key.
+	 * @param data Initialization vector (optional) and encrypted content. Remaining bytes are consumed,
+	 *             position of given buffer is not modified.
+	 * @return Buffer wrapping decrypted data.
+	 * @throws Exception Indicates failure.
+	 */
+	public static ByteBuffer decrypt(CipherPlan plan, Key key, ByteBuffer data) throws Exception {
+		final Cipher cipher = plan.cipher();
+		final ByteBuffer input = data.duplicate();
+		if ( plan.requiresIV() ) {
+			cipher.init( Cipher.DECRYPT_MODE, key, plan.parameterSpec( read( input, plan.getIvLength() ) ) );
+		}
+		else {
+			cipher.init( Cipher.DECRYPT_MODE, key );
+		}
+		// Output size of padded transformations is only an upper bound, hence returned buffer might be
+		// shorter than its backing array.
+		final byte[] output = new byte[ cipher.getOutputSize( input.remaining() ) ];
+		final int length = cipher.doFinal( input, ByteBuffer.wrap( output ) );
+		return ByteBuffer.wrap( output, 0, length );
+	}
+
+	/**
+	 * Encrypt data with given initialization vector, which is not included in the output. Used when
+	 * initialization vector is transported separately, e.g. in Kafka record header.
+	 *
+	 * @param plan Encryption plan.
+	 * @param key Secret or public key.
+	 * @param iv Initialization vector, {@code null} if not required by transformation.
+	 * @param data Data to encrypt. Remaining bytes are consumed, position of given buffer is not modified.
+	 * @return Encrypted data.
+	 * @throws Exception Indicates failure.
+	 */
+	public static byte[] encryptDetached(CipherPlan plan, Key key, byte[] iv, ByteBuffer data) throws Exception {
+		final Cipher cipher = plan.cipher();
+		initialize( cipher, Cipher.ENCRYPT_MODE, plan, key, iv );
+		final byte[] output = new byte[ cipher.getOutputSize( data.remaining() ) ];
+		final int length = cipher.doFinal( data.duplicate(), ByteBuffer.wrap( output ) );
+		return length == output.length ? output : Arrays.copyOf( output, length );
+	}
+
+	/**
+	 * Decrypt data with given initialization vector, counterpart of
+	 * {@link #encryptDetached(CipherPlan, Key, byte[], ByteBuffer)}.
+	 *
+	 * @param plan Encryption plan.
+	 * @param key Secret or private key.
+	 * @param iv Initialization vector, {@code null} if not required by transformation.
+	 * @param data Encrypted content. Remaining bytes are consumed, position of given buffer is not modified.
+	 * @return Buffer wrapping decrypted data.
+	 * @throws Exception Indicates failure.
+	 */
+	public static ByteBuffer decryptDetached(CipherPlan plan, Key key, byte[] iv, ByteBuffer data) throws Exception {
+		final Cipher cipher = plan.cipher();
+		initialize( cipher, Cipher.DECRYPT_MODE, plan, key, iv );
+		final byte[] output = new byte[ cipher.getOutputSize( data.remaining() ) ];
+		final int length = cipher.doFinal( data.duplicate(), ByteBuffer.wrap( output ) );
+		return ByteBuffer.wrap( output, 0, length );
+	}
+
+	/**
+	 * @param plan Encryption plan.
+	 * @return Random initialization vector, {@code null} if not required by transformation.
+	 */
+	public static byte[] randomIV(CipherPlan plan) {
+		if ( ! plan.requiresIV() ) {
+			return null;
+		}
+		final byte[] iv = new byte[ plan.getIvLength() ];
+		RandomSource.current().nextBytes( iv );
+		return iv;
+	}
+
+	private static void initialize(Cipher cipher, int mode, CipherPlan plan, Key key, byte[] iv) throws Exception {
+		if ( plan.requiresIV() ) {
+			if ( iv == null || iv.length != plan.getIvLength() ) {
+				throw new IllegalArgumentException( "Missing or invalid initialization vector" );
+			}
+			cipher.init( mode, key, plan.parameterSpec( iv ) );
+		}
+		else {
+			cipher.init( mode, key );
+		}
+	}
+
+	/**
+	 * Feed remaining content of given buffer to the signature with single update. Heap buffers are passed
+	 * as backing array slice without copying.
+	 *
+	 * @param signature Initialized signature.
+	 * @param data Data to sign or verify. Position of the buffer is not modified.
+	 * @throws SignatureException Indicates failure.
+	 */
+	public static void update(Signature signature, ByteBuffer data) throws SignatureException {
+		if ( data.hasArray() ) {
+			signature.update( data.array(), data.arrayOffset() + data.position(), data.remaining() );
+		}
+		else {
+			signature.update( data.duplicate() );
+		}
+	}
+
+	/**
+	 * Compare two byte ranges in time independent of their content, so that comparison of authentication tags
+	 * does not leak position of the first difference.
+	 *
+	 * @return {@code true} if ranges are equal.
+	 */
+	public static boolean constantTimeEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+		int difference = 0;
+		for ( int i = 0; i < length; ++i ) {
+			difference |= a[ aOffset + i ] ^ b[ bOffset + i ];
+		}
+		return difference == 0;
+	}
+
+	/**
+	 * Read given number of bytes from the buffer.
+	 *
+	 * @param buffer Input buffer. Position is advanced by the number of bytes read.
+	 * @param length Number of bytes to read.
+	 * @return Bytes read.
+	 */
+	public static byte[] read(ByteBuffer buffer, int length) {
+		if ( buffer.remaining() < length ) {
+			throw new SerializationException( "Unexpected end of encrypted content." );
+		}
+		final byte[] bytes = new byte[ length ];
+		buffer.get( bytes );
+		return bytes;
+	}
+
+	/**
+	 * @param transformation Symmetric encryption algorithm.
+	 * @param secret Secret key.
+	 * @return Key specification usable with given transformation.
+	 */
+	public static SecretKeySpec secretKey(String transformation, byte[] secret) {
+		return new SecretKeySpec( secret, extractAlgorithm( transformation ) );
+	}
+
+	/**
+	 * @param transformation Encryption algorithm.
+	 * @param key Secret, public or private key. May be {@code null} if key changes with every record.
+	 * @return Compiled encryption plan.
+	 * @throws GeneralSecurityException Indicates unsupported transformation.
+	 */
+	public static CipherPlan cipherPlan(String transformation, Key key) throws GeneralSecurityException {
+		return cipherPlan( transformation, key, provider );
+	}
+
+	/**
+	 * @param transformation Encryption algorithm.
+	 * @param key Secret, public or private key. May be {@code null} if key changes with every record.
+	 * @param provider Security provider.
+	 * @return Compiled encryption plan.
+	 * @throws GeneralSecurityException Indicates unsupported transformation.
+	 */
+	public static CipherPlan cipherPlan(String transformation, Key key, Provider provider) throws GeneralSecurityException {
+		return CipherPlan.compile( transformation, key, provider );
+	}
+
+	/**
+	 * @param key Elliptic curve public key (encryption) or private key (decryption).
+	 * @return Compiled key agreement plan.
+	 * @throws GeneralSecurityException Indicates unsupported key.
+	 */
+	public static KeyAgreementPlan keyAgreementPlan(Key key) throws GeneralSecurityException {
+		return keyAgreementPlan( key, provider );
+	}
+
+	/**
+	 * @param key Elliptic curve public key (encryption) or private key (decryption).
+	 * @param provider Security provider.
+	 * @return Compiled key agreement plan.
+	 * @throws GeneralSecurityException Indicates unsupported key.
+	 */
+	public static KeyAgreementPlan keyAgreementPlan(Key key, Provider provider) throws GeneralSecurityException {
+		return KeyAgreementPlan.compile( key, provider );
+	}
+
 	public static Signature initializeSignature(String algorithm, Key key, boolean sign) throws Exception {
+		return initializeSignature( algorithm, key, sign, provider );
+	}
+
+	public static Signature initializeSignature(String algorithm, Key key, boolean sign, Provider provider) throws Exception {
 		final Signature signature = Signature.getInstance( algorithm, provider );
 		if ( sign ) {
-			signature.initSign( (PrivateKey) key, random );
+			signature.initSign( (PrivateKey) key, RandomSource.current() );
 		}
 		else {
 			signature.initVerify( (PublicKey) key );
@@ -139,7 +375,14 @@ public abstract class EncryptionHelper {
 	public static KeyStore loadKeyStore(String keystorePath, String type, char[] password) throws Exception {
 		InputStream keyStoreStream = null;
 		try {
-			final KeyStore keyStore = KeyStore.getInstance( type );
+			KeyStore keyStore;
+			try {
+				keyStore = KeyStore.getInstance( type );
+			}
+			catch ( KeyStoreException e ) {
+				// Types implemented by Bouncy Castle (e.g. BKS, BCPKCS12, BCFKS) can hold keys unknown to JVM, like Ed25519.
+				keyStore = KeyStore.getInstance( type, provider );
+			}
 			keyStoreStream = new FileInputStream( keystorePath );
 			keyStore.load( keyStoreStream, password );
 			return keyStore;
@@ -149,6 +392,58 @@ public abstract class EncryptionHelper {
 		}
 	}
 
+	/**
+	 * JVM represents public keys of algorithms it does not support (e.g. Ed25519 on Java 8) as generic X.509 keys,
+	 * which Bouncy Castle does not accept. Such keys are decoded again with Bouncy Castle.
+	 *
+	 * @param key Public key, e.g. retrieved from certificate.
+	 * @return Public key usable with Bouncy Castle.
+	 * @throws GeneralSecurityException Indicates invalid key.
+	 */
+	public static PublicKey translatePublicKey(PublicKey key) throws GeneralSecurityException {
+		if ( ED25519_OID.equals( key.getAlgorithm() ) || ED448_OID.equals( key.getAlgorithm() ) ) {
+			return KeyFactory.getInstance( "EdDSA", provider ).generatePublic( new X509EncodedKeySpec( key.getEncoded() ) );
+		}
+		return key;
+	}
+
+	/**
+	 * @param algorithm Signature algorithm.
+	 * @return {@code true} if algorithm encodes signatures in DER format, whose length varies between records.
+	 */
+	public static boolean isVariableLengthSignature(String algorithm) {
+		final String name = algorithm.toUpperCase();
+		return name.contains( "DSA" ) && ! name.contains( "EDDSA" ) && ! name.contains( "PLAIN-ECDSA" )
+				&& ! name.contains( "CVC-ECDSA" ) && ! name.contains( "P1363" );
+	}
+
+	/**
+	 * @param key Public or private key.
+	 * @return Length of fixed-length signatures created with given key in bytes, {@code -1} if unknown.
+	 */
+	public static int getSignatureLength(final Key key) {
+		final String algorithm = key.getAlgorithm();
+		if ( "Ed25519".equalsIgnoreCase( algorithm ) ) {
+			return 64;
+		}
+		if ( "Ed448".equalsIgnoreCase( algorithm ) ) {
+			return 114;
+		}
+		int length = -1;
+		if ( key instanceof PublicKey ) {
+			length = getKeyLength( (PublicKey) key );
+		}
+		else if ( key instanceof PrivateKey ) {
+			length = getKeyLength( (PrivateKey) key );
+		}
+		if ( length < 0 ) {
+			return -1;
+		}
+		length = ( length + 7 ) / 8;
+		// Plain ECDSA signature is concatenation of two integers modulo curve order.
+		return key instanceof ECKey ? 2 * length : length;
+	}
+
 	public static int getKeyLength(final PublicKey pk) {
 		int len = -1;
 		if ( pk instanceof RSAPublicKey ) {
@@ -218,7 +513,7 @@ public abstract class EncryptionHelper {
 
 	public static byte[] randomIV(String transformation, Cipher cipher) {
 		final byte randomIV[] = new byte[ ivLength( transformation, cipher ) ];
-		random.nextBytes( randomIV );
+		RandomSource.current().nextBytes( randomIV );
 		return randomIV;
 	}
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+/**
+ * Cheap estimate of Shannon entropy used to detect payloads which would not benefit from compression, e.g. data
+ * already compressed or encrypted. Large inputs are sampled in evenly spaced chunks, so that cost of the estimate
+ * is bounded regardless of input size.
+ */
+public class Entropy {
+	private static final int SAMPLE_SIZE = 4096;
+	private static final int CHUNK_SIZE = 256;
+
+	/**
+	 * Values of {@code c * log2(c)} for every possible byte count within the sample.
+	 */
+	private static final double[] COUNT_LOG = new double[ SAMPLE_SIZE + 1 ];
+
+	static {
+		for ( int c = 1; c <= SAMPLE_SIZE; ++c ) {
+			COUNT_LOG[c] = c * Math.log( c ) / Math.log( 2 );
+		}
+	}
+
+	private static final ThreadLocal<int[]> HISTOGRAMS = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[ 256 ];
+		}
+	};
+
+	private Entropy() {
+	}
+
+	/**
+	 * @return Estimated entropy in bits per byte, between 0 and 8.
+	 */
+	public static double estimate(byte[] data, int offset, int length) {
+		if ( length == 0 ) {
+			return 0.0;
+		}
+		final int[] histogram = HISTOGRAMS.get();
+		int sampled = 0;
+		if ( length <= SAMPLE_SIZE ) {
+			for ( int i = offset; i < offset + length; ++i ) {
+				++histogram[ data[i] & 0xFF ];
+			}
+			sampled = length;
+		}
+		else {
+			final int chunks = SAMPLE_SIZE / CHUNK_SIZE;
+			final long stride = ( length - CHUNK_SIZE ) / ( chunks - 1 );
+			for ( int chunk = 0; chunk < chunks; ++chunk ) {
+				final int start = offset + (int) ( chunk * stride );
+				for ( int i = start; i < start + CHUNK_SIZE; ++i ) {
+					++histogram[ data[i] & 0xFF ];
+				}
+			}
+			sampled = chunks * CHUNK_SIZE;
+		}
+		// H = log2(n) - sum(c * log2(c)) / n
+		double sum = 0.0;
+		for ( int i = 0; i < histogram.length; ++i ) {
+			sum += COUNT_LOG[ histogram[i] ];
+			histogram[i] = 0;
+		}
+		return ( COUNT_LOG[ sampled ] - sum ) / sampled;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Access to cryptographic metadata stored in Kafka record headers. Header names are composed of configurable
+ * prefix, which distinguishes metadata of record key and value, and fixed suffix identifying the metadata.
+ */
+public abstract class HeaderHelper {
+	public static final String IV = "iv";
+	public static final String KEY_ID = "key.id";
+	public static final String WRAPPED_KEY = "wrapped.key";
+	public static final String SIGNATURE = "signature";
+	public static final String TAG = "tag";
+
+	/**
+	 * @param configured Configured header prefix. May be {@code null}.
+	 * @param isKey Whether serializer handles record key.
+	 * @return Configured prefix, or {@code key.} and {@code value.} by default.
+	 */
+	public static String prefix(String configured, boolean isKey) {
+		if ( configured != null ) {
+			return configured;
+		}
+		return isKey ? "key." : "value.";
+	}
+
+	/**
+	 * @param headers Record headers. May be {@code null}.
+	 * @param name Header name.
+	 * @return Value of the last header with given name, {@code null} if absent.
+	 */
+	public static byte[] get(Headers headers, String name) {
+		if ( headers == null ) {
+			return null;
+		}
+		final Header header = headers.lastHeader( name );
+		return header != null ? header.value() : null;
+	}
+
+	/**
+	 * Replace any previous headers with given name, so that record serialized more than once (e.g. retried by
+	 * application) carries single value.
+	 *
+	 * @param headers Record headers.
+	 * @param name Header name.
+	 * @param value Header value.
+	 */
+	public static void set(Headers headers, String name, byte[] value) {
+		headers.remove( name );
+		headers.add( name, value );
+	}
+}
@@ -18,6 +18,7 @@ package io.macronova.kafka.common.serialization.utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public abstract class IOUtils {
 	public static void copy(final InputStream input, final OutputStream output) throws IOException {
@@ -28,6 +29,21 @@ public abstract class IOUtils {
 		}
 	}
 
+	/**
+	 * @param buffer Byte buffer.
+	 * @return Remaining content of the buffer. Backing array is returned without copying if it matches
+	 * the remaining content exactly.
+	 */
+	public static byte[] toByteArray(ByteBuffer buffer) {
+		if ( buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+				&& buffer.remaining() == buffer.array().length ) {
+			return buffer.array();
+		}
+		final byte[] bytes = new byte[ buffer.remaining() ];
+		buffer.duplicate().get( bytes );
+		return bytes;
+	}
+
 	public static void closeQuietly(InputStream stream) {
 		if ( stream != null ) {
 			try {
@@ -49,4 +65,15 @@ public abstract class IOUtils {
 			}
 		}
 	}
+
+	public static void closeQuietly(AutoCloseable closeable) {
+		if ( closeable != null ) {
+			try {
+				closeable.close();
+			}
+			catch (Exception e) {
+				// Ignore.
+			}
+		}
+	}
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Arrays;
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
+
+/**
+ * Immutable key agreement plan used by hybrid encryption as an alternative to asymmetric encryption of secret key.
+ * Sender generates ephemeral elliptic curve key pair and performs ECDH with recipient's public key. Shared secret
+ * is expanded with HKDF (SHA-256) into 256-bit symmetric key. Ephemeral public key, encoded as uncompressed curve
+ * point (65 bytes for P-256), replaces asymmetrically encrypted secret key in the output. Recipient repeats key
+ * agreement with its private key to derive the same symmetric key.
+ * <p/>
+ * Key agreement, key pair generator and key factory instances are confined to calling thread, so single plan
+ * can be safely shared by multiple threads.
+ */
+public final class KeyAgreementPlan {
+	private static final int SECRET_KEY_LENGTH = 32;
+	private static final byte UNCOMPRESSED_POINT = 0x04;
+
+	private final Key key;
+	private final ECParameterSpec params;
+	private final int fieldLength;
+	private final Provider provider;
+	private final ThreadLocal<KeyAgreement> agreements = new ThreadLocal<>();
+	private final ThreadLocal<KeyPairGenerator> generators = new ThreadLocal<>();
+	private final ThreadLocal<KeyFactory> factories = new ThreadLocal<>();
+
+	private KeyAgreementPlan(Key key, ECParameterSpec params, Provider provider) {
+		this.key = key;
+		this.params = params;
+		this.fieldLength = ( params.getCurve().getField().getFieldSize() + 7 ) / 8;
+		this.provider = provider;
+	}
+
+	/**
+	 * Compile key agreement plan.
+	 *
+	 * @param key Recipient's elliptic curve public key (encryption) or private key (decryption).
+	 * @param provider Security provider.
+	 * @return Key agreement plan.
+	 * @throws GeneralSecurityException Indicates unsupported key.
+	 */
+	public static KeyAgreementPlan compile(Key key, Provider provider) throws GeneralSecurityException {
+		if ( ! ( key instanceof ECKey ) ) {
+			throw new InvalidKeyException( "ECDH requires elliptic curve key pair" );
+		}
+		final KeyAgreementPlan plan = new KeyAgreementPlan( key, ( (ECKey) key ).getParams(), provider );
+		plan.agreement();
+		return plan;
+	}
+
+	/**
+	 * @return Length of encoded ephemeral public key.
+	 */
+	public int getEncapsulationLength() {
+		return 1 + 2 * fieldLength;
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	/**
+	 * Generate ephemeral key pair and derive new symmetric key.
+	 *
+	 * @param algorithm Symmetric algorithm of derived key, e.g. AES.
+	 * @param random Source of randomness.
+	 * @return Derived secret key and encoded ephemeral public key.
+	 * @throws GeneralSecurityException Indicates failure.
+	 */
+	public Encapsulation encapsulate(String algorithm, SecureRandom random) throws GeneralSecurityException {
+		KeyPairGenerator generator = generators.get();
+		if ( generator == null ) {
+			generator = KeyPairGenerator.getInstance( "EC", provider );
+			generator.initialize( params, random );
+			generators.set( generator );
+		}
+		final KeyPair ephemeral = generator.generateKeyPair();
+		final byte[] encoded = encode( ( (ECPublicKey) ephemeral.getPublic() ).getW() );
+		final KeyAgreement agreement = agreement();
+		agreement.init( ephemeral.getPrivate() );
+		agreement.doPhase( (PublicKey) key, true );
+		return new Encapsulation( deriveKey( agreement.generateSecret(), encoded, algorithm ), encoded );
+	}
+
+	/**
+	 * Derive symmetric key from encoded ephemeral public key.
+	 *
+	 * @param encapsulation Encoded ephemeral public key. Position of the buffer is not modified.
+	 * @param algorithm Symmetric algorithm of derived key, e.g. AES.
+	 * @return Derived secret key.
+	 * @throws GeneralSecurityException Indicates failure.
+	 */
+	public SecretKey decapsulate(ByteBuffer encapsulation, String algorithm) throws GeneralSecurityException {
+		final byte[] encoded = EncryptionHelper.read( encapsulation.duplicate(), getEncapsulationLength() );
+		if ( encoded[0] != UNCOMPRESSED_POINT ) {
+			throw new SerializationException( "Unsupported encoding of ephemeral public key." );
+		}
+		final ECPoint point = new ECPoint(
+				new BigInteger( 1, Arrays.copyOfRange( encoded, 1, 1 + fieldLength ) ),
+				new BigInteger( 1, Arrays.copyOfRange( encoded, 1 + fieldLength, encoded.length ) )
+		);
+		KeyFactory factory = factories.get();
+		if ( factory == null ) {
+			factory = KeyFactory.getInstance( "EC", provider );
+			factories.set( factory );
+		}
+		// Provider rejects points which do not belong to the curve.
+		final PublicKey ephemeral = factory.generatePublic( new ECPublicKeySpec( point, params ) );
+		final KeyAgreement agreement = agreement();
+		agreement.init( key );
+		agreement.doPhase( ephemeral, true );
+		return deriveKey( agreement.generateSecret(), encoded, algorithm );
+	}
+
+	private KeyAgreement agreement() throws GeneralSecurityException {
+		KeyAgreement agreement = agreements.get();
+		if ( agreement == null ) {
+			agreement = KeyAgreement.getInstance( "ECDH", provider );
+			agreements.set( agreement );
+		}
+		return agreement;
+	}
+
+	private byte[] encode(ECPoint point) {
+		final byte[] encoded = new byte[ getEncapsulationLength() ];
+		encoded[0] = UNCOMPRESSED_POINT;
+		copyUnsigned( point.getAffineX(), encoded, 1 );
+		copyUnsigned( point.getAffineY(), encoded, 1 + fieldLength );
+		return encoded;
+	}
+
+	private void copyUnsigned(BigInteger value, byte[] output, int offset) {
+		final byte[] bytes = value.toByteArray();
+		final int start = bytes.length > fieldLength ? bytes.length - fieldLength : 0;
+		final int length = bytes.length - start;
+		System.arraycopy( bytes, start, output, offset + fieldLength - length, length );
+	}
+
+	private static SecretKey deriveKey(byte[] sharedSecret, byte[] info, String algorithm) {
+		final HKDFBytesGenerator hkdf = new HKDFBytesGenerator( new SHA256Digest() );
+		hkdf.init( new HKDFParameters( sharedSecret, null, info ) );
+		final byte[] secretKey = new byte[ SECRET_KEY_LENGTH ];
+		hkdf.generateBytes( secretKey, 0, secretKey.length );
+		return new SecretKeySpec( secretKey, algorithm );
+	}
+
+	/**
+	 * Derived symmetric key together with encoded ephemeral public key.
+	 */
+	public static final class Encapsulation {
+		private final SecretKey secretKey;
+		private final byte[] encoded;
+
+		private Encapsulation(SecretKey secretKey, byte[] encoded) {
+			this.secretKey = secretKey;
+			this.encoded = encoded;
+		}
+
+		public SecretKey getSecretKey() {
+			return secretKey;
+		}
+
+		public byte[] getEncoded() {
+			return encoded;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Set of keys indexed by short identifier, which allows to rotate keys without trial decryption. Identifier
+ * of key pair is derived from first four bytes of SHA-256 digest of encoded public key. Identifier of secret key
+ * is derived from first four bytes of HMAC-SHA256 computed with the secret over fixed label, so that identifier
+ * written in clear does not allow to verify guessed key with plain digest. Thereby serializer and deserializer
+ * compute the same identifier independently. First added key is considered primary and shall be used for encryption.
+ * <p/>
+ * Key ring is populated during configuration and afterwards can be safely shared by multiple threads.
+ */
+public final class KeyRing {
+	public static final int KEY_ID_LENGTH = 4;
+	private static final String SECRET_KEY_ID_ALGORITHM = "HmacSHA256";
+	private static final byte[] SECRET_KEY_ID_LABEL = "kafka-serde-ext key id".getBytes( StandardCharsets.UTF_8 );
+
+	private final Map<Integer, Key> keys = new HashMap<>();
+	private Key primaryKey = null;
+	private byte[] primaryKeyId = null;
+
+	/**
+	 * @param key Key used for encryption or decryption.
+	 * @param identity Public representation of the key used to calculate its identifier, e.g. encoded public key.
+	 * @throws IllegalArgumentException Indicates that key ring already contains key with the same identifier.
+	 */
+	public void add(Key key, byte[] identity) {
+		put( key, keyId( identity ) );
+	}
+
+	/**
+	 * @param key Secret key used for encryption and decryption.
+	 * @param secret Raw secret used to calculate key identifier.
+	 * @throws IllegalArgumentException Indicates that key ring already contains key with the same identifier.
+	 */
+	public void addSecret(Key key, byte[] secret) {
+		put( key, secretKeyId( secret ) );
+	}
+
+	private void put(Key key, int keyId) {
+		if ( keys.containsKey( keyId ) ) {
+			throw new IllegalArgumentException( String.format( "Duplicate key identifier %08x", keyId ) );
+		}
+		keys.put( keyId, key );
+		if ( primaryKey == null ) {
+			primaryKey = key;
+			primaryKeyId = ByteBuffer.allocate( KEY_ID_LENGTH ).putInt( keyId ).array();
+		}
+	}
+
+	/**
+	 * @param keyId Key identifier.
+	 * @return Key or {@code null} if not present.
+	 */
+	public Key get(int keyId) {
+		return keys.get( keyId );
+	}
+
+	public Key getPrimaryKey() {
+		return primaryKey;
+	}
+
+	/**
+	 * @return Identifier of primary key in big-endian byte order, as written to the output. Shared array,
+	 * must not be modified.
+	 */
+	public byte[] getPrimaryKeyId() {
+		return primaryKeyId;
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * @param identity Public representation of the key, e.g. encoded public key.
+	 * @return Key identifier.
+	 */
+	public static int keyId(byte[] identity) {
+		try {
+			return ByteBuffer.wrap( MessageDigest.getInstance( "SHA-256" ).digest( identity ) ).getInt();
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 * @param secret Raw secret key.
+	 * @return Key identifier, which does not reveal digest of the secret.
+	 */
+	public static int secretKeyId(byte[] secret) {
+		try {
+			final Mac mac = Mac.getInstance( SECRET_KEY_ID_ALGORITHM );
+			mac.init( new SecretKeySpec( secret, SECRET_KEY_ID_ALGORITHM ) );
+			return ByteBuffer.wrap( mac.doFinal( SECRET_KEY_ID_LABEL ) ).getInt();
+		}
+		catch ( GeneralSecurityException e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM-wide registry of loaded key stores shared by all serializer instances. Kafka Streams creates new serializer
+ * for every task, so without sharing the same key store would be read, verified and decoded over and over again.
+ * Key stores are identified by canonical path, type, last modification time and size of the file, and digest
+ * of password. Modified file is therefore loaded again on next acquisition. Entry is removed from the registry
+ * once all its handles have been closed.
+ * <p/>
+ * Certificates and private keys retrieved through {@link Handle} are decoded once and cached together with
+ * the key store.
+ */
+public final class KeyStoreRegistry {
+	private static final Map<StoreId, Entry> entries = new HashMap<>();
+	private static final AtomicLong loadCount = new AtomicLong();
+	private static final AtomicLong loadTimeNanos = new AtomicLong();
+	private static final AtomicLong hitCount = new AtomicLong();
+
+	private KeyStoreRegistry() {
+	}
+
+	/**
+	 * Retrieve shared key store, loading it if not present in the registry. Every acquired handle has to be closed.
+	 *
+	 * @param path Key store path.
+	 * @param type Key store type.
+	 * @param password Key store password.
+	 * @return Handle to shared key store.
+	 * @throws Exception Indicates failure to load key store.
+	 */
+	public static Handle acquire(String path, String type, char[] password) throws Exception {
+		final File file = new File( path ).getCanonicalFile();
+		final BasicFileAttributes attributes = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+		final StoreId id = new StoreId(
+				file.getPath(), type, attributes.lastModifiedTime().to( TimeUnit.NANOSECONDS ), attributes.size(),
+				digest( password )
+		);
+		synchronized ( entries ) {
+			Entry entry = entries.get( id );
+			if ( entry != null ) {
+				hitCount.incrementAndGet();
+			}
+			else {
+				final long start = System.nanoTime();
+				final KeyStore keyStore = EncryptionHelper.loadKeyStore( file.getPath(), type, password );
+				loadTimeNanos.addAndGet( System.nanoTime() - start );
+				loadCount.incrementAndGet();
+				entry = new Entry( keyStore );
+				entries.put( id, entry );
+			}
+			++entry.references;
+			return new Handle( id, entry );
+		}
+	}
+
+	/**
+	 * @return Number of key stores read from disk.
+	 */
+	public static long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * @return Total time spent on reading key stores from disk in nanoseconds.
+	 */
+	public static long getLoadTimeNanos() {
+		return loadTimeNanos.get();
+	}
+
+	/**
+	 * @return Number of acquisitions served by already loaded key stores.
+	 */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return Number of key stores currently present in the registry.
+	 */
+	public static int size() {
+		synchronized ( entries ) {
+			return entries.size();
+		}
+	}
+
+	private static void release(StoreId id, Entry entry) {
+		synchronized ( entries ) {
+			if ( --entry.references == 0 && entries.get( id ) == entry ) {
+				entries.remove( id );
+			}
+		}
+	}
+
+	private static byte[] digest(char[] password) throws Exception {
+		final ByteBuffer encoded = StandardCharsets.UTF_8.encode( CharBuffer.wrap( password ) );
+		final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+		digest.update( encoded );
+		return digest.digest();
+	}
+
+	/**
+	 * Reference to shared key store. Closing the handle releases the reference.
+	 */
+	public static final class Handle implements AutoCloseable {
+		private final StoreId id;
+		private final Entry entry;
+		private boolean closed = false;
+
+		private Handle(StoreId id, Entry entry) {
+			this.id = id;
+			this.entry = entry;
+		}
+
+		/**
+		 * @param alias Key alias.
+		 * @return Certificate or {@code null} if not present.
+		 * @throws Exception Indicates failure.
+		 */
+		public Certificate getCertificate(String alias) throws Exception {
+			final String cacheKey = "certificate:" + alias;
+			Object certificate = entry.decoded.get( cacheKey );
+			if ( certificate == null ) {
+				certificate = entry.keyStore.getCertificate( alias );
+				if ( certificate == null ) {
+					return null;
+				}
+				entry.decoded.putIfAbsent( cacheKey, certificate );
+			}
+			return (Certificate) certificate;
+		}
+
+		/**
+		 * @param alias Key alias.
+		 * @param password Alias password.
+		 * @return Private key entry or {@code null} if not present.
+		 * @throws Exception Indicates failure, e.g. invalid password.
+		 */
+		public KeyStore.PrivateKeyEntry getPrivateKeyEntry(String alias, char[] password) throws Exception {
+			final String cacheKey = "private:" + alias + ":" + Arrays.toString( digest( password ) );
+			Object privateKeyEntry = entry.decoded.get( cacheKey );
+			if ( privateKeyEntry == null ) {
+				privateKeyEntry = entry.keyStore.getEntry( alias, new KeyStore.PasswordProtection( password ) );
+				if ( privateKeyEntry == null ) {
+					return null;
+				}
+				entry.decoded.putIfAbsent( cacheKey, privateKeyEntry );
+			}
+			return (KeyStore.PrivateKeyEntry) privateKeyEntry;
+		}
+
+		@Override
+		public synchronized void close() {
+			if ( ! closed ) {
+				closed = true;
+				release( id, entry );
+			}
+		}
+	}
+
+	private static final class Entry {
+		private final KeyStore keyStore;
+		private final ConcurrentMap<String, Object> decoded = new ConcurrentHashMap<>();
+		private int references = 0;
+
+		private Entry(KeyStore keyStore) {
+			this.keyStore = keyStore;
+		}
+	}
+
+	private static final class StoreId {
+		private final String path;
+		private final String type;
+		private final long lastModified;
+		private final long size;
+		private final byte[] passwordDigest;
+
+		private StoreId(String path, String type, long lastModified, long size, byte[] passwordDigest) {
+			this.path = path;
+			this.type = type;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.passwordDigest = passwordDigest;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this == o ) {
+				return true;
+			}
+			if ( o == null || getClass() != o.getClass() ) {
+				return false;
+			}
+			final StoreId that = (StoreId) o;
+			return lastModified == that.lastModified && size == that.size && path.equals( that.path ) && type.equals( that.type )
+					&& Arrays.equals( passwordDigest, that.passwordDigest );
+		}
+
+		@Override
+		public int hashCode() {
+			int result = path.hashCode();
+			result = 31 * result + type.hashCode();
+			result = 31 * result + (int) ( lastModified ^ ( lastModified >>> 32 ) );
+			result = 31 * result + (int) ( size ^ ( size >>> 32 ) );
+			result = 31 * result + Arrays.hashCode( passwordDigest );
+			return result;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls key store files for modifications, so that serializers can reload key material without restart.
+ * All watched files are polled by single daemon thread shared within JVM, which is stopped once the last
+ * watch gets closed. Listener is invoked on the polling thread. Failed reload, e.g. caused by partially written
+ * file, is retried with next poll, and serializers keep using previously loaded keys in the meantime.
+ */
+public final class KeyStoreWatcher {
+	private static final Logger log = LoggerFactory.getLogger( KeyStoreWatcher.class );
+
+	private static ScheduledExecutorService executor = null;
+	private static int watches = 0;
+
+	private KeyStoreWatcher() {
+	}
+
+	/**
+	 * Listener notified about modification of the key store.
+	 */
+	public interface Listener {
+		/**
+		 * @throws Exception Indicates failure to reload keys. Notification will be repeated with next poll.
+		 */
+		void onChange() throws Exception;
+	}
+
+	/**
+	 * Start watching given file.
+	 *
+	 * @param path File path.
+	 * @param intervalMs Polling interval in milliseconds.
+	 * @param listener Listener notified after every modification of the file.
+	 * @return Watch which has to be closed to stop polling.
+	 */
+	public static synchronized Watch watch(String path, long intervalMs, Listener listener) {
+		if ( executor == null ) {
+			executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					final Thread thread = new Thread( runnable, "kafka-serde-ext-key-store-watcher" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+		++watches;
+		final Poller poller = new Poller( Paths.get( path ), listener );
+		return new Watch( executor.scheduleWithFixedDelay( poller, intervalMs, intervalMs, TimeUnit.MILLISECONDS ) );
+	}
+
+	private static synchronized void release() {
+		if ( --watches == 0 ) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Handle of watched file. Closing the watch stops polling.
+	 */
+	public static final class Watch implements AutoCloseable {
+		private final ScheduledFuture<?> future;
+		private boolean closed = false;
+
+		private Watch(ScheduledFuture<?> future) {
+			this.future = future;
+		}
+
+		@Override
+		public synchronized void close() {
+			if ( ! closed ) {
+				closed = true;
+				future.cancel( false );
+				release();
+			}
+		}
+	}
+
+	private static final class Poller implements Runnable {
+		private final Path path;
+		private final Listener listener;
+		private FileState lastState;
+
+		private Poller(Path path, Listener listener) {
+			this.path = path;
+			this.listener = listener;
+			this.lastState = FileState.of( path );
+		}
+
+		@Override
+		public void run() {
+			final FileState state = FileState.of( path );
+			// Missing file may indicate that key store is being replaced.
+			if ( state != null && ! state.equals( lastState ) ) {
+				try {
+					listener.onChange();
+					lastState = state;
+				}
+				catch ( Exception e ) {
+					// Keep previous keys and retry with next poll.
+					log.warn( "Failed to reload key store {}, retrying with next poll.", path, e );
+				}
+			}
+		}
+	}
+
+	private static final class FileState {
+		private final long lastModified;
+		private final long size;
+
+		private FileState(long lastModified, long size) {
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+
+		private static FileState of(Path path) {
+			try {
+				final BasicFileAttributes attributes = Files.readAttributes( path, BasicFileAttributes.class );
+				return new FileState( attributes.lastModifiedTime().to( TimeUnit.NANOSECONDS ), attributes.size() );
+			}
+			catch ( IOException e ) {
+				return null;
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this == o ) {
+				return true;
+			}
+			if ( o == null || getClass() != o.getClass() ) {
+				return false;
+			}
+			final FileState that = (FileState) o;
+			return lastModified == that.lastModified && size == that.size;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (int) ( lastModified ^ ( lastModified >>> 32 ) ) + (int) ( size ^ ( size >>> 32 ) );
+		}
+	}
+}
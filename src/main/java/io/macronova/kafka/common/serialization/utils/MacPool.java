@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Thread-confined pool of initialized {@link Mac} instances sharing the same algorithm and key. Every thread lazily
+ * obtains its own instance. {@link Mac#doFinal()} resets the instance to its initialized state, so that it can be
+ * reused for next record without re-initialization. Caller should {@link Mac#reset()} the instance after failure.
+ */
+public class MacPool {
+	private final String algorithm;
+	private final SecretKey key;
+	private final Provider provider;
+	private final int macLength;
+	private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+
+	/**
+	 * @param algorithm MAC algorithm, e.g. {@code HmacSHA256}.
+	 * @param key Secret key.
+	 * @param provider Security provider.
+	 * @throws GeneralSecurityException Indicates unsupported algorithm or invalid key.
+	 */
+	public MacPool(String algorithm, SecretKey key, Provider provider) throws GeneralSecurityException {
+		this.algorithm = algorithm;
+		this.key = key;
+		this.provider = provider;
+		this.macLength = get().getMacLength();
+	}
+
+	/**
+	 * @return Initialized MAC confined to the calling thread.
+	 * @throws GeneralSecurityException Indicates failure.
+	 */
+	public Mac get() throws GeneralSecurityException {
+		Mac mac = macs.get();
+		if ( mac == null ) {
+			mac = Mac.getInstance( algorithm, provider );
+			mac.init( key );
+			macs.set( mac );
+		}
+		return mac;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return Length of full authentication tag in bytes.
+	 */
+	public int getMacLength() {
+		return macLength;
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Binary hash tree (SHA-256) over a batch of records. Leaf and inner node hashes are computed over distinct
+ * prefixes ({@code 0x00} and {@code 0x01}), so that inner node can never be presented as a leaf. Last node of
+ * a level with odd number of nodes is promoted to the next level unchanged. Inclusion proof of a leaf consists
+ * of sibling hashes from the leaf level up to the root, and its shape is fully determined by number of leaves
+ * and leaf index.
+ */
+public class MerkleTree {
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+	public static final int HASH_LENGTH = 32;
+
+	private static final byte LEAF_PREFIX = 0x00;
+	private static final byte NODE_PREFIX = 0x01;
+
+	private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance( DIGEST_ALGORITHM );
+			}
+			catch ( NoSuchAlgorithmException e ) {
+				throw new IllegalStateException( e );
+			}
+		}
+	};
+
+	/**
+	 * Hashes of every level, starting from the leaves and ending with single root.
+	 */
+	private final byte[][][] levels;
+
+	/**
+	 * @param leaves Hashes of leaves, see {@link #leafHash(ByteBuffer)}.
+	 */
+	public MerkleTree(List<byte[]> leaves) {
+		if ( leaves.isEmpty() ) {
+			throw new IllegalArgumentException( "Merkle tree requires at least one leaf." );
+		}
+		int depth = 1;
+		for ( int width = leaves.size(); width > 1; width = ( width + 1 ) / 2 ) {
+			++depth;
+		}
+		levels = new byte[ depth ][][];
+		levels[0] = leaves.toArray( new byte[ leaves.size() ][] );
+		for ( int level = 1; level < depth; ++level ) {
+			final byte[][] below = levels[ level - 1 ];
+			final byte[][] current = new byte[ ( below.length + 1 ) / 2 ][];
+			for ( int i = 0; i < current.length; ++i ) {
+				final int left = 2 * i;
+				current[i] = left + 1 < below.length ? nodeHash( below[ left ], below[ left + 1 ] ) : below[ left ];
+			}
+			levels[ level ] = current;
+		}
+	}
+
+	/**
+	 * @return Number of leaves.
+	 */
+	public int size() {
+		return levels[0].length;
+	}
+
+	public byte[] getRoot() {
+		return levels[ levels.length - 1 ][0];
+	}
+
+	/**
+	 * @param index Leaf index.
+	 * @return Concatenated sibling hashes on the path from given leaf to the root.
+	 */
+	public byte[] proof(int index) {
+		final byte[] proof = new byte[ proofLength( size(), index ) * HASH_LENGTH ];
+		int offset = 0;
+		for ( int level = 0; level < levels.length - 1; ++level ) {
+			final int sibling = index ^ 1;
+			if ( sibling < levels[ level ].length ) {
+				System.arraycopy( levels[ level ][ sibling ], 0, proof, offset, HASH_LENGTH );
+				offset += HASH_LENGTH;
+			}
+			index >>>= 1;
+		}
+		return proof;
+	}
+
+	/**
+	 * @param leaves Number of leaves.
+	 * @param index Leaf index.
+	 * @return Number of hashes in inclusion proof of given leaf.
+	 */
+	public static int proofLength(int leaves, int index) {
+		int length = 0;
+		for ( int width = leaves; width > 1; width = ( width + 1 ) / 2 ) {
+			if ( ( index ^ 1 ) < width ) {
+				++length;
+			}
+			index >>>= 1;
+		}
+		return length;
+	}
+
+	/**
+	 * Compute root of the tree based on leaf hash and its inclusion proof.
+	 *
+	 * @param leaf Leaf hash.
+	 * @param leaves Number of leaves.
+	 * @param index Leaf index.
+	 * @param proof Sibling hashes. Position of the buffer is advanced past the proof.
+	 * @return Root hash.
+	 */
+	public static byte[] root(byte[] leaf, int leaves, int index, ByteBuffer proof) {
+		if ( leaves < 1 || index < 0 || index >= leaves ) {
+			throw new SerializationException( String.format( "Invalid leaf index %d in tree of %d leaves.", index, leaves ) );
+		}
+		byte[] hash = leaf;
+		for ( int width = leaves; width > 1; width = ( width + 1 ) / 2 ) {
+			if ( ( index ^ 1 ) < width ) {
+				final byte[] sibling = EncryptionHelper.read( proof, HASH_LENGTH );
+				hash = ( index & 1 ) == 0 ? nodeHash( hash, sibling ) : nodeHash( sibling, hash );
+			}
+			index >>>= 1;
+		}
+		return hash;
+	}
+
+	/**
+	 * @param data Record content. Position of the buffer is not modified.
+	 * @return Leaf hash of given record.
+	 */
+	public static byte[] leafHash(ByteBuffer data) {
+		final MessageDigest digest = DIGESTS.get();
+		digest.update( LEAF_PREFIX );
+		digest.update( data.duplicate() );
+		return digest.digest();
+	}
+
+	private static byte[] nodeHash(byte[] left, byte[] right) {
+		final MessageDigest digest = DIGESTS.get();
+		digest.update( NODE_PREFIX );
+		digest.update( left );
+		digest.update( right );
+		return digest.digest();
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.prng.EntropySource;
+import org.bouncycastle.crypto.prng.EntropySourceProvider;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+
+/**
+ * Per-thread source of cryptographically strong random numbers used for initialization vectors, secret keys
+ * and signatures. Every thread lazily creates its own NIST SP 800-90A CTR DRBG (AES-256), so that concurrent
+ * serializers never contend on lock of single shared {@link SecureRandom}. Generators are seeded from
+ * non-blocking operating system source ({@code NativePRNGNonBlocking} when available), hence creation
+ * never waits for entropy pool, e.g. on freshly started virtual machines.
+ */
+public final class RandomSource {
+	private static final SecureRandom seedSource = seedSource();
+	private static final ThreadLocal<SecureRandom> generators = new ThreadLocal<SecureRandom>() {
+		@Override
+		protected SecureRandom initialValue() {
+			return create();
+		}
+	};
+
+	private RandomSource() {
+	}
+
+	/**
+	 * @return Random number generator confined to the calling thread. Should never be handed over to another thread.
+	 */
+	public static SecureRandom current() {
+		return generators.get();
+	}
+
+	/**
+	 * @return New DRBG instance seeded from non-blocking source. Not thread-safe.
+	 */
+	public static SecureRandom create() {
+		final EntropySourceProvider entropySourceProvider = new EntropySourceProvider() {
+			@Override
+			public EntropySource get(final int bitsRequired) {
+				return new EntropySource() {
+					@Override
+					public boolean isPredictionResistant() {
+						return false;
+					}
+
+					@Override
+					public byte[] getEntropy() {
+						final byte[] entropy = new byte[ ( bitsRequired + 7 ) / 8 ];
+						seedSource.nextBytes( entropy );
+						return entropy;
+					}
+
+					@Override
+					public int entropySize() {
+						return bitsRequired;
+					}
+				};
+			}
+		};
+		// Personalization string distinguishes generators created by different threads at the same time.
+		final byte[] personalization = ByteBuffer.allocate( 16 )
+				.putLong( Thread.currentThread().getId() ).putLong( System.nanoTime() ).array();
+		final byte[] nonce = new byte[ 16 ];
+		seedSource.nextBytes( nonce );
+		return new BufferedSecureRandom( new SP800SecureRandomBuilder( entropySourceProvider )
+				.setPersonalizationString( personalization )
+				.setSecurityStrength( 256 ).setEntropyBitsRequired( 256 )
+				.buildCTR( new AESEngine(), 256, nonce, false ) );
+	}
+
+	/**
+	 * Serves short requests, like initialization vectors, from block of pre-generated bytes, so that cost of DRBG
+	 * invocation is amortized across many records. Not thread-safe.
+	 */
+	private static final class BufferedSecureRandom extends SecureRandom {
+		private static final long serialVersionUID = 1L;
+		private static final int BUFFER_SIZE = 1024;
+
+		private final SecureRandom generator;
+		private final byte[] buffer = new byte[ BUFFER_SIZE ];
+		private int position = BUFFER_SIZE;
+
+		private BufferedSecureRandom(SecureRandom generator) {
+			super( null, null );
+			this.generator = generator;
+		}
+
+		@Override
+		public void nextBytes(byte[] bytes) {
+			if ( bytes.length > BUFFER_SIZE / 4 ) {
+				generator.nextBytes( bytes );
+				return;
+			}
+			if ( BUFFER_SIZE - position < bytes.length ) {
+				generator.nextBytes( buffer );
+				position = 0;
+			}
+			System.arraycopy( buffer, position, bytes, 0, bytes.length );
+			// Erase consumed bytes, so that they cannot be recovered from memory afterwards.
+			Arrays.fill( buffer, position, position + bytes.length, (byte) 0 );
+			position += bytes.length;
+		}
+
+		@Override
+		public void setSeed(byte[] seed) {
+			if ( generator != null ) {
+				generator.setSeed( seed );
+			}
+		}
+
+		@Override
+		public void setSeed(long seed) {
+			// Invoked by constructor of super class.
+			if ( generator != null ) {
+				generator.setSeed( seed );
+			}
+		}
+
+		@Override
+		public byte[] generateSeed(int numBytes) {
+			return generator.generateSeed( numBytes );
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return generator.getAlgorithm();
+		}
+	}
+
+	private static SecureRandom seedSource() {
+		try {
+			return SecureRandom.getInstance( "NativePRNGNonBlocking" );
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			// E.g. Windows, where default implementation does not block.
+			return new SecureRandom();
+		}
+	}
+}
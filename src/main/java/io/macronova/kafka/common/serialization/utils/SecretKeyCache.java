@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+
+/**
+ * Bounded cache of decrypted secret keys used by hybrid encryption. Entries are indexed by SHA-256 digest
+ * of asymmetrically encrypted key block, so that records sharing the same secret key require only one
+ * private key operation. Least recently used entries are evicted once cache reaches its maximum size,
+ * and every entry expires after configured time-to-live.
+ * <p/>
+ * Single cache instance can be safely shared by multiple threads.
+ */
+public class SecretKeyCache {
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private final long ttlMs;
+	private final Map<ByteBuffer, Entry> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance( DIGEST_ALGORITHM );
+			}
+			catch ( NoSuchAlgorithmException e ) {
+				throw new IllegalStateException( e );
+			}
+		}
+	};
+
+	/**
+	 * @param maxSize Maximum number of cached keys.
+	 * @param ttlMs Time-to-live of cached keys in milliseconds. Value of 0 disables expiration.
+	 */
+	public SecretKeyCache(final int maxSize, long ttlMs) {
+		this.ttlMs = ttlMs;
+		this.entries = new LinkedHashMap<ByteBuffer, Entry>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @param keyEncrypted Encrypted key block. Position of the buffer is not modified.
+	 * @return Cache index of given key block.
+	 */
+	public ByteBuffer digest(ByteBuffer keyEncrypted) {
+		final MessageDigest digest = digests.get();
+		digest.update( keyEncrypted.duplicate() );
+		return ByteBuffer.wrap( digest.digest() );
+	}
+
+	/**
+	 * @param digest Cache index obtained from {@link #digest(ByteBuffer)}.
+	 * @return Decrypted secret key or {@code null} if not present or expired.
+	 */
+	public SecretKey get(ByteBuffer digest) {
+		final Entry entry;
+		synchronized ( entries ) {
+			entry = entries.get( digest );
+			if ( entry != null && entry.expired() ) {
+				entries.remove( digest );
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+		if ( entry == null ) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.secretKey;
+	}
+
+	/**
+	 * @param digest Cache index obtained from {@link #digest(ByteBuffer)}.
+	 * @param secretKey Decrypted secret key.
+	 */
+	public void put(ByteBuffer digest, SecretKey secretKey) {
+		final Entry entry = new Entry( secretKey, ttlMs > 0L ? System.currentTimeMillis() + ttlMs : Long.MAX_VALUE );
+		synchronized ( entries ) {
+			entries.put( digest, entry );
+		}
+	}
+
+	public int size() {
+		synchronized ( entries ) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized ( entries ) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return Number of lookups which found valid secret key.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Number of lookups which required decryption of secret key.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private static final class Entry {
+		private final SecretKey secretKey;
+		private final long expiresAt;
+
+		private Entry(SecretKey secretKey, long expiresAt) {
+			this.secretKey = secretKey;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean expired() {
+			return expiresAt != Long.MAX_VALUE && System.currentTimeMillis() >= expiresAt;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves Java security provider configured for serializer. Besides provider names, supports {@value #AUTO}
+ * mode, which runs short benchmark of configured algorithm against every provider supporting it, and selects
+ * the fastest one. Benchmark uses freshly generated keys and is executed once per algorithm within JVM.
+ */
+public final class SecurityProviders {
+	public static final String AUTO = "auto";
+	public static final String BOUNCY_CASTLE = "BC";
+
+	private static final Logger log = LoggerFactory.getLogger( SecurityProviders.class );
+	private static final Provider bouncyCastle = new BouncyCastleProvider();
+	private static final long BENCHMARK_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+	private static final int BENCHMARK_DATA_SIZE = 1024;
+	private static final ConcurrentMap<String, Provider> selections = new ConcurrentHashMap<>();
+
+	private SecurityProviders() {
+	}
+
+	/**
+	 * Benchmarked operation bound to particular provider.
+	 */
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Prepares benchmarked operation for given provider.
+	 */
+	private interface Workload {
+		/**
+		 * @param provider Security provider.
+		 * @return Operation to measure.
+		 * @throws Exception Indicates that provider does not support the algorithm.
+		 */
+		Operation prepare(Provider provider) throws Exception;
+	}
+
+	/**
+	 * @return Bouncy Castle provider instance shared by all serializers.
+	 */
+	public static Provider bouncyCastle() {
+		return bouncyCastle;
+	}
+
+	/**
+	 * @param name Provider name. Bouncy Castle does not need to be registered in JVM.
+	 * @return Security provider.
+	 * @throws NoSuchProviderException Indicates unknown provider.
+	 */
+	public static Provider get(String name) throws NoSuchProviderException {
+		if ( BOUNCY_CASTLE.equals( name ) ) {
+			return bouncyCastle;
+		}
+		final Provider provider = Security.getProvider( name );
+		if ( provider == null ) {
+			throw new NoSuchProviderException( String.format( "Security provider '%s' is not registered", name ) );
+		}
+		return provider;
+	}
+
+	/**
+	 * @param name Provider name or {@value #AUTO}.
+	 * @param transformation Cryptography transformation.
+	 * @return Security provider used for given transformation.
+	 * @throws GeneralSecurityException Indicates unknown provider or unsupported transformation.
+	 */
+	public static Provider forCipher(String name, final String transformation) throws GeneralSecurityException {
+		if ( ! AUTO.equals( name ) ) {
+			return get( name );
+		}
+		final String algorithm = transformation.split( "/" )[0];
+		final Key encryptKey;
+		final Key decryptKey;
+		final int dataSize;
+		final KeyPair keyPair = generateKeyPair( algorithm );
+		if ( keyPair != null ) {
+			encryptKey = keyPair.getPublic();
+			decryptKey = keyPair.getPrivate();
+			dataSize = 16;
+		}
+		else {
+			encryptKey = KeyGenerator.getInstance( algorithm, bouncyCastle ).generateKey();
+			decryptKey = encryptKey;
+			dataSize = BENCHMARK_DATA_SIZE;
+		}
+		return select( "Cipher." + transformation, new Workload() {
+			@Override
+			public Operation prepare(Provider provider) throws Exception {
+				final CipherPlan plan = CipherPlan.compile( transformation, null, provider );
+				final ByteBuffer data = ByteBuffer.wrap( new byte[ dataSize ] );
+				return new Operation() {
+					@Override
+					public void run() throws Exception {
+						final byte[] encrypted = EncryptionHelper.encrypt( plan, encryptKey, null, data );
+						EncryptionHelper.decrypt( plan, decryptKey, ByteBuffer.wrap( encrypted ) );
+					}
+				};
+			}
+		} );
+	}
+
+	/**
+	 * @param name Provider name or {@value #AUTO}.
+	 * @param algorithm Digital signature algorithm.
+	 * @return Security provider used for given algorithm.
+	 * @throws GeneralSecurityException Indicates unknown provider or unsupported algorithm.
+	 */
+	public static Provider forSignature(String name, final String algorithm) throws GeneralSecurityException {
+		if ( ! AUTO.equals( name ) ) {
+			return get( name );
+		}
+		final KeyPair keyPair = generateKeyPair( signatureKeyAlgorithm( algorithm ) );
+		if ( keyPair == null ) {
+			log.info( "Could not benchmark signature algorithm {}, selected security provider {}.", algorithm, BOUNCY_CASTLE );
+			return bouncyCastle;
+		}
+		return select( "Signature." + algorithm, new Workload() {
+			@Override
+			public Operation prepare(Provider provider) throws Exception {
+				final Signature signer = Signature.getInstance( algorithm, provider );
+				final Signature verifier = Signature.getInstance( algorithm, provider );
+				final byte[] data = new byte[ BENCHMARK_DATA_SIZE ];
+				return new Operation() {
+					@Override
+					public void run() throws Exception {
+						signer.initSign( keyPair.getPrivate(), RandomSource.current() );
+						signer.update( data );
+						final byte[] signature = signer.sign();
+						verifier.initVerify( keyPair.getPublic() );
+						verifier.update( data );
+						verifier.verify( signature );
+					}
+				};
+			}
+		} );
+	}
+
+	/**
+	 * @param name Provider name or {@value #AUTO}.
+	 * @param algorithm Message authentication code algorithm.
+	 * @return Security provider used for given algorithm.
+	 * @throws GeneralSecurityException Indicates unknown provider or unsupported algorithm.
+	 */
+	public static Provider forMac(String name, final String algorithm) throws GeneralSecurityException {
+		if ( ! AUTO.equals( name ) ) {
+			return get( name );
+		}
+		final Key key = new SecretKeySpec( new byte[ 32 ], algorithm );
+		return select( "Mac." + algorithm, new Workload() {
+			@Override
+			public Operation prepare(Provider provider) throws Exception {
+				final Mac mac = Mac.getInstance( algorithm, provider );
+				mac.init( key );
+				final byte[] data = new byte[ BENCHMARK_DATA_SIZE ];
+				return new Operation() {
+					@Override
+					public void run() throws Exception {
+						mac.update( data );
+						mac.doFinal();
+					}
+				};
+			}
+		} );
+	}
+
+	/**
+	 * @param name Provider name or {@value #AUTO}.
+	 * @return Security provider used for elliptic curve key agreement. Automatic selection always returns
+	 *         Bouncy Castle.
+	 * @throws NoSuchProviderException Indicates unknown provider.
+	 */
+	public static Provider forKeyAgreement(String name) throws NoSuchProviderException {
+		return AUTO.equals( name ) ? bouncyCastle : get( name );
+	}
+
+	private static Provider select(String key, Workload workload) throws NoSuchAlgorithmException {
+		final Provider selected = selections.get( key );
+		if ( selected != null ) {
+			return selected;
+		}
+		Provider fastest = null;
+		double fastestThroughput = -1.0;
+		final Map<String, String> results = new LinkedHashMap<>();
+		for ( Provider provider : candidates() ) {
+			final double throughput = measure( provider, workload );
+			if ( throughput < 0.0 ) {
+				continue;
+			}
+			results.put( provider.getName(), String.format( "%.0f", throughput ) );
+			if ( throughput > fastestThroughput ) {
+				fastest = provider;
+				fastestThroughput = throughput;
+			}
+		}
+		if ( fastest == null ) {
+			throw new NoSuchAlgorithmException( String.format( "No security provider supports %s", key ) );
+		}
+		log.info( "Selected security provider {} for {}, measured throughput (ops/s): {}.", fastest.getName(), key, results );
+		final Provider previous = selections.putIfAbsent( key, fastest );
+		return previous != null ? previous : fastest;
+	}
+
+	/**
+	 * @return Throughput in operations per second, or negative value if provider does not support the workload.
+	 */
+	private static double measure(Provider provider, Workload workload) {
+		try {
+			final Operation operation = workload.prepare( provider );
+			// First half of time budget warms up the code, second half is measured.
+			run( operation, BENCHMARK_TIME_NANOS / 2 );
+			final long start = System.nanoTime();
+			final long count = run( operation, BENCHMARK_TIME_NANOS / 2 );
+			return count * (double) TimeUnit.SECONDS.toNanos( 1 ) / ( System.nanoTime() - start );
+		}
+		catch ( Exception e ) {
+			return -1.0;
+		}
+	}
+
+	private static long run(Operation operation, long timeNanos) throws Exception {
+		final long deadline = System.nanoTime() + timeNanos;
+		long count = 0;
+		do {
+			operation.run();
+			++count;
+		}
+		while ( System.nanoTime() < deadline );
+		return count;
+	}
+
+	private static List<Provider> candidates() {
+		final List<Provider> candidates = new ArrayList<>();
+		candidates.add( bouncyCastle );
+		for ( Provider provider : Security.getProviders() ) {
+			if ( ! BOUNCY_CASTLE.equals( provider.getName() ) ) {
+				candidates.add( provider );
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * @return Key pair of given asymmetric algorithm, {@code null} if algorithm is symmetric or unknown.
+	 */
+	private static KeyPair generateKeyPair(String algorithm) {
+		try {
+			return KeyPairGenerator.getInstance( algorithm, bouncyCastle ).generateKeyPair();
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param algorithm Signature algorithm, e.g. {@code SHA256withRSA} or {@code SHA512withRSAandMGF1}.
+	 * @return Key algorithm, e.g. {@code RSA}.
+	 */
+	private static String signatureKeyAlgorithm(String algorithm) {
+		final int with = algorithm.toUpperCase().indexOf( "WITH" );
+		String keyAlgorithm = with >= 0 ? algorithm.substring( with + 4 ) : algorithm;
+		final int and = keyAlgorithm.toUpperCase().indexOf( "AND" );
+		if ( and >= 0 ) {
+			keyAlgorithm = keyAlgorithm.substring( 0, and );
+		}
+		if ( keyAlgorithm.contains( "/" ) ) {
+			keyAlgorithm = keyAlgorithm.substring( 0, keyAlgorithm.indexOf( '/' ) );
+		}
+		return "ECDSA".equalsIgnoreCase( keyAlgorithm ) ? "EC" : keyAlgorithm;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+
+/**
+ * Thread-confined pool of initialized {@link Signature} instances sharing the same algorithm. Every thread lazily
+ * obtains its own signature object and keeps reusing it, so that neither provider lookup nor key initialization
+ * is paid per record. Signature returns to its initialized state after {@link Signature#sign()} and
+ * {@link Signature#verify(byte[])}, hence it is initialized again only when key changes, e.g. after key store
+ * reload. Callers should {@link #invalidate()} the instance after failed operation, because its state is
+ * undefined afterwards.
+ */
+public class SignaturePool {
+	private final String algorithm;
+	private final Provider provider;
+	private final ThreadLocal<Slot> slots = new ThreadLocal<>();
+
+	public SignaturePool(String algorithm, Provider provider) {
+		this.algorithm = algorithm;
+		this.provider = provider;
+	}
+
+	/**
+	 * @param key Private key.
+	 * @return Signature confined to the calling thread, initialized for signing with given key.
+	 * @throws GeneralSecurityException Indicates unsupported algorithm or invalid key.
+	 */
+	public Signature signer(PrivateKey key) throws GeneralSecurityException {
+		final Slot slot = slot();
+		if ( slot.key != key || ! slot.sign ) {
+			slot.key = null;
+			slot.signature.initSign( key, RandomSource.current() );
+			slot.key = key;
+			slot.sign = true;
+		}
+		return slot.signature;
+	}
+
+	/**
+	 * @param key Public key.
+	 * @return Signature confined to the calling thread, initialized for verification with given key.
+	 * @throws GeneralSecurityException Indicates unsupported algorithm or invalid key.
+	 */
+	public Signature verifier(PublicKey key) throws GeneralSecurityException {
+		final Slot slot = slot();
+		if ( slot.key != key || slot.sign ) {
+			slot.key = null;
+			slot.signature.initVerify( key );
+			slot.key = key;
+			slot.sign = false;
+		}
+		return slot.signature;
+	}
+
+	/**
+	 * Force re-initialization of signature confined to the calling thread.
+	 */
+	public void invalidate() {
+		final Slot slot = slots.get();
+		if ( slot != null ) {
+			slot.key = null;
+		}
+	}
+
+	private Slot slot() throws GeneralSecurityException {
+		Slot slot = slots.get();
+		if ( slot == null ) {
+			slot = new Slot( Signature.getInstance( algorithm, provider ) );
+			slots.set( slot );
+		}
+		return slot;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	private static final class Slot {
+		private final Signature signature;
+		private Key key = null;
+		private boolean sign = false;
+
+		private Slot(Signature signature) {
+			this.signature = signature;
+		}
+	}
+}
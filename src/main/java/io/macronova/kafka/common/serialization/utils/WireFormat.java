@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Versioned, self-describing header prepended by serializers configured with {@code wire.format = v1}. Header
+ * identifies data representation, algorithm, key and length of cryptographic metadata (initialization vector,
+ * encrypted key, signature or tag), so that deserializers validate structure of the input before any
+ * cryptographic operation and select transformation per record.
+ * <p/>
+ *
+ * Header format (10 bytes, followed by metadata and payload):
+ * <blockquote><pre>
+ * +-------------------------------------------------------------------------------------+
+ * | magic  | version | type   | algorithm | key identifier | metadata length | metadata |
+ * | 0xC5   | 0x01    | 1 byte | 1 byte    | 4 bytes        | 2 bytes         |          |
+ * +-------------------------------------------------------------------------------------+
+ * </pre></blockquote>
+ *
+ * Algorithm identifiers are positions in registries below, starting from 1. Registries may only be appended to.
+ */
+public abstract class WireFormat {
+	public static final byte MAGIC = (byte) 0xC5;
+	public static final byte VERSION = 1;
+	public static final int HEADER_LENGTH = 10;
+
+	public static final byte TYPE_ENCRYPT = 1;
+	public static final byte TYPE_HYBRID = 2;
+	public static final byte TYPE_SIGNATURE = 3;
+	public static final byte TYPE_HMAC = 4;
+
+	private static final List<String> CIPHERS = Arrays.asList(
+			"AES/GCM/NoPadding", "AES/CBC/PKCS5Padding", "AES/CTR/NoPadding", "AES/ECB/PKCS5Padding",
+			"AES/CCM/NoPadding", "AES/OFB/NoPadding", "RSA/None/PKCS1Padding", "RSA/ECB/PKCS1Padding",
+			"RSA/None/OAEPWithSHA-256AndMGF1Padding", "RSA/ECB/OAEPWithSHA-256AndMGF1Padding"
+	);
+	private static final List<String> SIGNATURES = Arrays.asList(
+			"SHA256withRSA", "SHA384withRSA", "SHA512withRSA", "SHA256withECDSA", "SHA384withECDSA",
+			"SHA512withECDSA", "Ed25519", "Ed448"
+	);
+	private static final List<String> MACS = Arrays.asList(
+			"HmacSHA256", "HmacSHA384", "HmacSHA512"
+	);
+
+	/**
+	 * @param transformation Cipher transformation.
+	 * @return Identifier of given transformation, {@code 0} if not registered.
+	 */
+	public static int cipherId(String transformation) {
+		return id( CIPHERS, transformation );
+	}
+
+	/**
+	 * @param id Transformation identifier.
+	 * @return Registered transformation, {@code null} if unknown.
+	 */
+	public static String cipher(int id) {
+		return id > 0 && id <= CIPHERS.size() ? CIPHERS.get( id - 1 ) : null;
+	}
+
+	public static int signatureId(String algorithm) {
+		return id( SIGNATURES, algorithm );
+	}
+
+	public static int macId(String algorithm) {
+		return id( MACS, algorithm );
+	}
+
+	private static int id(List<String> registry, String name) {
+		for ( int i = 0; i < registry.size(); ++i ) {
+			if ( registry.get( i ).equalsIgnoreCase( name ) ) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Write header at the beginning of given array.
+	 *
+	 * @param output Output array.
+	 * @param type Data representation type.
+	 * @param algorithm Algorithm identifier.
+	 * @param keyId Key identifier (see {@link KeyRing#keyId(byte[])} and {@link KeyRing#secretKeyId(byte[])}).
+	 * @param metadataLength Length of metadata following the header.
+	 */
+	public static void write(byte[] output, byte type, int algorithm, int keyId, int metadataLength) {
+		output[0] = MAGIC;
+		output[1] = VERSION;
+		output[2] = type;
+		output[3] = (byte) algorithm;
+		output[4] = (byte) ( keyId >>> 24 );
+		output[5] = (byte) ( keyId >>> 16 );
+		output[6] = (byte) ( keyId >>> 8 );
+		output[7] = (byte) keyId;
+		output[8] = (byte) ( metadataLength >>> 8 );
+		output[9] = (byte) metadataLength;
+	}
+
+	/**
+	 * @param type Data representation type.
+	 * @param algorithm Algorithm identifier.
+	 * @param keyId Key identifier.
+	 * @param metadataLength Length of metadata following the header.
+	 * @return New array containing only the header.
+	 */
+	public static byte[] header(byte type, int algorithm, int keyId, int metadataLength) {
+		final byte[] header = new byte[ HEADER_LENGTH ];
+		write( header, type, algorithm, keyId, metadataLength );
+		return header;
+	}
+
+	/**
+	 * @param data Input buffer. Position is not modified.
+	 * @param type Expected data representation type.
+	 * @return {@code true} if input starts with header of given type and supported version.
+	 */
+	public static boolean present(ByteBuffer data, byte type) {
+		final int position = data.position();
+		return data.remaining() >= HEADER_LENGTH && data.get( position ) == MAGIC
+				&& data.get( position + 1 ) == VERSION && data.get( position + 2 ) == type;
+	}
+
+	/**
+	 * Read and validate header.
+	 *
+	 * @param data Input buffer. Position is advanced past the header.
+	 * @param type Expected data representation type.
+	 * @return Parsed header.
+	 * @throws SerializationException Indicates missing header, or metadata exceeding the input.
+	 */
+	public static Header read(ByteBuffer data, byte type) {
+		if ( ! present( data, type ) ) {
+			throw new SerializationException( "Missing or unsupported wire format header." );
+		}
+		data.position( data.position() + 3 );
+		final int algorithm = data.get() & 0xFF;
+		final int keyId = data.getInt();
+		final int metadataLength = data.getShort() & 0xFFFF;
+		if ( data.remaining() < metadataLength ) {
+			throw new SerializationException( "Unexpected end of content." );
+		}
+		return new Header( algorithm, keyId, metadataLength );
+	}
+
+	/**
+	 * Cheap check of ciphertext length against constraints of given transformation.
+	 *
+	 * @param plan Encryption plan.
+	 * @param length Ciphertext length.
+	 * @return {@code false} if given transformation could not have produced ciphertext of given length.
+	 */
+	public static boolean validCiphertextLength(CipherPlan plan, int length) {
+		if ( ! "AES".equalsIgnoreCase( plan.getAlgorithm() ) ) {
+			return true;
+		}
+		switch ( plan.getMode() ) {
+			case GCM:
+			case CCM:
+				// 128-bit authentication tag.
+				return length >= 16;
+			case CBC:
+			case ECB:
+				return length > 0 && length % 16 == 0;
+			default:
+				return true;
+		}
+	}
+
+	public static final class Header {
+		private final int algorithm;
+		private final int keyId;
+		private final int metadataLength;
+
+		private Header(int algorithm, int keyId, int metadataLength) {
+			this.algorithm = algorithm;
+			this.keyId = keyId;
+			this.metadataLength = metadataLength;
+		}
+
+		public int getAlgorithm() {
+			return algorithm;
+		}
+
+		public int getKeyId() {
+			return keyId;
+		}
+
+		public int getMetadataLength() {
+			return metadataLength;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+/**
+ * Offline tool training Zstandard dictionary for {@link io.macronova.kafka.common.serialization.CompressSerializer}.
+ * Input file contains one record per line, e.g. output of {@code kafka-console-consumer.sh}. Large dumps are
+ * reduced to uniform random sample of records.
+ * <p/>
+ *
+ * Usage:
+ * <blockquote><pre>
+ * java -cp kafka-serde-ext.jar:zstd-jni.jar io.macronova.kafka.common.serialization.utils.ZstdDictionaryTrainer \
+ *     topic-dump.txt events.dict [dictionary size, default: 16384] [maximum samples, default: 100000]
+ * </pre></blockquote>
+ */
+public class ZstdDictionaryTrainer {
+	public static final int DICTIONARY_SIZE_DEFAULT = 16 * 1024;
+	public static final int MAX_SAMPLES_DEFAULT = 100000;
+
+	public static void main(String[] args) throws IOException {
+		if ( args.length < 2 ) {
+			System.err.println( "Usage: ZstdDictionaryTrainer <input file> <output file> [dictionary size] [maximum samples]" );
+			System.exit( 1 );
+		}
+		final int dictionarySize = args.length > 2 ? Integer.parseInt( args[2] ) : DICTIONARY_SIZE_DEFAULT;
+		final int maxSamples = args.length > 3 ? Integer.parseInt( args[3] ) : MAX_SAMPLES_DEFAULT;
+		final List<byte[]> samples = sample( args[0], maxSamples );
+		final byte[] dictionary = train( samples, dictionarySize );
+		Files.write( Paths.get( args[1] ), dictionary );
+		System.out.println( String.format(
+				"Trained dictionary %d (%d bytes) from %d records.", Zstd.getDictIdFromDict( dictionary ), dictionary.length, samples.size()
+		) );
+	}
+
+	/**
+	 * Read uniform random sample of lines using reservoir sampling.
+	 *
+	 * @param path Input file.
+	 * @param maxSamples Maximum number of samples.
+	 * @return Sampled records.
+	 * @throws IOException Indicates failure to read the file.
+	 */
+	public static List<byte[]> sample(String path, int maxSamples) throws IOException {
+		final List<byte[]> samples = new ArrayList<>();
+		final Random random = new Random();
+		try ( BufferedReader reader = Files.newBufferedReader( Paths.get( path ), StandardCharsets.UTF_8 ) ) {
+			long count = 0;
+			String line = null;
+			while ( ( line = reader.readLine() ) != null ) {
+				if ( line.isEmpty() ) {
+					continue;
+				}
+				++count;
+				if ( samples.size() < maxSamples ) {
+					samples.add( line.getBytes( StandardCharsets.UTF_8 ) );
+				}
+				else {
+					final long index = (long) ( random.nextDouble() * count );
+					if ( index < maxSamples ) {
+						samples.set( (int) index, line.getBytes( StandardCharsets.UTF_8 ) );
+					}
+				}
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * @param samples Representative records.
+	 * @param dictionarySize Maximum size of dictionary in bytes.
+	 * @return Trained dictionary.
+	 */
+	public static byte[] train(List<byte[]> samples, int dictionarySize) {
+		int samplesSize = 0;
+		for ( byte[] sample : samples ) {
+			samplesSize += sample.length;
+		}
+		final ZstdDictTrainer trainer = new ZstdDictTrainer( samplesSize, dictionarySize );
+		for ( byte[] sample : samples ) {
+			trainer.addSample( sample );
+		}
+		return trainer.trainSamples();
+	}
+}
@@ -23,9 +23,11 @@ import java.nio.file.Paths;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
+import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.util.Date;
 import java.util.UUID;
 
@@ -43,49 +45,122 @@ public abstract class BaseTestCase {
 	protected static final SecureRandom random = new SecureRandom();
 	private static final BouncyCastleProvider provider = new BouncyCastleProvider();
 	private static final String keyStorePath = System.getProperty( "java.io.tmpdir" ) + File.separator + UUID.randomUUID().toString();
+	private static final String edKeyStorePath = System.getProperty( "java.io.tmpdir" ) + File.separator + UUID.randomUUID().toString();
 
 	@BeforeClass
 	public static void createKeyStore() throws Exception {
+		writeKeyStore( keyStorePath() );
+		writeEdKeyStore( edKeyStorePath() );
+	}
+
+	/**
+	 * Write Bouncy Castle (BKS) key store with Ed25519 key pair. Java 8 key stores cannot hold EdDSA private keys.
+	 *
+	 * @param path File path.
+	 * @throws Exception Indicates failure.
+	 */
+	protected static void writeEdKeyStore(String path) throws Exception {
+		final KeyPair keyPair = KeyPairGenerator.getInstance( "Ed25519", provider ).generateKeyPair();
+		// Bouncy Castle cannot issue certificates signed with EdDSA yet, so certificate is signed by EC key.
+		final KeyPairGenerator issuerGenerator = KeyPairGenerator.getInstance( "EC", provider );
+		issuerGenerator.initialize( new ECGenParameterSpec( "P-256" ) );
+		final KeyPair issuerKeyPair = issuerGenerator.generateKeyPair();
+		final KeyStore keyStore = KeyStore.getInstance( "BKS", provider );
+		keyStore.load( null, null );
+		keyStore.setKeyEntry(
+				edKeyAlias(), keyPair.getPrivate(), keyAliasPassword().toCharArray(),
+				new Certificate[] { certificate( keyPair.getPublic(), issuerKeyPair, "SHA256WithECDSA" ) }
+		);
+		final FileOutputStream fileOutputStream = new FileOutputStream( path );
+		keyStore.store( fileOutputStream, keyStorePassword().toCharArray() );
+		fileOutputStream.close();
+	}
+
+	/**
+	 * Write JKS key store with freshly generated RSA and elliptic curve key pairs.
+	 *
+	 * @param path File path.
+	 * @throws Exception Indicates failure.
+	 */
+	protected static void writeKeyStore(String path) throws Exception {
 		final KeyPairGenerator generator = KeyPairGenerator.getInstance( "RSA", provider );
 		generator.initialize( 2048, SecureRandom.getInstance( "SHA1PRNG", "SUN" ) );
 		final KeyPair keyPair = generator.generateKeyPair();
 
+		final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance( "EC", provider );
+		ecGenerator.initialize( new ECGenParameterSpec( "P-256" ), SecureRandom.getInstance( "SHA1PRNG", "SUN" ) );
+		final KeyPair ecKeyPair = ecGenerator.generateKeyPair();
+
+		final KeyStore keyStore = KeyStore.getInstance( "JKS" );
+		keyStore.load( null, null );
+		final FileOutputStream fileOutputStream = new FileOutputStream( path );
+		keyStore.setKeyEntry(
+				keyAlias(), keyPair.getPrivate(), keyAliasPassword().toCharArray(),
+				new Certificate[] { selfSignedCertificate( keyPair, "SHA1WithRSA" ) }
+		);
+		keyStore.setKeyEntry(
+				ecKeyAlias(), ecKeyPair.getPrivate(), keyAliasPassword().toCharArray(),
+				new Certificate[] { selfSignedCertificate( ecKeyPair, "SHA256WithECDSA" ) }
+		);
+		keyStore.store( fileOutputStream, keyStorePassword().toCharArray() );
+		fileOutputStream.close();
+	}
+
+	private static X509Certificate selfSignedCertificate(KeyPair keyPair, String signatureAlgorithm) throws Exception {
+		return certificate( keyPair.getPublic(), keyPair, signatureAlgorithm );
+	}
+
+	private static X509Certificate certificate(PublicKey publicKey, KeyPair issuerKeyPair, String signatureAlgorithm) throws Exception {
 		final X500Name issuer = new X500Name( "cn=Unknown" );
 		final Date from = new Date();
 		final Date to = new Date( from.getTime() + 1000L * 24L * 60L * 60L );
 		final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
-				issuer, BigInteger.ONE, from, to, issuer, keyPair.getPublic()
+				issuer, BigInteger.ONE, from, to, issuer, publicKey
 		);
 		final X509CertificateHolder holder = builder.build(
-				new JcaContentSignerBuilder( "SHA1WithRSA" ).setProvider( provider ).build( keyPair.getPrivate() )
+				new JcaContentSignerBuilder( signatureAlgorithm ).setProvider( provider ).build( issuerKeyPair.getPrivate() )
 		);
 		final X509Certificate certificate = new JcaX509CertificateConverter().setProvider( provider ).getCertificate( holder );
 		certificate.checkValidity( new Date() );
-		certificate.verify( keyPair.getPublic() );
-
-		final KeyStore keyStore = KeyStore.getInstance( "JKS" );
-		keyStore.load( null, null );
-		final FileOutputStream fileOutputStream = new FileOutputStream( keyStorePath() );
-		keyStore.setKeyEntry(
-				keyAlias(), keyPair.getPrivate(), keyAliasPassword().toCharArray(), new Certificate[] { certificate }
-		);
-		keyStore.store( fileOutputStream, keyStorePassword().toCharArray() );
-		fileOutputStream.close();
+		certificate.verify( issuerKeyPair.getPublic() );
+		return certificate;
 	}
 
 	@AfterClass
 	public static void removeKeyStore() throws Exception {
 		Files.deleteIfExists( Paths.get( keyStorePath() ) );
+		Files.deleteIfExists( Paths.get( edKeyStorePath() ) );
 	}
 
 	protected static String keyStorePath() {
 		return keyStorePath;
 	}
 
+	/**
+	 * @return Path of BKS key store with Ed25519 key pair.
+	 */
+	protected static String edKeyStorePath() {
+		return edKeyStorePath;
+	}
+
+	/**
+	 * @return Alias of Ed25519 key pair.
+	 */
+	protected static String edKeyAlias() {
+		return "my-ed-key";
+	}
+
 	protected static String keyAlias() {
 		return "my-key";
 	}
 
+	/**
+	 * @return Alias of elliptic curve (P-256) key pair.
+	 */
+	protected static String ecKeyAlias() {
+		return "my-ec-key";
+	}
+
 	protected static String keyAliasPassword() {
 		return "changeit";
 	}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.AsyncSerializingProducer;
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+
+public class AsyncSerializingProducerTest extends BaseTestCase {
+	private static final Map<String, Object> configuration = new HashMap<String, Object>() { {
+		put( "transformation", "AES/GCM/NoPadding" );
+		put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		put( "metadata.location", "headers" );
+	} };
+
+	@Test
+	public void testPreserveOrderPerKey() throws Exception {
+		// given
+		final MockProducer<byte[], byte[]> producer = new MockProducer<>( true, new ByteArraySerializer(), new ByteArraySerializer() );
+		final EncryptSerializer valueSerializer = new EncryptSerializer();
+		valueSerializer.configure( configuration, false );
+		final AsyncSerializingProducer<String, byte[]> async = new AsyncSerializingProducer<>(
+				producer, new StringSerializer(), valueSerializer, 4, 16, 10000L
+		);
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final List<CompletableFuture<RecordMetadata>> futures = new ArrayList<>();
+
+		// when
+		for ( int i = 0; i < 100; ++i ) {
+			futures.add( async.send( new ProducerRecord<>( "topic1", "key-" + ( i % 5 ), String.valueOf( i ).getBytes() ) ) );
+		}
+		async.flush();
+
+		// then
+		for ( CompletableFuture<RecordMetadata> future : futures ) {
+			Assert.assertEquals( "topic1", future.get( 10, TimeUnit.SECONDS ).topic() );
+		}
+		final Map<String, Integer> last = new HashMap<>();
+		for ( ProducerRecord<byte[], byte[]> record : producer.history() ) {
+			final String key = new String( record.key() );
+			final int value = Integer.parseInt( new String( deserializer.deserialize( "topic1", record.headers(), record.value() ) ) );
+			Assert.assertEquals( value % 5, Integer.parseInt( key.substring( 4 ) ) );
+			if ( last.containsKey( key ) ) {
+				Assert.assertTrue( value > last.get( key ) );
+			}
+			last.put( key, value );
+		}
+		Assert.assertEquals( 100, producer.history().size() );
+
+		async.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testBackpressureTimeout() throws Exception {
+		// given
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final MockProducer<byte[], byte[]> producer = new MockProducer<>( true, new ByteArraySerializer(), new ByteArraySerializer() );
+		final Serializer<String> slowSerializer = new StringSerializer() {
+			@Override
+			public byte[] serialize(String topic, String data) {
+				try {
+					started.countDown();
+					release.await();
+				}
+				catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+				return super.serialize( topic, data );
+			}
+		};
+		final AsyncSerializingProducer<String, String> async = new AsyncSerializingProducer<>(
+				producer, new StringSerializer(), slowSerializer, 1, 1, 50L
+		);
+
+		// when
+		final CompletableFuture<RecordMetadata> first = async.send( new ProducerRecord<>( "topic1", "a", "1" ) );
+		started.await();
+		// Worker blocks on the first record, second one fills the queue.
+		final CompletableFuture<RecordMetadata> second = async.send( new ProducerRecord<>( "topic1", "a", "2" ) );
+		final CompletableFuture<RecordMetadata> rejected = async.send( new ProducerRecord<>( "topic1", "a", "3" ) );
+
+		// then
+		try {
+			rejected.get();
+			Assert.fail( "Expected TimeoutException" );
+		}
+		catch ( ExecutionException e ) {
+			Assert.assertTrue( e.getCause() instanceof TimeoutException );
+		}
+		release.countDown();
+		Assert.assertNotNull( first.get( 10, TimeUnit.SECONDS ) );
+		Assert.assertNotNull( second.get( 10, TimeUnit.SECONDS ) );
+
+		async.close();
+	}
+}
@@ -101,9 +101,29 @@ public class ChainedDeserializerTest {
 		deserializer.configure( configuration, false );
 	}
 
+	@Test
+	public void testCloseChildren() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "0.deserializer", TestDeserializer.class.getName() );
+			put( "1.deserializer", TestDeserializer.class.getName() );
+		} };
+		final ChainedDeserializer chained = new ChainedDeserializer();
+		chained.configure( configuration, false );
+		TestDeserializer.closed = 0;
+
+		// when
+		chained.close();
+
+		// then
+		// Failure of one child does not prevent closing another.
+		Assert.assertEquals( 2, TestDeserializer.closed );
+	}
+
 	public static class TestDeserializer implements Deserializer<String> {
 		private static Map<String, ?> configuration = null;
 		private static boolean isKey = false;
+		private static int closed = 0;
 
 		@Override
 		public void configure(Map<String, ?> configs, boolean isKey) {
@@ -121,6 +141,8 @@ public class ChainedDeserializerTest {
 
 		@Override
 		public void close() {
+			++closed;
+			throw new IllegalStateException( "Failure closing child." );
 		}
 	}
 }
@@ -21,9 +21,17 @@ import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
 
+import io.macronova.kafka.common.serialization.ChainedDeserializer;
 import io.macronova.kafka.common.serialization.ChainedSerializer;
+import io.macronova.kafka.common.serialization.CompressSerializer;
+import io.macronova.kafka.common.serialization.DecompressDeserializer;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.HmacDeserializer;
+import io.macronova.kafka.common.serialization.HmacSerializer;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import io.macronova.kafka.common.serialization.ReverseBytesSerDe;
 import io.macronova.kafka.common.serialization.utils.TestUtils;
@@ -75,6 +83,50 @@ public class ChainedSerializerTest {
 		serializer.close();
 	}
 
+	@Test
+	public void testFusedByteStages() {
+		// given
+		final StringBuilder builder = new StringBuilder();
+		for ( int i = 0; i < 50; ++i ) {
+			builder.append( "{\"id\": " ).append( i ).append( ", \"status\": \"ACCEPTED\"}" );
+		}
+		final String data = builder.toString();
+		final Map<String, Object> producerConfiguration = new HashMap<String, Object>() { {
+			put( "0.serializer", StringSerializer.class.getName() );
+			put( "1.serializer", CompressSerializer.class.getName() );
+			put( "2.serializer", HmacSerializer.class.getName() );
+			put( "2.secret", "770A8A65DA156D24EE2A093277530142" );
+			put( "3.serializer", ReverseBytesSerDe.class.getName() );
+			put( "4.serializer", EncryptSerializer.class.getName() );
+			put( "4.transformation", "AES/GCM/NoPadding" );
+			put( "4.secret", "770A8A65DA156D24EE2A093277530142" );
+		} };
+		final Map<String, Object> consumerConfiguration = new HashMap<String, Object>() { {
+			put( "0.deserializer", DecryptDeserializer.class.getName() );
+			put( "0.transformation", "AES/GCM/NoPadding" );
+			put( "0.secret", "770A8A65DA156D24EE2A093277530142" );
+			put( "1.deserializer", ReverseBytesSerDe.class.getName() );
+			put( "2.deserializer", HmacDeserializer.class.getName() );
+			put( "2.secret", "770A8A65DA156D24EE2A093277530142" );
+			put( "3.deserializer", DecompressDeserializer.class.getName() );
+			put( "4.deserializer", StringDeserializer.class.getName() );
+		} };
+		final ChainedSerializer serializer = new ChainedSerializer();
+		serializer.configure( producerConfiguration, false );
+		final ChainedDeserializer deserializer = new ChainedDeserializer();
+		deserializer.configure( consumerConfiguration, false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertTrue( result.length < data.length() );
+		Assert.assertEquals( data, deserializer.deserialize( "topic1", result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
 	@Test( expected = ConfigException.class )
 	public void testFailOnMissingConfiguration() {
 		// given
@@ -99,9 +151,29 @@ public class ChainedSerializerTest {
 		serializer.configure( configuration, false );
 	}
 
+	@Test
+	public void testCloseChildren() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "0.serializer", TestSerializer.class.getName() );
+			put( "1.serializer", TestSerializer.class.getName() );
+		} };
+		final ChainedSerializer chained = new ChainedSerializer();
+		chained.configure( configuration, false );
+		TestSerializer.closed = 0;
+
+		// when
+		chained.close();
+
+		// then
+		// Failure of one child does not prevent closing another.
+		Assert.assertEquals( 2, TestSerializer.closed );
+	}
+
 	public static class TestSerializer implements Serializer<String> {
 		private static Map<String, ?> configuration = null;
 		private static boolean isKey = false;
+		private static int closed = 0;
 
 		@Override
 		public void configure(Map<String, ?> configs, boolean isKey) {
@@ -119,6 +191,8 @@ public class ChainedSerializerTest {
 
 		@Override
 		public void close() {
+			++closed;
+			throw new IllegalStateException( "Failure closing child." );
 		}
 	}
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.ChainedDeserializer;
+import io.macronova.kafka.common.serialization.ChainedSerializer;
+import io.macronova.kafka.common.serialization.CompressSerializer;
+import io.macronova.kafka.common.serialization.DecompressDeserializer;
+import io.macronova.kafka.common.serialization.utils.CompressionCodec;
+import io.macronova.kafka.common.serialization.utils.ZstdDictionaryTrainer;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+
+public class CompressSerializerTest extends BaseTestCase {
+	private static final byte[] JSON = (
+			"[{\"id\": 1, \"name\": \"Alice\", \"email\": \"alice@example.com\", \"active\": true}, " +
+			"{\"id\": 2, \"name\": \"Bob\", \"email\": \"bob@example.com\", \"active\": false}, " +
+			"{\"id\": 3, \"name\": \"Carol\", \"email\": \"carol@example.com\", \"active\": true}]"
+	).getBytes();
+	private static final String dictionaryPath = System.getProperty( "java.io.tmpdir" ) + File.separator + UUID.randomUUID().toString();
+	private static final String otherDictionaryPath = System.getProperty( "java.io.tmpdir" ) + File.separator + UUID.randomUUID().toString();
+
+	@BeforeClass
+	public static void trainDictionaries() throws Exception {
+		final Random random = new Random( 42 );
+		final List<byte[]> samples = new ArrayList<>();
+		for ( int i = 0; i < 2000; ++i ) {
+			samples.add( event( random ) );
+		}
+		Files.write( Paths.get( dictionaryPath ), ZstdDictionaryTrainer.train( samples, 8192 ) );
+		Files.write( Paths.get( otherDictionaryPath ), ZstdDictionaryTrainer.train( samples.subList( 0, 1000 ), 4096 ) );
+	}
+
+	@AfterClass
+	public static void removeDictionaries() throws Exception {
+		Files.deleteIfExists( Paths.get( dictionaryPath ) );
+		Files.deleteIfExists( Paths.get( otherDictionaryPath ) );
+	}
+
+	private static byte[] event(Random random) {
+		return String.format(
+				"{\"eventId\": \"%s\", \"type\": \"%s\", \"customerId\": %d, \"amount\": %d.%02d, \"currency\": \"EUR\", " +
+				"\"channel\": \"%s\", \"timestamp\": \"2018-10-%02dT%02d:%02d:%02dZ\", \"status\": \"%s\"}",
+				new UUID( random.nextLong(), random.nextLong() ), random.nextBoolean() ? "PAYMENT" : "REFUND", random.nextInt( 100000 ),
+				random.nextInt( 1000 ), random.nextInt( 100 ), random.nextBoolean() ? "MOBILE" : "WEB", 1 + random.nextInt( 28 ),
+				random.nextInt( 24 ), random.nextInt( 60 ), random.nextInt( 60 ), random.nextBoolean() ? "ACCEPTED" : "REJECTED"
+		).getBytes();
+	}
+
+	@Test
+	public void testAllCodecs() {
+		for ( String codec : Arrays.asList( "lz4", "snappy", "zstd" ) ) {
+			// given
+			final CompressSerializer serializer = new CompressSerializer();
+			serializer.configure( configuration( codec ), false );
+			final DecompressDeserializer deserializer = new DecompressDeserializer();
+
+			// when
+			final byte[] result = serializer.serialize( "topic1", JSON );
+
+			// then
+			Assert.assertNotEquals( CompressionCodec.NONE, result[0] );
+			Assert.assertTrue( result.length < JSON.length );
+			Assert.assertArrayEquals( JSON, deserializer.deserialize( "topic1", result ) );
+
+			serializer.close();
+			deserializer.close();
+		}
+	}
+
+	@Test
+	public void testSkipIncompressibleData() {
+		// given
+		final byte[] data = new byte[ 8192 ];
+		new Random( 42 ).nextBytes( data );
+		final CompressSerializer serializer = new CompressSerializer();
+		serializer.configure( configuration( "zstd" ), false );
+		final DecompressDeserializer deserializer = new DecompressDeserializer();
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertEquals( CompressionCodec.NONE, result[0] );
+		Assert.assertEquals( data.length + 1, result.length );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+	}
+
+	@Test
+	public void testSkipSmallData() {
+		// given
+		final byte[] data = "Hello, World!".getBytes();
+		final CompressSerializer serializer = new CompressSerializer();
+		serializer.configure( configuration( "lz4" ), false );
+		final DecompressDeserializer deserializer = new DecompressDeserializer();
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertEquals( CompressionCodec.NONE, result[0] );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+	}
+
+	@Test
+	public void testCompressBeforeEncryption() {
+		// given
+		final Map<String, Object> producerConfiguration = new HashMap<String, Object>() { {
+			put( "0.serializer", CompressSerializer.class.getName() );
+			put( "0.codec", "zstd" );
+			put( "1.serializer", "io.macronova.kafka.common.serialization.EncryptSerializer" );
+			put( "1.transformation", "AES/CBC/PKCS5Padding" );
+			put( "1.secret", "770A8A65DA156D24EE2A093277530142" );
+		} };
+		final Map<String, Object> consumerConfiguration = new HashMap<String, Object>() { {
+			put( "0.deserializer", "io.macronova.kafka.common.serialization.DecryptDeserializer" );
+			put( "0.transformation", "AES/CBC/PKCS5Padding" );
+			put( "0.secret", "770A8A65DA156D24EE2A093277530142" );
+			put( "1.deserializer", DecompressDeserializer.class.getName() );
+		} };
+		final ChainedSerializer serializer = new ChainedSerializer();
+		serializer.configure( producerConfiguration, false );
+		final ChainedDeserializer deserializer = new ChainedDeserializer();
+		deserializer.configure( consumerConfiguration, false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", JSON );
+
+		// then
+		Assert.assertTrue( result.length < JSON.length );
+		Assert.assertArrayEquals( JSON, (byte[]) deserializer.deserialize( "topic1", result ) );
+	}
+
+	@Test
+	public void testDictionaryCompression() {
+		// given
+		final byte[] data = event( new Random( 7 ) );
+		final CompressSerializer plain = new CompressSerializer();
+		plain.configure( configuration( "zstd" ), false );
+		final CompressSerializer serializer = new CompressSerializer();
+		serializer.configure( dictionaryConfiguration( dictionaryPath ), false );
+		final DecompressDeserializer deserializer = new DecompressDeserializer();
+		deserializer.configure( dictionaryConfiguration( otherDictionaryPath + "," + dictionaryPath ), false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertEquals( CompressionCodec.ZSTD_DICTIONARY, result[0] );
+		Assert.assertTrue( result.length * 2 < plain.serialize( "topic1", data ).length );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnUnknownDictionary() {
+		// given
+		final CompressSerializer serializer = new CompressSerializer();
+		serializer.configure( dictionaryConfiguration( dictionaryPath ), false );
+		final DecompressDeserializer deserializer = new DecompressDeserializer();
+		deserializer.configure( dictionaryConfiguration( otherDictionaryPath ), false );
+		final byte[] result = serializer.serialize( "topic1", event( new Random( 7 ) ) );
+
+		// when
+		deserializer.deserialize( "topic1", result );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnDictionaryWithLz4() {
+		// given
+		final Map<String, Object> configuration = dictionaryConfiguration( dictionaryPath );
+		configuration.put( "codec", "lz4" );
+
+		// when
+		new CompressSerializer().configure( configuration, false );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnCorruptedData() {
+		// given
+		final CompressSerializer serializer = new CompressSerializer();
+		serializer.configure( configuration( "lz4" ), false );
+		final byte[] result = serializer.serialize( "topic1", JSON );
+		result[4] ^= 1;
+
+		// when
+		new DecompressDeserializer().deserialize( "topic1", result );
+	}
+
+	@Test
+	public void testFailOnExcessiveUncompressedLength() {
+		// given
+		// LZ4 codec identifier followed by uncompressed length of 2 GB.
+		final byte[] data = new byte[] { CompressionCodec.LZ4, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0 };
+		final DecompressDeserializer deserializer = new DecompressDeserializer();
+		deserializer.configure( Collections.<String, Object>emptyMap(), false );
+
+		// when
+		try {
+			deserializer.deserialize( "topic1", data );
+			Assert.fail();
+		}
+		catch ( SerializationException e ) {
+			// then
+			Assert.assertTrue( e.getMessage(), e.getMessage().contains( "exceeds limit of 16777216 bytes" ) );
+		}
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnUnknownCodec() {
+		// given
+		final CompressSerializer serializer = new CompressSerializer();
+
+		// when
+		serializer.configure( configuration( "gzip" ), false );
+	}
+
+	private Map<String, Object> dictionaryConfiguration(final String path) {
+		final Map<String, Object> configuration = configuration( "zstd" );
+		configuration.put( "dictionary.path", path );
+		return configuration;
+	}
+
+	private Map<String, Object> configuration(final String codec) {
+		return new HashMap<String, Object>() { {
+			put( "codec", codec );
+		} };
+	}
+}
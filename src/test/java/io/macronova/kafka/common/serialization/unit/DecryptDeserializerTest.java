@@ -15,8 +15,21 @@
  */
 package io.macronova.kafka.common.serialization.unit;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -25,7 +38,9 @@ import io.macronova.kafka.common.serialization.BaseTestCase;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
 import org.bouncycastle.util.Arrays;
+import io.macronova.kafka.common.serialization.DecryptByteBufferDeserializer;
 import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptByteBufferSerializer;
 import io.macronova.kafka.common.serialization.EncryptSerializer;
 
 public class DecryptDeserializerTest extends BaseTestCase {
@@ -71,6 +86,213 @@ public class DecryptDeserializerTest extends BaseTestCase {
 		}
 	}
 
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/CBC/PKCS5Padding" );
+			put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+		final List<Future<Boolean>> results = new ArrayList<>();
+
+		// when
+		for ( int i = 0; i < 8; ++i ) {
+			final int thread = i;
+			results.add( executor.submit( new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					for ( int j = 0; j < 500; ++j ) {
+						final byte[] data = ( "Hello, Kafka " + thread + "-" + j + "!" ).getBytes();
+						final byte[] decrypted = deserializer.deserialize( "topic1", serializer.serialize( "topic1", data ) );
+						if ( ! Arrays.areEqual( data, decrypted ) ) {
+							return false;
+						}
+					}
+					return true;
+				}
+			} ) );
+		}
+
+		// then
+		for ( Future<Boolean> result : results ) {
+			Assert.assertTrue( result.get() );
+		}
+
+		executor.shutdown();
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testByteBufferDecryption() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/CBC/PKCS5Padding" );
+			put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		} };
+		final EncryptByteBufferSerializer serializer = new EncryptByteBufferSerializer();
+		serializer.configure( configuration, false );
+		final ByteBuffer input = ByteBuffer.wrap( data );
+		final byte[] encrypted = serializer.serialize( "topic1", input );
+		final DecryptByteBufferDeserializer deserializer = new DecryptByteBufferDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		final ByteBuffer result = deserializer.deserialize( "topic1", encrypted );
+
+		// then
+		Assert.assertEquals( data.length, input.remaining() );
+		Assert.assertEquals( data.length, result.remaining() );
+		final byte[] decrypted = new byte[ result.remaining() ];
+		result.get( decrypted );
+		Assert.assertArrayEquals( data, decrypted );
+		Assert.assertNull( deserializer.deserialize( "topic1", null ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyRingRotation() {
+		// given
+		final String oldSecret = "770A8A65DA156D24EE2A093277530142";
+		final String newSecret = "AFE2B05E3CB2B87AE0B2CF1D9C27A9B5";
+		final EncryptSerializer oldSerializer = new EncryptSerializer();
+		oldSerializer.configure( keyRingConfiguration( oldSecret ), false );
+		final EncryptSerializer newSerializer = new EncryptSerializer();
+		newSerializer.configure( keyRingConfiguration( newSecret + "," + oldSecret ), false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( keyRingConfiguration( newSecret + "," + oldSecret ), false );
+
+		// when
+		final byte[] oldEncrypted = oldSerializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		final byte[] newEncrypted = newSerializer.serialize( "topic1", "Hello, Macronova!".getBytes() );
+
+		// then
+		Assert.assertFalse( Arrays.areEqual( Arrays.copyOf( oldEncrypted, 4 ), Arrays.copyOf( newEncrypted, 4 ) ) );
+		Assert.assertEquals( 4 + 16 + 16, oldEncrypted.length );
+		Assert.assertArrayEquals( "Hello, Kafka!".getBytes(), deserializer.deserialize( "topic1", oldEncrypted ) );
+		Assert.assertArrayEquals( "Hello, Macronova!".getBytes(), deserializer.deserialize( "topic1", newEncrypted ) );
+
+		oldSerializer.close();
+		newSerializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testSecretKeyIdentifierIsKeyed() throws Exception {
+		// given
+		final String secret = "770A8A65DA156D24EE2A093277530142";
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( keyRingConfiguration( secret ), false );
+		final Mac mac = Mac.getInstance( "HmacSHA256" );
+		mac.init( new SecretKeySpec( DatatypeConverter.parseHexBinary( secret ), "HmacSHA256" ) );
+		final byte[] expectedKeyId = Arrays.copyOf( mac.doFinal( "kafka-serde-ext key id".getBytes( StandardCharsets.UTF_8 ) ), 4 );
+		final byte[] secretDigest = MessageDigest.getInstance( "SHA-256" ).digest( DatatypeConverter.parseHexBinary( secret ) );
+
+		// when
+		final byte[] encrypted = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+
+		// then
+		Assert.assertArrayEquals( expectedKeyId, Arrays.copyOf( encrypted, 4 ) );
+		Assert.assertFalse( Arrays.areEqual( Arrays.copyOf( secretDigest, 4 ), Arrays.copyOf( encrypted, 4 ) ) );
+
+		serializer.close();
+	}
+
+	@Test
+	public void testKeyRingWithKeyStore() {
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "RSA/None/PKCS1Padding" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.aliases", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		checkSerializationDeserialization( configuration, "Hello, Kafka!".getBytes() );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnUnknownKeyIdentifier() {
+		// given
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( keyRingConfiguration( "770A8A65DA156D24EE2A093277530142" ), false );
+		final byte[] encrypted = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( keyRingConfiguration( "AFE2B05E3CB2B87AE0B2CF1D9C27A9B5" ), false );
+
+		// when
+		deserializer.deserialize( "topic1", encrypted );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnSecretAndKeyRing() {
+		// given
+		final Map<String, Object> configuration = keyRingConfiguration( "770A8A65DA156D24EE2A093277530142" );
+		configuration.put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+
+		// when
+		deserializer.configure( configuration, false );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnDuplicateKey() {
+		// given
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+
+		// when
+		deserializer.configure(
+				keyRingConfiguration( "770A8A65DA156D24EE2A093277530142,770A8A65DA156D24EE2A093277530142" ), false
+		);
+	}
+
+	@Test
+	public void testCrossProviderDecryption() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( new HashMap<String, Object>( configuration ) { { put( "provider", "SunJCE" ); } }, false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( new HashMap<String, Object>( configuration ) { { put( "provider", "auto" ); } }, false );
+
+		// when
+		final byte[] decrypted = deserializer.deserialize( "topic1", serializer.serialize( "topic1", "Hello, Kafka!".getBytes() ) );
+
+		// then
+		Assert.assertArrayEquals( "Hello, Kafka!".getBytes(), decrypted );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnUnknownProvider() {
+		new EncryptSerializer().configure(
+				new HashMap<String, Object>() { {
+					put( "transformation", "AES/CBC/PKCS5Padding" );
+					put( "secret", "770A8A65DA156D24EE2A093277530142" );
+					put( "provider", "Unknown" );
+				} }, false
+		);
+	}
+
+	private Map<String, Object> keyRingConfiguration(String secrets) {
+		return new HashMap<String, Object>() { {
+			put( "transformation", "AES/CBC/PKCS5Padding" );
+			put( "secrets", secrets );
+		} };
+	}
+
 	private void checkSerializationDeserialization(String transformation, byte[] data) {
 		final Map<String, Object> configuration = new HashMap<String, Object>() { {
 			put( "transformation", transformation );
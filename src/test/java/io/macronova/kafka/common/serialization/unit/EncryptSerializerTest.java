@@ -81,6 +81,27 @@ public class EncryptSerializerTest extends BaseTestCase {
 		serializer.close();
 	}
 
+	@Test
+	public void testOutputSize() {
+		// given
+		final byte[] data = "Hello, World!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", "770A8A65DA156D24EE2A093277530142" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		// 12 bytes of IV, encrypted data and 16 bytes of authentication tag.
+		Assert.assertEquals( 12 + data.length + 16, result.length );
+
+		serializer.close();
+	}
+
 	@Test
 	public void testCertificate() throws Exception {
 		// given
@@ -111,12 +132,13 @@ public class EncryptSerializerTest extends BaseTestCase {
 	@Test( expected = SerializationException.class )
 	public void testFailedEncryption() throws Exception {
 		// given
-		final byte[] data = "Hello, World!".getBytes();
-		final String transformation = "AES/CBC/PKCS5Padding";
-		final String secret = "invalid";
+		// RSA with 2048 bit key cannot encrypt more than 245 bytes.
+		final byte[] data = new byte[ 1024 ];
 		final Map<String, Object> configuration = new HashMap<String, Object>() { {
-			put( "transformation", transformation );
-			put( "secret", secret );
+			put( "transformation", "RSA/None/PKCS1Padding" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
 		} };
 		final EncryptSerializer serializer = new EncryptSerializer();
 		serializer.configure( configuration, false );
@@ -125,6 +147,19 @@ public class EncryptSerializerTest extends BaseTestCase {
 		serializer.serialize( "topic1", data );
 	}
 
+	@Test( expected = ConfigException.class )
+	public void testFailOnInvalidSecret() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/CBC/PKCS5Padding" );
+			put( "secret", "invalid" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+
+		// when
+		serializer.configure( configuration, false );
+	}
+
 	@Test( expected = ConfigException.class )
 	public void testFailOnMissingSecret() {
 		// given
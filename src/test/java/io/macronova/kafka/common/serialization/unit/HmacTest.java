@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.HmacDeserializer;
+import io.macronova.kafka.common.serialization.HmacSerializer;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+
+public class HmacTest extends BaseTestCase {
+	private static final String SECRET = "770A8A65DA156D24EE2A093277530142";
+
+	@Test
+	public void testSuccessfulVerification() {
+		// given
+		final byte[] data = "Hello, World!".getBytes();
+		final Map<String, Object> configuration = configuration( "HmacSHA256", SECRET, 0 );
+
+		// when
+		final byte[] result = checkRoundTrip( configuration, data );
+
+		// then
+		Assert.assertEquals( 32 + data.length, result.length );
+	}
+
+	@Test
+	public void testTruncatedTag() {
+		// given
+		final byte[] data = "Hello, World!".getBytes();
+		final Map<String, Object> configuration = configuration( "HmacSHA512", SECRET, 16 );
+
+		// when
+		final byte[] result = checkRoundTrip( configuration, data );
+
+		// then
+		Assert.assertEquals( 16 + data.length, result.length );
+		Assert.assertArrayEquals( data, Arrays.copyOfRange( result, 16, result.length ) );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnModifiedData() {
+		// given
+		final Map<String, Object> configuration = configuration( "HmacSHA256", SECRET, 16 );
+		final HmacSerializer serializer = new HmacSerializer();
+		serializer.configure( configuration, false );
+		final HmacDeserializer deserializer = new HmacDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] result = serializer.serialize( "topic1", "Hello, World!".getBytes() );
+		result[ result.length - 1 ] ^= 1;
+
+		// when
+		deserializer.deserialize( "topic1", result );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnDifferentSecret() {
+		// given
+		final HmacSerializer serializer = new HmacSerializer();
+		serializer.configure( configuration( "HmacSHA256", SECRET, 0 ), false );
+		final HmacDeserializer deserializer = new HmacDeserializer();
+		deserializer.configure( configuration( "HmacSHA256", "0A8A65DA156D24EE2A09327753014277", 0 ), false );
+		final byte[] result = serializer.serialize( "topic1", "Hello, World!".getBytes() );
+
+		// when
+		deserializer.deserialize( "topic1", result );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnShortTag() {
+		// given
+		final HmacSerializer serializer = new HmacSerializer();
+
+		// when
+		serializer.configure( configuration( "HmacSHA256", SECRET, 4 ), false );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnTagLongerThanMac() {
+		// given
+		final HmacDeserializer deserializer = new HmacDeserializer();
+
+		// when
+		deserializer.configure( configuration( "HmacSHA256", SECRET, 48 ), false );
+	}
+
+	private byte[] checkRoundTrip(Map<String, Object> configuration, byte[] data) {
+		final HmacSerializer serializer = new HmacSerializer();
+		serializer.configure( configuration, false );
+		final HmacDeserializer deserializer = new HmacDeserializer();
+		deserializer.configure( configuration, false );
+
+		final byte[] result = serializer.serialize( "topic1", data );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+
+		serializer.close();
+		deserializer.close();
+		return result;
+	}
+
+	private Map<String, Object> configuration(final String algorithm, final String secret, final int tagLength) {
+		return new HashMap<String, Object>() { {
+			put( "algorithm", algorithm );
+			put( "secret", secret );
+			put( "tag.length", tagLength );
+		} };
+	}
+}
@@ -15,6 +15,7 @@
  */
 package io.macronova.kafka.common.serialization.unit;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,7 +24,9 @@ import org.junit.Test;
 
 import io.macronova.kafka.common.serialization.BaseTestCase;
 import org.apache.kafka.common.config.ConfigException;
+import io.macronova.kafka.common.serialization.HybridDecryptByteBufferDeserializer;
 import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
+import io.macronova.kafka.common.serialization.HybridEncryptByteBufferSerializer;
 import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
 import org.apache.kafka.common.errors.SerializationException;
 import org.bouncycastle.util.Arrays;
@@ -41,6 +44,198 @@ public class HybridDecryptDeserializerTest extends BaseTestCase {
 		checkSerializationDeserialization( data );
 	}
 
+	@Test
+	public void testByteBufferDecryption() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final HybridEncryptByteBufferSerializer serializer = new HybridEncryptByteBufferSerializer();
+		serializer.configure( configuration(), false );
+		final byte[] encrypted = serializer.serialize( "topic1", ByteBuffer.wrap( data ) );
+
+		// when
+		final HybridDecryptByteBufferDeserializer deserializer = new HybridDecryptByteBufferDeserializer();
+		deserializer.configure( configuration(), false );
+		final ByteBuffer result = deserializer.deserialize( "topic1", encrypted );
+
+		// then
+		final byte[] decrypted = new byte[ result.remaining() ];
+		result.get( decrypted );
+		Assert.assertArrayEquals( data, decrypted );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyCache() {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "data.key.max.records", "5" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		for ( int i = 0; i < 5; ++i ) {
+			final byte[] data = ( "Hello, Kafka " + i + "!" ).getBytes();
+			Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", serializer.serialize( "topic1", data ) ) );
+		}
+
+		// then
+		Assert.assertEquals( 1, deserializer.getKeyCache().getMisses() );
+		Assert.assertEquals( 4, deserializer.getKeyCache().getHits() );
+		Assert.assertEquals( 1, deserializer.getKeyCache().size() );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyCacheEviction() {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "key.cache.size", "2" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] first = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+
+		// when
+		deserializer.deserialize( "topic1", first );
+		deserializer.deserialize( "topic1", serializer.serialize( "topic1", "Hello, Kafka!".getBytes() ) );
+		deserializer.deserialize( "topic1", serializer.serialize( "topic1", "Hello, Kafka!".getBytes() ) );
+		deserializer.deserialize( "topic1", first );
+
+		// then
+		Assert.assertEquals( 2, deserializer.getKeyCache().size() );
+		Assert.assertEquals( 4, deserializer.getKeyCache().getMisses() );
+		Assert.assertEquals( 0, deserializer.getKeyCache().getHits() );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyCacheExpiration() throws Exception {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "key.cache.ttl.ms", "100" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] encrypted = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+
+		// when
+		deserializer.deserialize( "topic1", encrypted );
+		deserializer.deserialize( "topic1", encrypted );
+		Thread.sleep( 200 );
+		deserializer.deserialize( "topic1", encrypted );
+
+		// then
+		Assert.assertEquals( 1, deserializer.getKeyCache().getHits() );
+		Assert.assertEquals( 2, deserializer.getKeyCache().getMisses() );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testDisabledKeyCache() {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "key.cache.size", "0" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		final byte[] result = deserializer.deserialize( "topic1", serializer.serialize( "topic1", "Hello, Kafka!".getBytes() ) );
+
+		// then
+		Assert.assertNull( deserializer.getKeyCache() );
+		Assert.assertArrayEquals( "Hello, Kafka!".getBytes(), result );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyAgreement() {
+		// given
+		final byte[] data = new byte[ 1024 ];
+		random.nextBytes( data );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( keyAgreementConfiguration(), false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( keyAgreementConfiguration(), false );
+
+		// when
+		final byte[] encrypted = serializer.serialize( "topic1", data );
+		final byte[] result = deserializer.deserialize( "topic1", encrypted );
+
+		// then
+		// Uncompressed P-256 point, followed by 12 bytes of IV, encrypted data and 16 bytes of GCM tag.
+		Assert.assertEquals( 65 + 12 + data.length + 16, encrypted.length );
+		Assert.assertEquals( 0x04, encrypted[0] );
+		Assert.assertArrayEquals( data, result );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyAgreementWithKeyReuse() {
+		// given
+		final Map<String, Object> configuration = keyAgreementConfiguration();
+		configuration.put( "data.key.max.records", "10" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		for ( int i = 0; i < 10; ++i ) {
+			final byte[] data = ( "Hello, Kafka " + i + "!" ).getBytes();
+			Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", serializer.serialize( "topic1", data ) ) );
+		}
+
+		// then
+		Assert.assertEquals( 1, deserializer.getKeyCache().getMisses() );
+		Assert.assertEquals( 9, deserializer.getKeyCache().getHits() );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnInvalidEphemeralKey() {
+		// given
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( keyAgreementConfiguration(), false );
+		final byte[] encrypted = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		encrypted[10] ^= 1; // Move the point out of curve.
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( keyAgreementConfiguration(), false );
+
+		// when
+		deserializer.deserialize( "topic1", encrypted );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnKeyAgreementWithRsaKey() {
+		// given
+		final Map<String, Object> configuration = keyAgreementConfiguration();
+		configuration.put( "asymmetric.key.store.alias", keyAlias() );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+
+		// when
+		deserializer.configure( configuration, false );
+	}
+
 	private void checkSerializationDeserialization(byte[] data) {
 		// given
 		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
@@ -116,4 +311,15 @@ public class HybridDecryptDeserializerTest extends BaseTestCase {
 			put( "asymmetric.key.store.alias.password", keyAliasPassword() );
 		} };
 	}
+
+	private Map<String, Object> keyAgreementConfiguration() {
+		return new HashMap<String, Object>() { {
+			put( "symmetric.transformation", "AES/GCM/NoPadding" );
+			put( "asymmetric.transformation", "ECDH" );
+			put( "asymmetric.key.store.path", keyStorePath() );
+			put( "asymmetric.key.store.password", keyStorePassword() );
+			put( "asymmetric.key.store.alias", ecKeyAlias() );
+			put( "asymmetric.key.store.alias.password", keyAliasPassword() );
+		} };
+	}
 }
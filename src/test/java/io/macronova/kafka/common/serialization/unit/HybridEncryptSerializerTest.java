@@ -22,8 +22,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
 import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
 import org.apache.kafka.common.config.ConfigException;
+import org.bouncycastle.util.Arrays;
 
 public class HybridEncryptSerializerTest extends BaseTestCase {
 	@Test
@@ -50,6 +52,84 @@ public class HybridEncryptSerializerTest extends BaseTestCase {
 		serializer.close();
 	}
 
+	@Test
+	public void testNewKeyForEveryRecord() {
+		// given
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration(), false );
+
+		// when
+		final byte[] first = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		final byte[] second = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+
+		// then
+		Assert.assertFalse( Arrays.areEqual( encryptedKey( first ), encryptedKey( second ) ) );
+
+		serializer.close();
+	}
+
+	@Test
+	public void testKeyRotationAfterRecordCount() {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "data.key.max.records", "3" );
+		configuration.put( "asymmetric.key.store.alias.password", keyAliasPassword() );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[][] results = new byte[ 4 ][];
+
+		// when
+		for ( int i = 0; i < results.length; ++i ) {
+			results[i] = serializer.serialize( "topic1", ( "Hello, Kafka " + i + "!" ).getBytes() );
+		}
+
+		// then
+		Assert.assertArrayEquals( encryptedKey( results[0] ), encryptedKey( results[1] ) );
+		Assert.assertArrayEquals( encryptedKey( results[0] ), encryptedKey( results[2] ) );
+		Assert.assertFalse( Arrays.areEqual( encryptedKey( results[0] ), encryptedKey( results[3] ) ) );
+		for ( int i = 0; i < results.length; ++i ) {
+			Assert.assertArrayEquals( ( "Hello, Kafka " + i + "!" ).getBytes(), deserializer.deserialize( "topic1", results[i] ) );
+		}
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testKeyRotationAfterTimeout() throws Exception {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "data.key.max.records", "1000" );
+		configuration.put( "data.key.max.age.ms", "100" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+
+		// when
+		final byte[] first = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		final byte[] second = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		Thread.sleep( 200 );
+		final byte[] third = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+
+		// then
+		Assert.assertArrayEquals( encryptedKey( first ), encryptedKey( second ) );
+		Assert.assertFalse( Arrays.areEqual( encryptedKey( first ), encryptedKey( third ) ) );
+
+		serializer.close();
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnInvalidKeyReuse() {
+		// given
+		final Map<String, Object> configuration = configuration();
+		configuration.put( "data.key.max.records", "0" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+
+		// when
+		serializer.configure( configuration, false );
+	}
+
 	@Test( expected = ConfigException.class )
 	public void testFailOnMissingPassword() {
 		// given
@@ -64,4 +144,19 @@ public class HybridEncryptSerializerTest extends BaseTestCase {
 		// when
 		serializer.configure( configuration, false );
 	}
+
+	private byte[] encryptedKey(byte[] encrypted) {
+		// 2048-bit RSA key encrypts secret into 256 bytes.
+		return Arrays.copyOfRange( encrypted, 0, 256 );
+	}
+
+	private Map<String, Object> configuration() {
+		return new HashMap<String, Object>() { {
+			put( "symmetric.transformation", "AES/CBC/PKCS5Padding" );
+			put( "asymmetric.transformation", "RSA/None/PKCS1Padding" );
+			put( "asymmetric.key.store.path", keyStorePath() );
+			put( "asymmetric.key.store.alias", keyAlias() );
+			put( "asymmetric.key.store.password", keyStorePassword() );
+		} };
+	}
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.GenerateSignatureSerializer;
+import io.macronova.kafka.common.serialization.VerifySignatureDeserializer;
+import io.macronova.kafka.common.serialization.utils.KeyStoreRegistry;
+
+public class KeyStoreRegistryTest extends BaseTestCase {
+	@Test
+	public void testSharedKeyStore() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final long loadCount = KeyStoreRegistry.getLoadCount();
+		final long hitCount = KeyStoreRegistry.getHitCount();
+		final List<GenerateSignatureSerializer> serializers = new ArrayList<>();
+		final List<VerifySignatureDeserializer> deserializers = new ArrayList<>();
+
+		// when
+		for ( int i = 0; i < 10; ++i ) {
+			final GenerateSignatureSerializer serializer = new GenerateSignatureSerializer();
+			serializer.configure( configuration, false );
+			serializers.add( serializer );
+			final VerifySignatureDeserializer deserializer = new VerifySignatureDeserializer();
+			deserializer.configure( configuration, false );
+			deserializers.add( deserializer );
+		}
+
+		// then
+		Assert.assertEquals( loadCount + 1, KeyStoreRegistry.getLoadCount() );
+		Assert.assertEquals( hitCount + 19, KeyStoreRegistry.getHitCount() );
+		Assert.assertTrue( KeyStoreRegistry.getLoadTimeNanos() > 0 );
+		final byte[] data = "Hello, Kafka!".getBytes();
+		Assert.assertArrayEquals( data, deserializers.get( 9 ).deserialize( "topic1", serializers.get( 0 ).serialize( "topic1", data ) ) );
+
+		for ( int i = 0; i < 10; ++i ) {
+			serializers.get( i ).close();
+			deserializers.get( i ).close();
+		}
+	}
+
+	@Test
+	public void testReleaseAndReload() throws Exception {
+		// given
+		final long loadCount = KeyStoreRegistry.getLoadCount();
+		final KeyStoreRegistry.Handle first = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+		final KeyStoreRegistry.Handle second = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+		Assert.assertEquals( loadCount + 1, KeyStoreRegistry.getLoadCount() );
+
+		// when
+		first.close();
+		first.close(); // Closing twice shall not release second reference.
+		final KeyStoreRegistry.Handle third = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+		second.close();
+		third.close();
+		final KeyStoreRegistry.Handle fourth = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+
+		// then
+		Assert.assertEquals( loadCount + 2, KeyStoreRegistry.getLoadCount() );
+		Assert.assertNotNull( fourth.getCertificate( keyAlias() ) );
+
+		fourth.close();
+	}
+
+	@Test
+	public void testReloadModifiedKeyStore() throws Exception {
+		// given
+		final KeyStoreRegistry.Handle first = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+		final long loadCount = KeyStoreRegistry.getLoadCount();
+
+		// when
+		Files.setLastModifiedTime(
+				Paths.get( keyStorePath() ), FileTime.fromMillis( System.currentTimeMillis() + 1000L )
+		);
+		final KeyStoreRegistry.Handle second = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+
+		// then
+		Assert.assertEquals( loadCount + 1, KeyStoreRegistry.getLoadCount() );
+
+		first.close();
+		second.close();
+	}
+
+	@Test( expected = UnrecoverableKeyException.class )
+	public void testFailOnInvalidAliasPassword() throws Exception {
+		// given
+		final KeyStoreRegistry.Handle handle = KeyStoreRegistry.acquire( keyStorePath(), "JKS", keyStorePassword().toCharArray() );
+		Assert.assertNotNull( handle.getPrivateKeyEntry( keyAlias(), keyAliasPassword().toCharArray() ) );
+
+		try {
+			// when
+			handle.getPrivateKeyEntry( keyAlias(), "invalid".toCharArray() );
+		}
+		finally {
+			handle.close();
+		}
+	}
+}
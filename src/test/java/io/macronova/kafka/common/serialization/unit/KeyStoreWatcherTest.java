@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.GenerateSignatureSerializer;
+import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
+import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
+import io.macronova.kafka.common.serialization.VerifySignatureDeserializer;
+import io.macronova.kafka.common.serialization.utils.TestCondition;
+import io.macronova.kafka.common.serialization.utils.TestUtils;
+import org.apache.kafka.common.errors.SerializationException;
+
+public class KeyStoreWatcherTest extends BaseTestCase {
+	@Test
+	public void testReloadSigningKey() throws Exception {
+		// given
+		final String path = temporaryKeyStore();
+		final Map<String, Object> configuration = configuration( path, "key.store.reload.interval.ms" );
+		configuration.put( "algorithm", "SHA256withRSA" );
+		configuration.put( "key.store.alias", keyAlias() );
+		configuration.put( "key.store.alias.password", keyAliasPassword() );
+		final GenerateSignatureSerializer serializer = new GenerateSignatureSerializer();
+		serializer.configure( configuration, false );
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final byte[] before = serializer.serialize( "topic1", data );
+
+		try {
+			// when
+			writeKeyStore( path );
+			final VerifySignatureDeserializer deserializer = new VerifySignatureDeserializer();
+			configuration.put( "key.store.reload.interval.ms", 0L );
+			deserializer.configure( configuration, false );
+
+			// then
+			TestUtils.waitForCondition( new TestCondition() {
+				@Override
+				public boolean conditionMet() {
+					return verifies( deserializer, serializer.serialize( "topic1", data ) );
+				}
+			}, 10000L, "Signing key has not been reloaded." );
+			Assert.assertFalse( verifies( deserializer, before ) );
+			deserializer.close();
+		}
+		finally {
+			serializer.close();
+			Files.deleteIfExists( Paths.get( path ) );
+		}
+	}
+
+	@Test
+	public void testReloadHybridKeyPair() throws Exception {
+		// given
+		final String path = temporaryKeyStore();
+		final Map<String, Object> configuration = configuration( path, "asymmetric.key.store.reload.interval.ms" );
+		configuration.put( "symmetric.transformation", "AES/CBC/PKCS5Padding" );
+		configuration.put( "asymmetric.transformation", "RSA/None/PKCS1Padding" );
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] data = "Hello, Kafka!".getBytes();
+
+		try {
+			// when
+			writeKeyStore( path );
+
+			// then
+			TestUtils.waitForCondition( new TestCondition() {
+				@Override
+				public boolean conditionMet() {
+					final HybridDecryptDeserializer fresh = new HybridDecryptDeserializer();
+					fresh.configure( configuration, false );
+					try {
+						return decrypts( fresh, serializer.serialize( "topic1", data ) )
+								&& decrypts( deserializer, serializer.serialize( "topic1", data ) );
+					}
+					finally {
+						fresh.close();
+					}
+				}
+			}, 10000L, "Key pair has not been reloaded." );
+		}
+		finally {
+			serializer.close();
+			deserializer.close();
+			Files.deleteIfExists( Paths.get( path ) );
+		}
+	}
+
+	private static String temporaryKeyStore() throws Exception {
+		final String path = System.getProperty( "java.io.tmpdir" ) + File.separator + UUID.randomUUID().toString();
+		Files.copy( Paths.get( keyStorePath() ), Paths.get( path ) );
+		return path;
+	}
+
+	private static Map<String, Object> configuration(final String path, final String intervalProperty) {
+		return new HashMap<String, Object>() { {
+			put( "key.store.path", path );
+			put( "key.store.password", keyStorePassword() );
+			put( "asymmetric.key.store.path", path );
+			put( "asymmetric.key.store.password", keyStorePassword() );
+			put( "asymmetric.key.store.alias", keyAlias() );
+			put( "asymmetric.key.store.alias.password", keyAliasPassword() );
+			put( intervalProperty, 50L );
+		} };
+	}
+
+	private static boolean verifies(VerifySignatureDeserializer deserializer, byte[] data) {
+		try {
+			deserializer.deserialize( "topic1", data );
+			return true;
+		}
+		catch ( SerializationException e ) {
+			return false;
+		}
+	}
+
+	private static boolean decrypts(HybridDecryptDeserializer deserializer, byte[] data) {
+		try {
+			deserializer.deserialize( "topic1", data );
+			return true;
+		}
+		catch ( SerializationException e ) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.LazyDeserializer;
+import io.macronova.kafka.common.serialization.LazyValue;
+
+public class LazyDeserializerTest extends BaseTestCase {
+	private static final String SECRET = "770A8A65DA156D24EE2A093277530142";
+
+	@Test
+	public void testDeferredDecryption() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "0.deserializer", DecryptDeserializer.class.getName() );
+			put( "0.transformation", "AES/GCM/NoPadding" );
+			put( "0.secret", SECRET );
+			put( "1.deserializer", StringDeserializer.class.getName() );
+		} };
+		final LazyDeserializer deserializer = new LazyDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] encrypted = encrypt( "Hello, Kafka!", null );
+
+		// when
+		final LazyValue<Object> result = deserializer.deserialize( "topic1", encrypted );
+
+		// then
+		Assert.assertFalse( result.isResolved() );
+		Assert.assertSame( encrypted, result.getData() );
+		Assert.assertEquals( "Hello, Kafka!", result.get() );
+		Assert.assertTrue( result.isResolved() );
+		Assert.assertSame( result.get(), result.get() );
+
+		deserializer.close();
+	}
+
+	@Test
+	public void testFailureOnAccess() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "lazy.deserializer", DecryptDeserializer.class.getName() );
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", SECRET );
+		} };
+		final LazyDeserializer deserializer = new LazyDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] encrypted = encrypt( "Hello, Kafka!", null );
+		encrypted[ encrypted.length - 1 ] ^= 1;
+
+		// when
+		final LazyValue<Object> result = deserializer.deserialize( "topic1", encrypted );
+
+		// then
+		try {
+			result.get();
+			Assert.fail( "Expected SerializationException" );
+		}
+		catch ( SerializationException e ) {
+			Assert.assertFalse( result.isResolved() );
+		}
+
+		deserializer.close();
+	}
+
+	@Test
+	public void testHeadersPassedToDelegate() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "lazy.deserializer", DecryptDeserializer.class.getName() );
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", SECRET );
+			put( "metadata.location", "headers" );
+		} };
+		final LazyDeserializer deserializer = new LazyDeserializer();
+		deserializer.configure( configuration, false );
+		final Headers headers = new RecordHeaders();
+		final byte[] encrypted = encrypt( "Hello, Kafka!", headers );
+
+		// when
+		final LazyValue<Object> result = deserializer.deserialize( "topic1", headers, encrypted );
+
+		// then
+		Assert.assertArrayEquals( "Hello, Kafka!".getBytes(), (byte[]) result.get() );
+		Assert.assertNull( deserializer.deserialize( "topic1", headers, null ) );
+
+		deserializer.close();
+	}
+
+	private byte[] encrypt(String data, Headers headers) {
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", SECRET );
+			put( "metadata.location", "headers" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		try {
+			return serializer.serialize( "topic1", headers, data.getBytes() );
+		}
+		finally {
+			serializer.close();
+		}
+	}
+}
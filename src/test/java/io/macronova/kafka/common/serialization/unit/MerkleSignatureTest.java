@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.MerkleSignatureDeserializer;
+import io.macronova.kafka.common.serialization.MerkleSignatureSerializer;
+import org.apache.kafka.common.errors.SerializationException;
+
+public class MerkleSignatureTest extends BaseTestCase {
+	@Test
+	public void testSuccessfulBatchVerification() {
+		// given
+		final MerkleSignatureSerializer serializer = new MerkleSignatureSerializer();
+		serializer.configure( configuration(), false );
+		final MerkleSignatureDeserializer deserializer = new MerkleSignatureDeserializer();
+		deserializer.configure( configuration(), false );
+
+		for ( int size = 1; size <= 9; ++size ) {
+			final List<byte[]> batch = batch( size );
+
+			// when
+			final List<byte[]> result = serializer.serialize( "topic1", batch );
+
+			// then
+			Assert.assertEquals( size, result.size() );
+			for ( int i = 0; i < size; ++i ) {
+				Assert.assertArrayEquals( batch.get( i ), deserializer.deserialize( "topic1", result.get( i ) ) );
+			}
+		}
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testSingleRecord() {
+		// given
+		final byte[] data = "Hello, World!".getBytes();
+		final MerkleSignatureSerializer serializer = new MerkleSignatureSerializer();
+		serializer.configure( configuration(), false );
+		final MerkleSignatureDeserializer deserializer = new MerkleSignatureDeserializer();
+		deserializer.configure( configuration(), false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertEquals( 256 + 8 + data.length, result.length );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnModifiedData() {
+		// given
+		final MerkleSignatureSerializer serializer = new MerkleSignatureSerializer();
+		serializer.configure( configuration(), false );
+		final MerkleSignatureDeserializer deserializer = new MerkleSignatureDeserializer();
+		deserializer.configure( configuration(), false );
+		final List<byte[]> result = serializer.serialize( "topic1", batch( 4 ) );
+		deserializer.deserialize( "topic1", result.get( 0 ) );
+		final byte[] modified = result.get( 1 );
+		modified[ modified.length - 1 ] ^= 1;
+
+		// when
+		deserializer.deserialize( "topic1", modified );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnModifiedProof() {
+		// given
+		final MerkleSignatureSerializer serializer = new MerkleSignatureSerializer();
+		serializer.configure( configuration(), false );
+		final MerkleSignatureDeserializer deserializer = new MerkleSignatureDeserializer();
+		deserializer.configure( configuration(), false );
+		final List<byte[]> result = serializer.serialize( "topic1", batch( 4 ) );
+		deserializer.deserialize( "topic1", result.get( 0 ) );
+		final byte[] modified = result.get( 1 );
+		modified[ 256 + 8 ] ^= 1;
+
+		// when
+		deserializer.deserialize( "topic1", modified );
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnModifiedSignature() {
+		// given
+		final MerkleSignatureSerializer serializer = new MerkleSignatureSerializer();
+		serializer.configure( configuration(), false );
+		final MerkleSignatureDeserializer deserializer = new MerkleSignatureDeserializer();
+		deserializer.configure( configuration(), false );
+		final byte[] modified = serializer.serialize( "topic1", batch( 3 ) ).get( 2 );
+		modified[0] ^= 1;
+
+		// when
+		deserializer.deserialize( "topic1", modified );
+	}
+
+	private List<byte[]> batch(int size) {
+		final List<byte[]> batch = new ArrayList<>( size );
+		for ( int i = 0; i < size; ++i ) {
+			batch.add( ( "Record " + i ).getBytes() );
+		}
+		return batch;
+	}
+
+	private Map<String, Object> configuration() {
+		return new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+	}
+}
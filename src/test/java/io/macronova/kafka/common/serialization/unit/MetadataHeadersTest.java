@@ -0,0 +1,360 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.ChainedDeserializer;
+import io.macronova.kafka.common.serialization.ChainedSerializer;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.GenerateSignatureSerializer;
+import io.macronova.kafka.common.serialization.HmacDeserializer;
+import io.macronova.kafka.common.serialization.HmacSerializer;
+import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
+import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
+import io.macronova.kafka.common.serialization.VerifySignatureDeserializer;
+import org.apache.kafka.common.errors.SerializationException;
+
+public class MetadataHeadersTest extends BaseTestCase {
+	private static final String SECRET = "770A8A65DA156D24EE2A093277530142";
+
+	@Test
+	public void testEncryptionMetadataInHeaders() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secrets", SECRET + ",AFE2B05E3CB2B87AE0B2CF1D9C27A9B5" );
+			put( "metadata.location", "headers" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final Headers headers = new RecordHeaders();
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", headers, data );
+
+		// then
+		// Value carries ciphertext and GCM authentication tag only.
+		Assert.assertEquals( data.length + 16, result.length );
+		Assert.assertEquals( 4, headers.lastHeader( "value.key.id" ).value().length );
+		Assert.assertEquals( 12, headers.lastHeader( "value.iv" ).value().length );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", headers, result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testHybridEncryptionMetadataInHeaders() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "symmetric.transformation", "AES/CBC/PKCS5Padding" );
+			put( "asymmetric.transformation", "RSA/None/PKCS1Padding" );
+			put( "asymmetric.key.store.path", keyStorePath() );
+			put( "asymmetric.key.store.alias", keyAlias() );
+			put( "asymmetric.key.store.password", keyStorePassword() );
+			put( "asymmetric.key.store.alias.password", keyAliasPassword() );
+			put( "metadata.location", "headers" );
+			put( "header.prefix", "crypto." );
+		} };
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, true );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, true );
+		final Headers headers = new RecordHeaders();
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", headers, data );
+
+		// then
+		Assert.assertEquals( 16, result.length );
+		Assert.assertNotNull( headers.lastHeader( "crypto.wrapped.key" ) );
+		Assert.assertNotNull( headers.lastHeader( "crypto.iv" ) );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", headers, result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testSignatureAndTagPassThroughData() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> signatureConfiguration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+			put( "metadata.location", "headers" );
+		} };
+		final Map<String, Object> hmacConfiguration = new HashMap<String, Object>() { {
+			put( "secret", SECRET );
+			put( "tag.length", "16" );
+			put( "metadata.location", "headers" );
+		} };
+		final GenerateSignatureSerializer signer = new GenerateSignatureSerializer();
+		signer.configure( signatureConfiguration, false );
+		final VerifySignatureDeserializer verifier = new VerifySignatureDeserializer();
+		verifier.configure( signatureConfiguration, false );
+		final HmacSerializer hmacSerializer = new HmacSerializer();
+		hmacSerializer.configure( hmacConfiguration, false );
+		final HmacDeserializer hmacDeserializer = new HmacDeserializer();
+		hmacDeserializer.configure( hmacConfiguration, false );
+		final Headers headers = new RecordHeaders();
+
+		// when
+		final byte[] signed = signer.serialize( "topic1", headers, data );
+		final byte[] authenticated = hmacSerializer.serialize( "topic1", headers, signed );
+
+		// then
+		Assert.assertSame( data, authenticated );
+		Assert.assertEquals( 256, headers.lastHeader( "value.signature" ).value().length );
+		Assert.assertEquals( 16, headers.lastHeader( "value.tag" ).value().length );
+		Assert.assertSame( data, verifier.deserialize( "topic1", headers, hmacDeserializer.deserialize( "topic1", headers, data ) ) );
+
+		signer.close();
+		verifier.close();
+		hmacSerializer.close();
+		hmacDeserializer.close();
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnModifiedDataWithTagInHeader() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "secret", SECRET );
+			put( "metadata.location", "headers" );
+		} };
+		final HmacSerializer serializer = new HmacSerializer();
+		serializer.configure( configuration, false );
+		final HmacDeserializer deserializer = new HmacDeserializer();
+		deserializer.configure( configuration, false );
+		final Headers headers = new RecordHeaders();
+		final byte[] result = serializer.serialize( "topic1", headers, "Hello, Kafka!".getBytes() );
+		result[0] ^= 1;
+
+		// when
+		deserializer.deserialize( "topic1", headers, result );
+	}
+
+	@Test
+	public void testEmbeddedMetadataWithoutHeaders() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/CBC/PKCS5Padding" );
+			put( "secret", SECRET );
+			put( "metadata.location", "headers" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		// Without headers, initialization vector is prepended to the value.
+		Assert.assertEquals( 16 + 16, result.length );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", new RecordHeaders(), result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testIgnoreStaleHeadersInValueMode() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", SECRET );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		// Headers forwarded from input record, e.g. by Kafka Streams.
+		final Headers headers = new RecordHeaders();
+		headers.add( "value.iv", new byte[ 12 ] );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", headers, data );
+
+		// then
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", headers, result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testWireFormatRequiresMetadataInValue() {
+		// given
+		final Map<String, Object> encryptConfiguration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", SECRET );
+			put( "metadata.location", "headers" );
+			put( "wire.format", "v1" );
+		} };
+		final Map<String, Object> hybridConfiguration = new HashMap<String, Object>() { {
+			put( "symmetric.transformation", "AES/GCM/NoPadding" );
+			put( "asymmetric.transformation", "RSA/None/PKCS1Padding" );
+			put( "asymmetric.key.store.path", keyStorePath() );
+			put( "asymmetric.key.store.alias", keyAlias() );
+			put( "asymmetric.key.store.password", keyStorePassword() );
+			put( "asymmetric.key.store.alias.password", keyAliasPassword() );
+			put( "metadata.location", "headers" );
+			put( "wire.format", "auto" );
+		} };
+		final Map<String, Object> signatureConfiguration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+			put( "metadata.location", "headers" );
+			put( "wire.format", "v1" );
+		} };
+		final Map<String, Object> hmacConfiguration = new HashMap<String, Object>() { {
+			put( "secret", SECRET );
+			put( "metadata.location", "headers" );
+			put( "wire.format", "v1" );
+		} };
+
+		// when
+		// then
+		assertRejected( new EncryptSerializer(), encryptConfiguration );
+		assertRejected( new DecryptDeserializer(), encryptConfiguration );
+		assertRejected( new HybridEncryptSerializer(), hybridConfiguration );
+		assertRejected( new HybridDecryptDeserializer(), hybridConfiguration );
+		assertRejected( new GenerateSignatureSerializer(), signatureConfiguration );
+		assertRejected( new VerifySignatureDeserializer(), signatureConfiguration );
+		assertRejected( new HmacSerializer(), hmacConfiguration );
+		assertRejected( new HmacDeserializer(), hmacConfiguration );
+	}
+
+	@Test
+	public void testWireFormatWithHeadersAvailable() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "transformation", "AES/GCM/NoPadding" );
+			put( "secret", SECRET );
+			put( "metadata.location", "value" );
+			put( "wire.format", "v1" );
+		} };
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		final Headers headers = new RecordHeaders();
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", headers, data );
+
+		// then
+		Assert.assertFalse( headers.iterator().hasNext() );
+		Assert.assertEquals( (byte) 0xC5, result[ 0 ] );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", headers, result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testChainedSerializerPassesHeaders() {
+		// given
+		final String data = "Hello, Kafka!";
+		final Map<String, Object> producerConfiguration = new HashMap<String, Object>() { {
+			put( "0.serializer", StringSerializer.class.getName() );
+			put( "1.serializer", HmacSerializer.class.getName() );
+			put( "1.secret", SECRET );
+			put( "1.metadata.location", "headers" );
+			put( "2.serializer", EncryptSerializer.class.getName() );
+			put( "2.transformation", "AES/CTR/NoPadding" );
+			put( "2.secret", SECRET );
+			put( "2.metadata.location", "headers" );
+		} };
+		final Map<String, Object> consumerConfiguration = new HashMap<String, Object>() { {
+			put( "0.deserializer", DecryptDeserializer.class.getName() );
+			put( "0.transformation", "AES/CTR/NoPadding" );
+			put( "0.secret", SECRET );
+			put( "0.metadata.location", "headers" );
+			put( "1.deserializer", HmacDeserializer.class.getName() );
+			put( "1.secret", SECRET );
+			put( "1.metadata.location", "headers" );
+			put( "2.deserializer", StringDeserializer.class.getName() );
+		} };
+		final ChainedSerializer serializer = new ChainedSerializer();
+		serializer.configure( producerConfiguration, false );
+		final ChainedDeserializer deserializer = new ChainedDeserializer();
+		deserializer.configure( consumerConfiguration, false );
+		final Headers headers = new RecordHeaders();
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", headers, data );
+
+		// then
+		// Stream cipher output has the same length as plaintext.
+		Assert.assertEquals( data.length(), result.length );
+		Assert.assertNotNull( headers.lastHeader( "value.tag" ) );
+		Assert.assertNotNull( headers.lastHeader( "value.iv" ) );
+		Assert.assertEquals( data, deserializer.deserialize( "topic1", headers, result ) );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	private static void assertRejected(Serializer<?> serializer, Map<String, Object> configuration) {
+		try {
+			serializer.configure( configuration, false );
+			Assert.fail( "Configuration should be rejected." );
+		}
+		catch ( ConfigException e ) {
+			// Expected.
+		}
+	}
+
+	private static void assertRejected(Deserializer<?> deserializer, Map<String, Object> configuration) {
+		try {
+			deserializer.configure( configuration, false );
+			Assert.fail( "Configuration should be rejected." );
+		}
+		catch ( ConfigException e ) {
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.ParallelDeserializer;
+
+public class ParallelDeserializerTest extends BaseTestCase {
+	private static final Map<String, Object> configuration = new HashMap<String, Object>() { {
+		put( "transformation", "AES/GCM/NoPadding" );
+		put( "secret", "770A8A65DA156D24EE2A093277530142" );
+	} };
+
+	@Test
+	public void testPreservePartitionOrder() throws Exception {
+		// given
+		final ConsumerRecords<byte[], byte[]> records = encryptedRecords( 3, 100 );
+		final DecryptDeserializer valueDeserializer = new DecryptDeserializer();
+		valueDeserializer.configure( configuration, false );
+		final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		final ParallelDeserializer<String, byte[]> deserializer = new ParallelDeserializer<>(
+				new StringDeserializer(), valueDeserializer, executor, 7
+		);
+
+		// when
+		final ConsumerRecords<String, byte[]> result = deserializer.deserialize( records );
+
+		// then
+		Assert.assertEquals( records.count(), result.count() );
+		for ( TopicPartition partition : records.partitions() ) {
+			final List<ConsumerRecord<String, byte[]>> partitionRecords = result.records( partition );
+			Assert.assertEquals( 100, partitionRecords.size() );
+			for ( int i = 0; i < partitionRecords.size(); ++i ) {
+				final ConsumerRecord<String, byte[]> record = partitionRecords.get( i );
+				Assert.assertEquals( i, record.offset() );
+				Assert.assertEquals( "key-" + i, record.key() );
+				Assert.assertEquals( partition.partition() + "-" + i, new String( record.value() ) );
+			}
+		}
+
+		deserializer.close();
+		executor.shutdown();
+	}
+
+	@Test( expected = SerializationException.class )
+	public void testFailOnCorruptedRecord() {
+		// given
+		final ConsumerRecords<byte[], byte[]> records = encryptedRecords( 2, 50 );
+		records.records( new TopicPartition( "topic1", 1 ) ).get( 42 ).value()[0] ^= 1;
+		final DecryptDeserializer valueDeserializer = new DecryptDeserializer();
+		valueDeserializer.configure( configuration, false );
+		final ParallelDeserializer<String, byte[]> deserializer = new ParallelDeserializer<>(
+				new StringDeserializer(), valueDeserializer
+		);
+
+		// when
+		deserializer.deserialize( records );
+	}
+
+	private ConsumerRecords<byte[], byte[]> encryptedRecords(int partitions, int count) {
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( configuration, false );
+		final Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> records = new LinkedHashMap<>();
+		for ( int partition = 0; partition < partitions; ++partition ) {
+			final List<ConsumerRecord<byte[], byte[]>> partitionRecords = new ArrayList<>();
+			for ( int i = 0; i < count; ++i ) {
+				partitionRecords.add( new ConsumerRecord<>(
+						"topic1", partition, i, ( "key-" + i ).getBytes(),
+						serializer.serialize( "topic1", ( partition + "-" + i ).getBytes() )
+				) );
+			}
+			records.put( new TopicPartition( "topic1", partition ), partitionRecords );
+		}
+		serializer.close();
+		return new ConsumerRecords<>( records );
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.utils.RandomSource;
+
+public class RandomSourceTest {
+	@Test
+	public void testThreadConfinedGenerator() throws Exception {
+		// given
+		final AtomicReference<SecureRandom> other = new AtomicReference<>();
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				other.set( RandomSource.current() );
+			}
+		};
+
+		// when
+		thread.start();
+		thread.join();
+
+		// then
+		Assert.assertSame( RandomSource.current(), RandomSource.current() );
+		Assert.assertNotNull( other.get() );
+		Assert.assertNotSame( RandomSource.current(), other.get() );
+	}
+
+	@Test
+	public void testIndependentGenerators() {
+		// given
+		final byte[] first = new byte[ 32 ];
+		final byte[] second = new byte[ 32 ];
+
+		// when
+		RandomSource.create().nextBytes( first );
+		RandomSource.create().nextBytes( second );
+
+		// then
+		Assert.assertFalse( Arrays.equals( first, second ) );
+	}
+}
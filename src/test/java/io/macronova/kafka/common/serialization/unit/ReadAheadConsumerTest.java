@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.ReadAheadConsumer;
+
+public class ReadAheadConsumerTest extends BaseTestCase {
+	private static final TopicPartition PARTITION = new TopicPartition( "topic1", 0 );
+	private static final Map<String, Object> configuration = new HashMap<String, Object>() { {
+		put( "transformation", "AES/GCM/NoPadding" );
+		put( "secret", "770A8A65DA156D24EE2A093277530142" );
+	} };
+
+	private final EncryptSerializer serializer = new EncryptSerializer();
+	private RebalancingConsumer consumer = null;
+	private ExecutorService executor = null;
+	private ReadAheadConsumer<String, byte[]> readAhead = null;
+
+	@Before
+	public void setUp() {
+		serializer.configure( configuration, false );
+		consumer = new RebalancingConsumer();
+		executor = Executors.newFixedThreadPool( 2 );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+		readAhead = new ReadAheadConsumer<>( consumer, new StringDeserializer(), deserializer, executor, 2 );
+	}
+
+	@After
+	public void tearDown() {
+		readAhead.close();
+		executor.shutdown();
+		serializer.close();
+	}
+
+	@Test
+	public void testCommitDeliveredRecordsOnly() {
+		// given
+		readAhead.assign( Collections.singletonList( PARTITION ) );
+		consumer.updateBeginningOffsets( Collections.singletonMap( PARTITION, 0L ) );
+		scheduleBatches( 3, 10 );
+
+		// when
+		final ConsumerRecords<String, byte[]> first = readAhead.poll( 100L );
+		readAhead.commitSync();
+
+		// then
+		assertBatch( first, 0, 10 );
+		// Two batches have been read ahead, but only delivered records are committed.
+		Assert.assertEquals( 30L, consumer.position( PARTITION ) );
+		Assert.assertEquals( 10L, consumer.committed( PARTITION ).offset() );
+		assertBatch( readAhead.poll( 100L ), 10, 10 );
+		assertBatch( readAhead.poll( 100L ), 20, 10 );
+		Assert.assertTrue( readAhead.poll( 0L ).isEmpty() );
+	}
+
+	@Test
+	public void testPauseRewindsToFirstUndeliveredRecord() {
+		// given
+		readAhead.assign( Collections.singletonList( PARTITION ) );
+		consumer.updateBeginningOffsets( Collections.singletonMap( PARTITION, 0L ) );
+		scheduleBatches( 3, 10 );
+		assertBatch( readAhead.poll( 100L ), 0, 10 );
+
+		// when
+		readAhead.pause( Collections.singletonList( PARTITION ) );
+
+		// then
+		Assert.assertEquals( 10L, consumer.position( PARTITION ) );
+		Assert.assertTrue( readAhead.poll( 0L ).isEmpty() );
+	}
+
+	@Test
+	public void testRewindOnDeserializationFailure() {
+		// given
+		readAhead.assign( Collections.singletonList( PARTITION ) );
+		consumer.updateBeginningOffsets( Collections.singletonMap( PARTITION, 0L ) );
+		scheduleBatches( 1, 10 );
+		consumer.schedulePollTask( new Runnable() {
+			@Override
+			public void run() {
+				// Second batch contains record which cannot be decrypted.
+				consumer.addRecord( new ConsumerRecord<>( "topic1", 0, 10L, "key-10".getBytes(), "corrupted".getBytes() ) );
+			}
+		} );
+		assertBatch( readAhead.poll( 100L ), 0, 10 );
+
+		// when
+		try {
+			readAhead.poll( 100L );
+			Assert.fail();
+		}
+		catch ( SerializationException e ) {
+			// Expected.
+		}
+		readAhead.commitSync();
+
+		// then
+		Assert.assertEquals( 10L, consumer.position( PARTITION ) );
+		Assert.assertEquals( 10L, consumer.committed( PARTITION ).offset() );
+	}
+
+	@Test
+	public void testDiscardRevokedPartitions() {
+		// given
+		final Map<TopicPartition, Long> committedOnRevoke = new HashMap<>();
+		readAhead.subscribe( Collections.singletonList( "topic1" ), new ConsumerRebalanceListener() {
+			@Override
+			public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+				readAhead.commitSync();
+				committedOnRevoke.put( PARTITION, consumer.committed( PARTITION ).offset() );
+			}
+
+			@Override
+			public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+			}
+		} );
+		consumer.rebalance( Collections.singletonList( PARTITION ) );
+		consumer.updateBeginningOffsets( Collections.singletonMap( PARTITION, 0L ) );
+		scheduleBatches( 3, 10 );
+		assertBatch( readAhead.poll( 100L ), 0, 10 );
+
+		// when
+		consumer.revoke( Collections.singletonList( PARTITION ) );
+
+		// then
+		Assert.assertEquals( Long.valueOf( 10L ), committedOnRevoke.get( PARTITION ) );
+		Assert.assertTrue( readAhead.poll( 0L ).isEmpty() );
+		Assert.assertTrue( readAhead.delivered().isEmpty() );
+	}
+
+	/**
+	 * Mock consumer of Kafka 1.1 does not notify rebalance listener.
+	 */
+	private static class RebalancingConsumer extends MockConsumer<byte[], byte[]> {
+		private ConsumerRebalanceListener listener = null;
+
+		private RebalancingConsumer() {
+			super( OffsetResetStrategy.EARLIEST );
+		}
+
+		@Override
+		public synchronized void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+			super.subscribe( topics, listener );
+			this.listener = listener;
+		}
+
+		private void revoke(Collection<TopicPartition> partitions) {
+			listener.onPartitionsRevoked( partitions );
+			rebalance( Collections.<TopicPartition>emptyList() );
+		}
+	}
+
+	private void scheduleBatches(int batches, final int size) {
+		for ( int i = 0; i < batches; ++i ) {
+			final int from = i * size;
+			consumer.schedulePollTask( new Runnable() {
+				@Override
+				public void run() {
+					for ( int offset = from; offset < from + size; ++offset ) {
+						consumer.addRecord( new ConsumerRecord<>(
+								"topic1", 0, offset, ( "key-" + offset ).getBytes(),
+								serializer.serialize( "topic1", String.valueOf( offset ).getBytes() )
+						) );
+					}
+				}
+			} );
+		}
+	}
+
+	private void assertBatch(ConsumerRecords<String, byte[]> records, int from, int size) {
+		final List<ConsumerRecord<String, byte[]>> partitionRecords = records.records( PARTITION );
+		Assert.assertEquals( size, partitionRecords.size() );
+		for ( int i = 0; i < size; ++i ) {
+			Assert.assertEquals( from + i, partitionRecords.get( i ).offset() );
+			Assert.assertEquals( "key-" + ( from + i ), partitionRecords.get( i ).key() );
+			Assert.assertEquals( String.valueOf( from + i ), new String( partitionRecords.get( i ).value() ) );
+		}
+	}
+}
@@ -15,6 +15,7 @@
  */
 package io.macronova.kafka.common.serialization.unit;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -22,9 +23,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import io.macronova.kafka.common.serialization.BaseTestCase;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.SerializationException;
 import org.bouncycastle.util.Arrays;
+import io.macronova.kafka.common.serialization.GenerateSignatureByteBufferSerializer;
 import io.macronova.kafka.common.serialization.GenerateSignatureSerializer;
+import io.macronova.kafka.common.serialization.VerifySignatureByteBufferDeserializer;
 import io.macronova.kafka.common.serialization.VerifySignatureDeserializer;
 
 public class VerifySignatureTest extends BaseTestCase {
@@ -51,6 +55,171 @@ public class VerifySignatureTest extends BaseTestCase {
 		}
 	}
 
+	@Test
+	public void testEd25519() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "Ed25519" );
+			put( "key.store.path", edKeyStorePath() );
+			put( "key.store.type", "BKS" );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", edKeyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final byte[] data = "Hello, Kafka!".getBytes();
+
+		// when
+		final byte[] signed = checkSignVerify( configuration, data );
+
+		// then
+		Assert.assertEquals( 64 + data.length, signed.length );
+	}
+
+	@Test
+	public void testLengthPrefixedEcdsa() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withECDSA" );
+			put( "signature.framing", "length-prefixed" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", ecKeyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final byte[] data = "Hello, Kafka!".getBytes();
+
+		// when
+		final byte[] signed = checkSignVerify( configuration, data );
+
+		// then
+		Assert.assertEquals( signed.length - 2 - data.length, ( signed[0] & 0xFF ) << 8 | signed[1] & 0xFF );
+	}
+
+	@Test
+	public void testFixedLengthPlainEcdsa() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withPLAIN-ECDSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", ecKeyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final byte[] data = "Hello, Kafka!".getBytes();
+
+		// when
+		final byte[] signed = checkSignVerify( configuration, data );
+
+		// then
+		Assert.assertEquals( 64 + data.length, signed.length );
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testFailOnFixedLengthDerSignature() {
+		new VerifySignatureDeserializer().configure(
+				new HashMap<String, Object>() { {
+					put( "algorithm", "SHA256withECDSA" );
+					put( "key.store.path", keyStorePath() );
+					put( "key.store.password", keyStorePassword() );
+					put( "key.store.alias", ecKeyAlias() );
+				} }, false
+		);
+	}
+
+	@Test
+	public void testAutomaticProviderSelection() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final GenerateSignatureSerializer serializer = new GenerateSignatureSerializer();
+		serializer.configure( new HashMap<String, Object>( configuration ) { { put( "provider", "auto" ); } }, false );
+		final VerifySignatureDeserializer deserializer = new VerifySignatureDeserializer();
+		deserializer.configure( new HashMap<String, Object>( configuration ) { { put( "provider", "SunRsaSign" ); } }, false );
+
+		// when
+		final byte[] result = deserializer.deserialize( "topic1", serializer.serialize( "topic1", "Hello, Kafka!".getBytes() ) );
+
+		// then
+		Assert.assertArrayEquals( "Hello, Kafka!".getBytes(), result );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testByteBufferVerification() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final ByteBuffer input = ByteBuffer.allocate( data.length + 4 );
+		input.position( 2 );
+		input.put( data );
+		input.position( 2 ).limit( 2 + data.length );
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final GenerateSignatureByteBufferSerializer serializer = new GenerateSignatureByteBufferSerializer();
+		serializer.configure( configuration, false );
+		final byte[] signed = serializer.serialize( "topic1", input );
+		final VerifySignatureByteBufferDeserializer deserializer = new VerifySignatureByteBufferDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		final ByteBuffer result = deserializer.deserialize( "topic1", signed );
+
+		// then
+		Assert.assertEquals( 2, input.position() );
+		Assert.assertTrue( result.isReadOnly() );
+		final byte[] verified = new byte[ result.remaining() ];
+		result.get( verified );
+		Assert.assertArrayEquals( data, verified );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testVerificationAfterFailure() {
+		// given
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+		} };
+		final GenerateSignatureSerializer serializer = new GenerateSignatureSerializer();
+		serializer.configure( configuration, false );
+		final VerifySignatureDeserializer deserializer = new VerifySignatureDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] first = serializer.serialize( "topic1", "Hello, Kafka!".getBytes() );
+		final byte[] second = serializer.serialize( "topic1", "Hello, Macronova!".getBytes() );
+		try {
+			deserializer.deserialize( "topic1", Arrays.append( first, (byte) 100 ) );
+			Assert.fail( "Tampered record should not be verified." );
+		}
+		catch ( SerializationException e ) {
+			// expected
+		}
+
+		// when
+		final byte[] result = deserializer.deserialize( "topic1", second );
+
+		// then
+		Assert.assertArrayEquals( "Hello, Macronova!".getBytes(), result );
+
+		serializer.close();
+		deserializer.close();
+	}
+
 	@Test( expected = SerializationException.class )
 	public void testFailedVerification() {
 		// given
@@ -72,6 +241,18 @@ public class VerifySignatureTest extends BaseTestCase {
 		deserializer.deserialize( "topic1", Arrays.append( encrypted, (byte) 100 ) );
 	}
 
+	private byte[] checkSignVerify(Map<String, Object> configuration, byte[] data) {
+		final GenerateSignatureSerializer serializer = new GenerateSignatureSerializer();
+		serializer.configure( configuration, false );
+		final VerifySignatureDeserializer deserializer = new VerifySignatureDeserializer();
+		deserializer.configure( configuration, false );
+		final byte[] signed = serializer.serialize( "topic1", data );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", signed ) );
+		serializer.close();
+		deserializer.close();
+		return signed;
+	}
+
 	private void checkSignVerify(String algorithm, byte[] data) {
 		// given
 		final Map<String, Object> configuration = new HashMap<String, Object>() { {
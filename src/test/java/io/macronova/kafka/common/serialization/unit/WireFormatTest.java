@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 Macronova.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.macronova.kafka.common.serialization.unit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.macronova.kafka.common.serialization.BaseTestCase;
+import io.macronova.kafka.common.serialization.DecryptDeserializer;
+import io.macronova.kafka.common.serialization.EncryptSerializer;
+import io.macronova.kafka.common.serialization.GenerateSignatureSerializer;
+import io.macronova.kafka.common.serialization.HmacDeserializer;
+import io.macronova.kafka.common.serialization.HmacSerializer;
+import io.macronova.kafka.common.serialization.HybridDecryptDeserializer;
+import io.macronova.kafka.common.serialization.HybridEncryptSerializer;
+import io.macronova.kafka.common.serialization.VerifySignatureDeserializer;
+import io.macronova.kafka.common.serialization.utils.WireFormat;
+
+public class WireFormatTest extends BaseTestCase {
+	private static final String SECRET = "770A8A65DA156D24EE2A093277530142";
+
+	@Test
+	public void testDecryptMixedTransformations() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final EncryptSerializer legacySerializer = new EncryptSerializer();
+		legacySerializer.configure( encryptConfiguration( "AES/CBC/PKCS5Padding", "legacy" ), false );
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( encryptConfiguration( "AES/GCM/NoPadding", "v1" ), false );
+		final Map<String, Object> configuration = encryptConfiguration( "AES/CBC/PKCS5Padding", "auto" );
+		configuration.put( "wire.format.allowed.transformations", "AES/GCM/NoPadding" );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		final byte[] legacy = legacySerializer.serialize( "topic1", data );
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertEquals( WireFormat.MAGIC, result[0] );
+		Assert.assertEquals( WireFormat.VERSION, result[1] );
+		Assert.assertEquals( WireFormat.TYPE_ENCRYPT, result[2] );
+		Assert.assertEquals( WireFormat.cipherId( "AES/GCM/NoPadding" ), result[3] );
+		Assert.assertEquals( 12, result[9] );
+		Assert.assertEquals( WireFormat.HEADER_LENGTH + 12 + data.length + 16, result.length );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", legacy ) );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+
+		legacySerializer.close();
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testRejectMalformedContent() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final EncryptSerializer serializer = new EncryptSerializer();
+		serializer.configure( encryptConfiguration( "AES/GCM/NoPadding", "v1" ), false );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+		deserializer.configure( encryptConfiguration( "AES/GCM/NoPadding", "v1" ), false );
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// when
+		final byte[] unknownKey = result.clone();
+		unknownKey[4] ^= 0x01;
+		final byte[] truncated = new byte[ WireFormat.HEADER_LENGTH + 12 + 8 ];
+		System.arraycopy( result, 0, truncated, 0, truncated.length );
+		final byte[] unknownAlgorithm = result.clone();
+		unknownAlgorithm[3] = (byte) 0xFF;
+		// Header is not authenticated, downgrade to transformation which has not been allowed explicitly.
+		final byte[] downgraded = result.clone();
+		downgraded[3] = (byte) WireFormat.cipherId( "AES/CTR/NoPadding" );
+
+		// then
+		assertRejected( deserializer, data, "Missing or unsupported wire format header" );
+		assertRejected( deserializer, unknownKey, "Unknown key identifier" );
+		assertRejected( deserializer, truncated, "Malformed content" );
+		assertRejected( deserializer, unknownAlgorithm, "Unsupported transformation identifier 255" );
+		assertRejected( deserializer, downgraded, "Unsupported transformation identifier" );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testAllowedTransformationOfDifferentAlgorithm() {
+		// given
+		final Map<String, Object> configuration = encryptConfiguration( "AES/GCM/NoPadding", "auto" );
+		configuration.put( "wire.format.allowed.transformations", "RSA/None/PKCS1Padding" );
+		final DecryptDeserializer deserializer = new DecryptDeserializer();
+
+		// when
+		deserializer.configure( configuration, false );
+
+		// then
+		// Exception expected.
+	}
+
+	@Test( expected = ConfigException.class )
+	public void testUnregisteredTransformation() {
+		// given
+		final EncryptSerializer serializer = new EncryptSerializer();
+
+		// when
+		serializer.configure( encryptConfiguration( "AES/CFB/NoPadding", "v1" ), false );
+
+		// then
+		// Exception expected.
+	}
+
+	@Test
+	public void testHybridEncryption() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> configuration = new HashMap<String, Object>() { {
+			put( "symmetric.transformation", "AES/CBC/PKCS5Padding" );
+			put( "asymmetric.transformation", "RSA/None/PKCS1Padding" );
+			put( "asymmetric.key.store.path", keyStorePath() );
+			put( "asymmetric.key.store.alias", keyAlias() );
+			put( "asymmetric.key.store.password", keyStorePassword() );
+			put( "asymmetric.key.store.alias.password", keyAliasPassword() );
+			put( "wire.format", "v1" );
+		} };
+		final HybridEncryptSerializer serializer = new HybridEncryptSerializer();
+		serializer.configure( configuration, false );
+		final HybridDecryptDeserializer deserializer = new HybridDecryptDeserializer();
+		deserializer.configure( configuration, false );
+
+		// when
+		final byte[] result = serializer.serialize( "topic1", data );
+
+		// then
+		Assert.assertEquals( WireFormat.TYPE_HYBRID, result[2] );
+		// 2048-bit RSA encoded secret key and initialization vector.
+		Assert.assertEquals( 256 + 16, ( ( result[8] & 0xFF ) << 8 ) | ( result[9] & 0xFF ) );
+		Assert.assertArrayEquals( data, deserializer.deserialize( "topic1", result ) );
+		final byte[] unknownKey = result.clone();
+		unknownKey[7] ^= 0x01;
+		assertRejected( deserializer, unknownKey, "Unknown key identifier" );
+
+		serializer.close();
+		deserializer.close();
+	}
+
+	@Test
+	public void testSignatureAndTag() {
+		// given
+		final byte[] data = "Hello, Kafka!".getBytes();
+		final Map<String, Object> signatureConfiguration = new HashMap<String, Object>() { {
+			put( "algorithm", "SHA256withRSA" );
+			put( "key.store.path", keyStorePath() );
+			put( "key.store.password", keyStorePassword() );
+			put( "key.store.alias", keyAlias() );
+			put( "key.store.alias.password", keyAliasPassword() );
+			put( "wire.format", "auto" );
+		} };
+		final Map<String, Object> hmacConfiguration = new HashMap<String, Object>() { {
+			put( "secret", SECRET );
+			put( "tag.length", "16" );
+			put( "wire.format", "auto" );
+		} };
+		final GenerateSignatureSerializer signer = new GenerateSignatureSerializer();
+		signer.configure( signatureConfiguration, false );
+		final VerifySignatureDeserializer verifier = new VerifySignatureDeserializer();
+		verifier.configure( signatureConfiguration, false );
+		final HmacSerializer hmacSerializer = new HmacSerializer();
+		hmacSerializer.configure( hmacConfiguration, false );
+		final HmacDeserializer hmacDeserializer = new HmacDeserializer();
+		hmacDeserializer.configure( hmacConfiguration, false );
+
+		// when
+		final byte[] signed = signer.serialize( "topic1", data );
+		final byte[] authenticated = hmacSerializer.serialize( "topic1", signed );
+
+		// then
+		Assert.assertEquals( WireFormat.HEADER_LENGTH + 16 + signed.length, authenticated.length );
+		Assert.assertEquals( WireFormat.HEADER_LENGTH + 256 + data.length, signed.length );
+		Assert.assertArrayEquals( signed, hmacDeserializer.deserialize( "topic1", authenticated ) );
+		Assert.assertArrayEquals( data, verifier.deserialize( "topic1", signed ) );
+		final byte[] otherAlgorithm = authenticated.clone();
+		otherAlgorithm[3] = (byte) WireFormat.macId( "HmacSHA512" );
+		try {
+			hmacDeserializer.deserialize( "topic1", otherAlgorithm );
+			Assert.fail();
+		}
+		catch ( SerializationException e ) {
+			Assert.assertTrue( e.getMessage().contains( "Unsupported MAC algorithm identifier" ) );
+		}
+
+		signer.close();
+		verifier.close();
+		hmacSerializer.close();
+		hmacDeserializer.close();
+	}
+
+	private static Map<String, Object> encryptConfiguration(final String transformation, final String wireFormat) {
+		return new HashMap<String, Object>() { {
+			put( "transformation", transformation );
+			put( "secrets", SECRET + ",AFE2B05E3CB2B87AE0B2CF1D9C27A9B5" );
+			put( "wire.format", wireFormat );
+		} };
+	}
+
+	private static void assertRejected(DecryptDeserializer deserializer, byte[] data, String message) {
+		try {
+			deserializer.deserialize( "topic1", data );
+			Assert.fail();
+		}
+		catch ( SerializationException e ) {
+			Assert.assertTrue( e.getMessage(), e.getMessage().contains( message ) );
+		}
+	}
+
+	private static void assertRejected(HybridDecryptDeserializer deserializer, byte[] data, String message) {
+		try {
+			deserializer.deserialize( "topic1", data );
+			Assert.fail();
+		}
+		catch ( SerializationException e ) {
+			Assert.assertTrue( e.getMessage(), e.getMessage().contains( message ) );
+		}
+	}
+}